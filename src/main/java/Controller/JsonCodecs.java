@@ -0,0 +1,49 @@
+package Controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * The JSON codecs every handler shares. Building an ObjectMapper is expensive and each
+ * one keeps its own serializer and deserializer caches, so the mapper is built once and
+ * the readers and writers for the request and response types are resolved from it up
+ * front. Readers and writers are immutable and safe to use from any number of threads.
+ */
+public class JsonCodecs
+{
+    /*
+     * Writing a value must not flush or close the response, so a streamed list goes out
+     * in as few network writes as the response buffer allows.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectReader MESSAGE_ARRAY_READER = MAPPER.readerFor(Message[].class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+
+    private JsonCodecs()
+    {
+    }
+
+    /**
+     * @return A Javalin JSON mapper over the shared mapper, for the responses written with context.json().
+     */
+    public static JsonMapper javalinMapper()
+    {
+        return new JavalinJackson(MAPPER);
+    }
+}
@@ -0,0 +1,231 @@
+package Controller;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * A compact binary encoding of messages for bulk clients, offered next to JSON on the
+ * message list endpoints and the batch endpoint. A body is a sequence of rows with no
+ * header or framing, each row being:
+ *
+ *  message_id           varint
+ *  posted_by            varint
+ *  time_posted_epoch    zigzag varint
+ *  message_text length  varint, the UTF-8 byte count plus one, or 0 for a null text
+ *  message_text         that many UTF-8 bytes
+ *
+ * Varints are little-endian base 128, seven bits to a byte with the high bit set on
+ * every byte but the last. IDs are written as unsigned 32 bit values. Rows are encoded
+ * straight from the Message fields into a reused buffer, so a streamed response
+ * allocates nothing per message unless its text is not ASCII.
+ */
+public class MessageRowCodec
+{
+    public static final String CONTENT_TYPE = "application/x-socialmedia-message-rows";
+
+    /*
+     * Longest encoding of a row apart from its text: two 5 byte ints, a 10 byte long and a 5 byte length
+     */
+    private static final int MAX_ROW_HEADER = 25;
+
+    /*
+     * Longest UTF-8 encoding of a 255 character message_text, so a row's length is checked before its text is read
+     */
+    private static final int MAX_TEXT_BYTES = 255 * 4;
+
+    private MessageRowCodec()
+    {
+    }
+
+    /**
+     * Writes rows to a stream through a buffer of its own. The caller must flush it
+     * after the last row.
+     */
+    public static class Writer
+    {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+
+        /**
+         * @param out The stream to write the rows to.
+         */
+        public Writer(OutputStream out)
+        {
+            this.out = out;
+        }
+
+        /**
+         * Encodes one message as a row.
+         *
+         * @param message The message to write.
+         *
+         * @throws IOException will be thrown if the stream could not be written.
+         */
+        public void write(Message message) throws IOException
+        {
+            String text = message.getMessage_text();
+            reserve(MAX_ROW_HEADER);
+            writeVarint(message.getMessage_id() & 0xFFFFFFFFL);
+            writeVarint(message.getPosted_by() & 0xFFFFFFFFL);
+            writeVarint((message.getTime_posted_epoch() << 1) ^ (message.getTime_posted_epoch() >> 63));
+
+            if(text == null)
+            {
+                writeVarint(0);
+                return;
+            }
+
+            //ASCII text is copied char by char, anything else goes through an encoded array
+            if(isAscii(text))
+            {
+                writeVarint(text.length() + 1L);
+                for(int i = 0; i < text.length(); i += buffer.length)
+                {
+                    int end = Math.min(text.length(), i + buffer.length);
+                    reserve(end - i);
+                    for(int j = i; j < end; j++)
+                        buffer[position++] = (byte) text.charAt(j);
+                }
+            }
+            else
+            {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length + 1L);
+                if(bytes.length > buffer.length - position)
+                {
+                    flushBuffer();
+                    out.write(bytes);
+                }
+                else
+                {
+                    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                    position += bytes.length;
+                }
+            }
+        }
+
+        /**
+         * Writes out any buffered rows and flushes the stream.
+         *
+         * @throws IOException will be thrown if the stream could not be written.
+         */
+        public void flush() throws IOException
+        {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void writeVarint(long value)
+        {
+            while((value & ~0x7FL) != 0)
+            {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void reserve(int bytes) throws IOException
+        {
+            if(buffer.length - position < bytes)
+                flushBuffer();
+        }
+
+        private void flushBuffer() throws IOException
+        {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        private static boolean isAscii(String text)
+        {
+            for(int i = 0; i < text.length(); i++)
+            {
+                if(text.charAt(i) >= 0x80)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads rows until the end of the stream.
+     *
+     * @param in The stream to read, which should be buffered.
+     * @param maxCount The most rows the caller will accept.
+     *
+     * @return The messages read, at most maxCount + 1 of them, so a caller can tell that there were too many.
+     *
+     * @throws IOException will be thrown if the stream could not be read or ends part way through a row.
+     */
+    public static List<Message> readMessages(InputStream in, int maxCount) throws IOException
+    {
+        List<Message> messages = new ArrayList<>();
+        int first;
+        while(messages.size() <= maxCount && (first = in.read()) != -1)
+        {
+            Message message = new Message();
+            message.setMessage_id(readId(in, first));
+            message.setPosted_by(readId(in, in.read()));
+            long epoch = readVarint(in, in.read());
+            message.setTime_posted_epoch((epoch >>> 1) ^ -(epoch & 1));
+
+            //A ten byte varint can decode to a negative length
+            long length = readVarint(in, in.read());
+            if(length < 0)
+                throw new IOException("message_text length is negative");
+            if(length > MAX_TEXT_BYTES + 1)
+                throw new IOException("message_text is over " + MAX_TEXT_BYTES + " bytes");
+            if(length > 0)
+            {
+                byte[] text = in.readNBytes((int) length - 1);
+                if(text.length < length - 1)
+                    throw new EOFException("Row ends part way through its message_text");
+                message.setMessage_text(new String(text, StandardCharsets.UTF_8));
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Reads an ID written as an unsigned 32 bit varint, refusing a larger value rather than
+     * truncating it to some other ID.
+     */
+    private static int readId(InputStream in, int first) throws IOException
+    {
+        long id = readVarint(in, first);
+        if(id < 0 || id > 0xFFFFFFFFL)
+            throw new IOException("ID is over 32 bits");
+        return (int) id;
+    }
+
+    /**
+     * Reads the rest of a varint whose first byte has already been read.
+     */
+    private static long readVarint(InputStream in, int first) throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        for(int b = first; ; b = in.read())
+        {
+            if(b == -1)
+                throw new EOFException("Row ends part way through a varint");
+            if(shift > 63)
+                throw new IOException("Varint is too long");
+
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+            shift += 7;
+        }
+    }
+}
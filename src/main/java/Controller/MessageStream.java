@@ -0,0 +1,363 @@
+package Controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import io.javalin.http.sse.SseClient;
+
+import org.eclipse.jetty.server.Request;
+
+import Service.MessageEventBus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes committed message changes to Server-Sent Events subscribers of GET /messages/stream.
+ *
+ * An idle subscriber is only an entry in a set and a suspended request, with no thread of its
+ * own. One dispatcher thread follows the MessageEventBus and hands each subscriber's new events
+ * to a small pool of writer threads, at most one write in flight per subscriber. A subscriber
+ * whose write is still running is skipped, and it catches up from its own position in the bus
+ * once the write finishes, so a slow client never delays publishers or other subscribers.
+ *
+ * A subscriber that falls so far behind that the bus has overwritten its next event is
+ * conflated: it skips to the oldest event still held and gets a resync event saying how many
+ * changes it missed, after which it should reload what it shows. A subscriber whose write has
+ * been blocked for longer than the write timeout is disconnected.
+ */
+public class MessageStream
+{
+    /*
+     * Most events handed to one subscriber's writer at a time
+     */
+    private static final int MAX_BATCH = 256;
+
+    /*
+     * Numbers the writer threads of every stream, for thread dumps
+     */
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final MessageEventBus bus;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService writers;
+    private final Thread dispatcher;
+    private final long heartbeatNanos;
+    private final long writeTimeoutNanos;
+    private volatile boolean running = true;
+
+    /*
+     * Each event's JSON, encoded once by the dispatcher however many subscribers receive it
+     */
+    private final String[] encoded;
+    private final long[] encodedSequence;
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * One open event stream.
+     */
+    private static class Subscriber
+    {
+        final SseClient client;
+
+        /*
+         * Accounts whose messages this subscriber wants, or null for all of them
+         */
+        final Set<Integer> postedBy;
+
+        /*
+         * Next sequence number to read, and changes skipped by a resync not yet sent, both
+         * only touched by the dispatcher once the subscriber is registered
+         */
+        long cursor;
+        long missed;
+        boolean resync;
+        long lastWriteNanos;
+
+        volatile boolean busy;
+        volatile long busySince;
+        volatile boolean closed;
+
+        Subscriber(SseClient client, Set<Integer> postedBy)
+        {
+            this.client = client;
+            this.postedBy = postedBy;
+        }
+    }
+
+    /**
+     * One SSE event ready to write.
+     */
+    private static class Frame
+    {
+        final String event;
+        final String data;
+        final String id;
+
+        Frame(String event, String data, String id)
+        {
+            this.event = event;
+            this.data = data;
+            this.id = id;
+        }
+    }
+
+    /**
+     * @param bus The bus committed message changes are published to.
+     * @param writerThreads The number of threads writing to subscribers.
+     * @param heartbeatMillis How long a subscriber may go without a write before it is sent a comment,
+     *        which keeps the connection from idling out and finds clients that have gone away.
+     * @param writeTimeoutMillis How long one write may block before its subscriber is disconnected.
+     */
+    public MessageStream(MessageEventBus bus, int writerThreads, long heartbeatMillis, long writeTimeoutMillis)
+    {
+        this.bus = bus;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+
+        this.encoded = new String[bus.getCapacity()];
+        this.encodedSequence = new long[bus.getCapacity()];
+        Arrays.fill(encodedSequence, -1);
+
+        this.writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "message-stream-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "message-stream-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Creates the stream described by the socialmedia.stream.* system properties.
+     *
+     * @param bus The bus committed message changes are published to, or null if the stream is off.
+     *
+     * @return The stream, or null if there is no bus.
+     */
+    public static MessageStream fromSystemProperties(MessageEventBus bus)
+    {
+        if(bus == null)
+            return null;
+
+        return new MessageStream(bus,
+                Integer.getInteger("socialmedia.stream.writers", 4),
+                Long.getLong("socialmedia.stream.heartbeatMillis", 15000),
+                Long.getLong("socialmedia.stream.writeTimeoutMillis", 10000));
+    }
+
+    /**
+     * Registers a client that has just connected. Its first event is the first change published
+     * after it connected, or the one after lastEventId when a reconnecting client sends one.
+     *
+     * @param client The connected client, which must not have returned from its handler yet.
+     * @param postedBy The accounts whose messages the client wants, or null for all of them.
+     * @param lastEventId The id of the last event the client received before reconnecting, or null.
+     */
+    public void subscribe(SseClient client, Set<Integer> postedBy, Long lastEventId)
+    {
+        Subscriber subscriber = new Subscriber(client, postedBy);
+        long next = bus.getNextSequence();
+        subscriber.cursor = next;
+        if(lastEventId != null && lastEventId >= 0 && lastEventId < next)
+        {
+            long oldest = bus.getOldestSequence();
+            subscriber.cursor = Math.max(lastEventId + 1, oldest);
+            if(lastEventId + 1 < oldest)
+            {
+                subscriber.resync = true;
+                subscriber.missed = oldest - lastEventId - 1;
+            }
+        }
+        subscriber.lastWriteNanos = System.nanoTime();
+
+        client.keepAlive();
+        client.onClose(() -> {
+            subscriber.closed = true;
+            subscribers.remove(subscriber);
+        });
+        subscribers.add(subscriber);
+        connected.increment();
+        LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * Follows the bus until the stream is closed.
+     */
+    private void dispatch()
+    {
+        while(running)
+        {
+            long next = bus.getNextSequence();
+            long now = System.nanoTime();
+            for(Subscriber subscriber : subscribers)
+                dispatch(subscriber, now);
+
+            //Waking for the next publish, a finished write, or the next heartbeat and timeout check
+            bus.awaitEvents(next, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Hands a subscriber's new events to a writer, unless it has a write in flight.
+     */
+    private void dispatch(Subscriber subscriber, long now)
+    {
+        if(subscriber.closed)
+        {
+            subscribers.remove(subscriber);
+            return;
+        }
+        if(subscriber.busy)
+        {
+            if(now - subscriber.busySince > writeTimeoutNanos)
+                drop(subscriber);
+            return;
+        }
+
+        //Collecting the events this subscriber has not seen, skipping ahead if it has been overrun
+        List<Frame> frames = new ArrayList<>();
+        while(frames.size() < MAX_BATCH)
+        {
+            MessageEventBus.Event event = bus.read(subscriber.cursor);
+            if(event == null)
+                break;
+            if(event == MessageEventBus.OVERRUN)
+            {
+                long oldest = bus.getOldestSequence();
+                subscriber.missed += oldest - subscriber.cursor;
+                subscriber.cursor = oldest;
+                subscriber.resync = true;
+                continue;
+            }
+
+            subscriber.cursor++;
+            if(subscriber.postedBy == null || subscriber.postedBy.contains(event.message.getPosted_by()))
+                frames.add(new Frame(event.type, encode(event), Long.toString(event.sequence)));
+        }
+        if(subscriber.resync)
+        {
+            frames.add(0, new Frame("resync", "{\"missed\":" + subscriber.missed + "}", null));
+            subscriber.resync = false;
+            subscriber.missed = 0;
+            resyncs.increment();
+        }
+
+        boolean heartbeat = frames.isEmpty() && now - subscriber.lastWriteNanos > heartbeatNanos;
+        if(frames.isEmpty() && heartbeat == false)
+            return;
+
+        subscriber.lastWriteNanos = now;
+        subscriber.busySince = now;
+        subscriber.busy = true;
+        writers.execute(() -> write(subscriber, frames));
+    }
+
+    /**
+     * Writes a batch of events, or a heartbeat comment if there are none, on a writer thread.
+     */
+    private void write(Subscriber subscriber, List<Frame> frames)
+    {
+        try
+        {
+            if(frames.isEmpty())
+                subscriber.client.sendComment("heartbeat");
+            for(Frame frame : frames)
+            {
+                if(frame.id == null)
+                    subscriber.client.sendEvent(frame.event, frame.data);
+                else
+                    subscriber.client.sendEvent(frame.event, frame.data, frame.id);
+            }
+            delivered.add(frames.size());
+        }
+        catch(RuntimeException e)
+        {
+            //The client has gone, its close callback removes it
+            subscriber.client.close();
+        }
+        finally
+        {
+            subscriber.busy = false;
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * Returns an event's message as JSON, encoding it only the first time it is asked for.
+     */
+    private String encode(MessageEventBus.Event event)
+    {
+        int slot = (int) event.sequence & (encoded.length - 1);
+        if(encodedSequence[slot] != event.sequence)
+        {
+            try
+            {
+                encoded[slot] = JsonCodecs.MESSAGE_WRITER.writeValueAsString(event.message);
+            }
+            catch(JsonProcessingException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            encodedSequence[slot] = event.sequence;
+        }
+        return encoded[slot];
+    }
+
+    /**
+     * Disconnects a subscriber whose write is stuck. Aborting the connection fails the blocked
+     * write at once, instead of when the connection finally idles out.
+     */
+    private void drop(Subscriber subscriber)
+    {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        dropped.increment();
+        Request request = Request.getBaseRequest(subscriber.client.ctx.req());
+        if(request != null)
+            request.getHttpChannel().abort(new TimeoutException("Message stream write timed out"));
+    }
+
+    /**
+     * @return The stream's counters for the metrics endpoint.
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>(bus.getStats());
+        stats.put("subscribers", subscribers.size());
+        stats.put("connected", connected.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("resyncs", resyncs.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+
+    /**
+     * Stops the dispatcher and ends every open stream.
+     */
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        writers.shutdownNow();
+        for(Subscriber subscriber : subscribers)
+            subscriber.client.close();
+        subscribers.clear();
+    }
+}
@@ -2,19 +2,46 @@ package Controller;
 
 import static org.mockito.ArgumentMatchers.nullable;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.sse.SseHandler;
 
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessagePage;
+
+import DAO.MessageConsumer;
+import DAO.StorageEngine;
 
 import Service.AccountService;
+import Service.FeedService;
 import Service.MessageService;
+import Service.SearchIndex;
+
+import Util.DatabaseExecutor;
+import Util.PoolExhaustedException;
+import Util.UnitOfWork;
+import Util.VirtualThreadPool;
+import Util.VirtualThreads;
 
+import org.eclipse.jetty.server.Server;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -25,13 +52,39 @@ public class SocialMediaController
 { 
     AccountService accountService;
     MessageService messageService;
+    FeedService feedService;
+    StorageEngine storage;
+
+    /*
+     * Runs handlers' database work off the Jetty threads, or null when handlers block instead
+     */
+    DatabaseExecutor databaseExecutor;
+
+    /*
+     * True when Jetty serves every request on its own virtual thread
+     */
+    boolean virtualThreads;
+
+    /*
+     * Pushes committed message changes to GET /messages/stream, or null when the stream is off
+     */
+    MessageStream messageStream;
 
     /*
      * Constructor
      */
     public SocialMediaController(){
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        //Running the services on the engine chosen by socialmedia.engine
+        this.storage = StorageEngine.fromSystemProperties();
+        this.accountService = new AccountService(storage.getAccountStore());
+        this.feedService = new FeedService(storage.getFollowStore(), storage.getMessageStore());
+        this.messageService = new MessageService(storage.getMessageStore(), feedService);
+
+        //On virtual threads a handler blocking on JDBC is cheap, and the connection pool bounds the database work
+        this.virtualThreads = VirtualThreads.isEnabled();
+        if(virtualThreads == false)
+            this.databaseExecutor = DatabaseExecutor.fromSystemProperties();
+        this.messageStream = MessageStream.fromSystemProperties(messageService.getEventBus());
     }
 
     /**
@@ -40,40 +93,86 @@ public class SocialMediaController
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> {
+            //Sharing one mapper between context.json() and the handlers' own codecs
+            config.jsonMapper(JsonCodecs.javalinMapper());
+            if(virtualThreads)
+                config.jetty.server(() -> new Server(new VirtualThreadPool("http-virtual-")));
+        });
         
-        //Endpoints
-        app.post("/register", this::postRegistrationHandler);
-        app.post("/login", this::postLoginHandler);
-        app.post("/messages", this::postMessagesHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);
-        app.patch("/messages/{message_id}", this::patchMessageByIdHandler);
-        app.get("/accounts/{account_id}/messages", this::getAccountMessagesHandler);
+        //Endpoints, each running in its own unit of work
+        app.post("/register", transactional(this::postRegistrationHandler));
+        app.post("/login", transactional(this::postLoginHandler));
+        app.post("/messages", transactional(this::postMessagesHandler));
+        app.post("/messages/batch", transactional(this::postMessagesBatchHandler));
+        app.get("/messages", transactional(this::getAllMessagesHandler));
+        app.get("/messages/search", transactional(this::searchMessagesHandler));
+        if(messageStream != null)
+            app.get("/messages/stream", this::streamMessagesHandler);
+        app.get("/messages/{message_id}", transactional(this::getMessageByIdHandler));
+        app.delete("/messages/{message_id}", transactional(this::deleteMessageByIdHandler));
+        app.patch("/messages/{message_id}", transactional(this::patchMessageByIdHandler));
+        app.get("/accounts/{account_id}/messages", transactional(this::getAccountMessagesHandler));
+        app.post("/accounts/{account_id}/following/{followee_id}", transactional(this::followHandler));
+        app.delete("/accounts/{account_id}/following/{followee_id}", transactional(this::unfollowHandler));
+        app.get("/accounts/{account_id}/feed", transactional(this::getFeedHandler));
+        app.get("/metrics", this::getMetricsHandler);
+
+        //Shedding load once the database executor's queue is full or no pooled connection is free
+        app.exception(RejectedExecutionException.class, (e, context) -> context.status(503));
+        app.exception(PoolExhaustedException.class, (e, context) -> context.status(503).result(e.getMessage()));
+
+        //Stopping background work when the server stops
+        app.events(event -> event.serverStopped(() -> {
+            if(databaseExecutor != null)
+                databaseExecutor.close();
+            if(messageStream != null)
+                messageStream.close();
+            messageService.close();
+            storage.close();
+        }));
 
         return app;
     }
 
+    /**
+     * Wraps a handler so that every DAO call it makes shares one connection and one
+     * transaction, committed when the handler returns and rolled back if it throws.
+     * 
+     * With a database executor the whole unit of work runs on one of its threads and
+     * the Jetty thread is handed back through context.future(). The unit of work stays
+     * on a single thread, since its connection is bound to the thread that runs it.
+     * 
+     * @param handler The handler to wrap.
+     * 
+     * @return A handler that runs the provided handler inside a UnitOfWork.
+     */
+    private Handler transactional(Handler handler)
+    {
+        if(databaseExecutor == null)
+            return context -> UnitOfWork.run(() -> handler.handle(context));
+
+        return context -> context.future(() -> databaseExecutor.submit(() -> UnitOfWork.run(() -> handler.handle(context))));
+    }
+
     /**
      * Handler to post a new registration.
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      * 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object or writing the response.
      */
-    private void postRegistrationHandler(Context context) throws JsonProcessingException
+    private void postRegistrationHandler(Context context) throws IOException
     {
         
         //Mapping object and calling the account service to attempt to register an account
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(),Account.class);
+        Account account = JsonCodecs.ACCOUNT_READER.readValue(context.bodyInputStream());
         Account registeredAccount = accountService.registerAccount(account);    
         
         //Checking if account was successfully registered
         if(registeredAccount != null)
         {
-            context.json(mapper.writeValueAsString(registeredAccount));
+            writeJson(context, JsonCodecs.ACCOUNT_WRITER, registeredAccount);
         }
         else
             context.status(400);      
@@ -85,19 +184,18 @@ public class SocialMediaController
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      * 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object or writing the response.
      */
-    private void postLoginHandler(Context context) throws JsonProcessingException
+    private void postLoginHandler(Context context) throws IOException
     {
         //Mapping object and calling the account service to attempt an account login
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(),Account.class);
+        Account account = JsonCodecs.ACCOUNT_READER.readValue(context.bodyInputStream());
         Account loggedInAccount = accountService.logInAccount(account);
 
         //Checking if account was successfully logged in
         if(loggedInAccount != null)
         {
-            context.json(mapper.writeValueAsString(loggedInAccount));
+            writeJson(context, JsonCodecs.ACCOUNT_WRITER, loggedInAccount);
         }
         else
             context.status(401);
@@ -110,35 +208,165 @@ public class SocialMediaController
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      * 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object or writing the response.
      */
-    private void postMessagesHandler(Context context) throws JsonProcessingException
+    private void postMessagesHandler(Context context) throws IOException
     {
         //Mapping the object to get message ID
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(context.body(),Message.class);
+        Message message = JsonCodecs.MESSAGE_READER.readValue(context.bodyInputStream());
         Message createdMessage = messageService.createMessage(message);
 
         //Checking if message was successfully created
         if(createdMessage != null)
         {
-            context.json(mapper.writeValueAsString(createdMessage));
+            writeJson(context, JsonCodecs.MESSAGE_WRITER, createdMessage);
         }
         else
             context.status(400);
     }
 
 
+    /**
+     * Handler to post many messages at once.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void postMessagesBatchHandler(Context context)
+    {
+        //Mapping the JSON array of messages, or the binary rows if the client sent those
+        List<Message> messages;
+        try
+        {
+            if(context.contentType() != null && context.contentType().split(";")[0].trim().equalsIgnoreCase(MessageRowCodec.CONTENT_TYPE))
+                messages = MessageRowCodec.readMessages(new BufferedInputStream(context.bodyInputStream()), MessageService.MAX_BATCH_SIZE);
+            else
+            {
+                Message[] array = JsonCodecs.MESSAGE_ARRAY_READER.readValue(context.bodyInputStream());
+                messages = array == null ? null : Arrays.asList(array);
+            }
+        }
+        catch(IOException e)
+        {
+            context.status(400);
+            return;
+        }
+
+        //Checking the batch is something we are willing to insert in one transaction
+        if(messages == null || messages.size() > MessageService.MAX_BATCH_SIZE || messages.contains(null))
+        {
+            context.status(400);
+            return;
+        }
+
+        //Creating the messages and returning a result for each one
+        List<MessageBatchResult> results = messageService.createMessages(messages);
+        context.json(results);
+    }
+
+
     /**
      * Handler to get all messages.
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response. 
+     * 
+     * @throws IOException will be thrown if the response could not be written.
      */
-    private void getAllMessagesHandler(Context context)
+    private void getAllMessagesHandler(Context context) throws IOException
     {
-        //Calling method to return all messages
-        List<Message> messages = messageService.getAllMessages();
-        context.json(messages);
+        //Merging the timelines of the accounts the client named into one page
+        Set<Integer> postedBy = postedByParam(context);
+        if(postedBy != null)
+        {
+            context.json(messageService.getMergedMessagesPage(postedBy, pageCursor(context), pageLimit(context)));
+            return;
+        }
+
+        //Streaming only the messages posted in a time range when the client asks for one
+        if(isTimeRange(context))
+        {
+            long from = timeParam(context, "from", Long.MIN_VALUE);
+            long to = timeParam(context, "to", Long.MAX_VALUE);
+            streamMessages(context, consumer -> messageService.forEachMessageInRange(from, to, consumer));
+            return;
+        }
+
+        //Returning a single page when the client asks for one
+        if(isPaginated(context))
+        {
+            context.json(messageService.getMessagesPage(pageCursor(context), pageLimit(context)));
+            return;
+        }
+
+        //Streaming all messages straight from the database
+        streamMessages(context, messageService::forEachMessage);
+    }
+
+
+    /**
+     * Handler to search message text. Returns the messages containing every word of
+     * the q query parameter, newest first, one page at a time.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @throws BadRequestResponse will be thrown if the query has no words or too many.
+     */
+    private void searchMessagesHandler(Context context)
+    {
+        MessagePage page = messageService.searchMessages(context.queryParam("q"), pageCursor(context), pageLimit(context));
+        if(page == null)
+            throw new BadRequestResponse("q must contain between 1 and " + SearchIndex.MAX_QUERY_TERMS + " words");
+
+        context.json(page);
+    }
+
+
+    /**
+     * Handler to subscribe to committed message changes as Server-Sent Events. The connection
+     * stays open with no thread of its own, and each created, patched or deleted message is
+     * pushed as an event of that name with the message as its data. The posted_by query
+     * parameter limits the events to messages from the accounts it names.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @throws BadRequestResponse will be thrown if posted_by is not a list of account IDs.
+     */
+    private void streamMessagesHandler(Context context)
+    {
+        //Checking the request before the event stream's headers go out
+        Set<Integer> postedBy = postedByParam(context);
+        if("text/event-stream".equals(context.header("Accept")) == false)
+        {
+            context.status(406).result("GET /messages/stream needs Accept: text/event-stream");
+            return;
+        }
+
+        Long lastEventId = lastEventId(context);
+        new SseHandler(client -> messageStream.subscribe(client, postedBy, lastEventId)).handle(context);
+    }
+
+
+    /**
+     * Reads the Last-Event-ID header a reconnecting event stream client sends.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return The id of the last event the client saw, or null if it sent none or one this API did not produce.
+     */
+    private Long lastEventId(Context context)
+    {
+        String lastEventId = context.header("Last-Event-ID");
+        if(lastEventId == null)
+            return null;
+
+        try
+        {
+            return Long.parseLong(lastEventId.trim());
+        }
+        catch(NumberFormatException e)
+        {
+            //Starting from the next change instead
+            return null;
+        }
     }
 
 
@@ -146,16 +374,17 @@ public class SocialMediaController
      * Handler to get a message by a message ID.
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     *  
+     * 
+     * @throws IOException will be thrown if the response could not be written.
      */
-    private void getMessageByIdHandler(Context context)
+    private void getMessageByIdHandler(Context context) throws IOException
     {
         //Calling method to get a message with a given ID
         Message message = messageService.getMessageById(Integer.parseInt(context.pathParam("message_id")));
         
         //Checking if message was found
         if(message != null)
-            context.json(message);
+            writeJson(context, JsonCodecs.MESSAGE_WRITER, message);
     }
 
 
@@ -164,15 +393,16 @@ public class SocialMediaController
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      *
+     * @throws IOException will be thrown if the response could not be written.
      */
-    private void deleteMessageByIdHandler(Context context)
+    private void deleteMessageByIdHandler(Context context) throws IOException
     {
         //Calling method to delete a message with a given ID
         Message message = messageService.deleteMessageById(Integer.parseInt(context.pathParam("message_id")));
 
         //Checking if message was found
         if(message != null)
-            context.json(message);
+            writeJson(context, JsonCodecs.MESSAGE_WRITER, message);
     }
 
 
@@ -181,13 +411,12 @@ public class SocialMediaController
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      * 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object or writing the response.
      */
-    private void patchMessageByIdHandler(Context context) throws JsonProcessingException
+    private void patchMessageByIdHandler(Context context) throws IOException
     {
         //Mapping the object to get message text to update
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(context.body(),Message.class);
+        Message message = JsonCodecs.MESSAGE_READER.readValue(context.bodyInputStream());
 
         //Patching message
         Message updatedMessage = messageService.patchMessageById(Integer.parseInt(context.pathParam("message_id")), message.getMessage_text());
@@ -195,7 +424,7 @@ public class SocialMediaController
         //Checking if message was successfully updated
         if(updatedMessage != null)
         {
-            context.json(updatedMessage);
+            writeJson(context, JsonCodecs.MESSAGE_WRITER, updatedMessage);
         }
         else
             context.status(400);
@@ -206,12 +435,324 @@ public class SocialMediaController
      * Handler to get all messages from an account.
      * 
      * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @throws IOException will be thrown if the response could not be written.
+     */
+    private void getAccountMessagesHandler(Context context) throws IOException
+    {
+        //Streaming only the messages posted in a time range when the client asks for one
+        if(isTimeRange(context))
+        {
+            int accountId = Integer.parseInt(context.pathParam("account_id"));
+            long from = timeParam(context, "from", Long.MIN_VALUE);
+            long to = timeParam(context, "to", Long.MAX_VALUE);
+            streamMessages(context, consumer -> messageService.forEachAccountMessageInRange(accountId, from, to, consumer));
+            return;
+        }
+
+        //Returning a single page when the client asks for one
+        if(isPaginated(context))
+        {
+            int accountId = Integer.parseInt(context.pathParam("account_id"));
+            context.json(messageService.getAccountMessagesPage(accountId, pageCursor(context), pageLimit(context)));
+            return;
+        }
+
+        //Streaming all messages associated with an account straight from the database
+        int accountId = Integer.parseInt(context.pathParam("account_id"));
+        streamMessages(context, consumer -> messageService.forEachAccountMessage(accountId, consumer));
+    }
+
+
+    /**
+     * Handler to make an account follow another.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void followHandler(Context context)
+    {
+        //Following twice is allowed; only missing accounts or following oneself fail
+        if(feedService.follow(Integer.parseInt(context.pathParam("account_id")), Integer.parseInt(context.pathParam("followee_id"))) == false)
+            context.status(400);
+    }
+
+
+    /**
+     * Handler to make an account stop following another.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void unfollowHandler(Context context)
+    {
+        //Unfollowing an account not followed is allowed; only missing accounts or oneself fail
+        if(feedService.unfollow(Integer.parseInt(context.pathParam("account_id")), Integer.parseInt(context.pathParam("followee_id"))) == false)
+            context.status(400);
+    }
+
+
+    /**
+     * Handler to get one page of an account's home feed, the messages posted by the
+     * accounts it follows, newest first.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getFeedHandler(Context context)
+    {
+        int accountId = Integer.parseInt(context.pathParam("account_id"));
+        context.json(messageService.getFeedPage(accountId, pageCursor(context), pageLimit(context)));
+    }
+
+
+
+    /**
+     * Sets a single value as the JSON response, encoded straight to bytes instead of through
+     * an intermediate String. Javalin only writes the result once the handler has returned, so
+     * the client gets the response after the unit of work has committed, and a failed commit
+     * is answered with an error instead of a body that was never saved.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param writer The shared writer for the value's type.
+     * @param value The value to write.
+     * 
+     * @throws IOException will be thrown if the value could not be encoded.
+     */
+    private void writeJson(Context context, ObjectWriter writer, Object value) throws IOException
+    {
+        context.contentType(ContentType.APPLICATION_JSON);
+        context.result(writer.writeValueAsBytes(value));
+    }
+
+
+    /**
+     * Writes messages to the response as a JSON array, one element at a time as the source
+     * produces them, so the full list is never held in memory. Clients that accept the
+     * binary row format get rows instead.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param source Streams the messages to write into the consumer it is given.
+     * 
+     * @throws IOException will be thrown if the response could not be written.
+     */
+    private void streamMessages(Context context, MessageSource source) throws IOException
+    {
+        if(acceptsMessageRows(context))
+        {
+            context.contentType(MessageRowCodec.CONTENT_TYPE);
+            MessageRowCodec.Writer writer = new MessageRowCodec.Writer(context.outputStream());
+            source.forEach(writer::write);
+            writer.flush();
+            return;
+        }
+
+        context.contentType(ContentType.APPLICATION_JSON);
+
+        JsonGenerator generator = JsonCodecs.MAPPER.getFactory().createGenerator(context.outputStream());
+        generator.writeStartArray();
+        source.forEach(message -> JsonCodecs.MESSAGE_WRITER.writeValue(generator, message));
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+
+    /**
+     * Checks whether the client asked for the binary row format in its Accept header.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return true if the row format is among the accepted media types.
+     */
+    private boolean acceptsMessageRows(Context context)
+    {
+        String accept = context.header("Accept");
+        if(accept == null)
+            return false;
+
+        for(String mediaType : accept.split(","))
+        {
+            if(mediaType.split(";")[0].trim().equalsIgnoreCase(MessageRowCodec.CONTENT_TYPE))
+                return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * A source of messages that can be streamed to a consumer.
+     */
+    @FunctionalInterface
+    private interface MessageSource
+    {
+        void forEach(MessageConsumer consumer) throws IOException;
+    }
+
+
+    /**
+     * Checks whether a list request asked for keyset pagination.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return true if the limit or cursor query parameter is present.
+     */
+    private boolean isPaginated(Context context)
+    {
+        return context.queryParam("limit") != null || context.queryParam("cursor") != null;
+    }
+
+
+    /**
+     * Reads the comma separated account IDs of the posted_by query parameter.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return The distinct account IDs in the order given, or null if the parameter is absent.
+     * 
+     * @throws BadRequestResponse will be thrown if an ID is not a number, there are too many,
+     *         or a time range is given as well.
+     */
+    private Set<Integer> postedByParam(Context context)
+    {
+        String postedBy = context.queryParam("posted_by");
+        if(postedBy == null)
+            return null;
+
+        if(context.queryParam("from") != null || context.queryParam("to") != null)
+            throw new BadRequestResponse("posted_by cannot be combined with from or to");
+
+        Set<Integer> accountIds = new LinkedHashSet<>();
+        try
+        {
+            for(String accountId : postedBy.split(","))
+                accountIds.add(Integer.parseInt(accountId.trim()));
+        }
+        catch(NumberFormatException e)
+        {
+            throw new BadRequestResponse("posted_by must be a comma separated list of account IDs");
+        }
+        if(accountIds.size() > MessageService.MAX_MERGED_ACCOUNTS)
+            throw new BadRequestResponse("posted_by may name at most " + MessageService.MAX_MERGED_ACCOUNTS + " accounts");
+        return accountIds;
+    }
+
+
+    /**
+     * Checks if the client asked for a time range with the from or to query parameters.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return True if either parameter is present.
+     * 
+     * @throws BadRequestResponse will be thrown if pagination parameters are given as well.
+     */
+    private boolean isTimeRange(Context context)
+    {
+        if(context.queryParam("from") == null && context.queryParam("to") == null)
+            return false;
+
+        if(isPaginated(context))
+            throw new BadRequestResponse("from and to cannot be combined with limit or cursor");
+        return true;
+    }
+
+
+    /**
+     * Reads one end of a time range.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param name The query parameter to read.
+     * @param missing The value to use if the parameter was not given.
+     * 
+     * @return The time_posted_epoch given, or missing.
+     * 
+     * @throws BadRequestResponse will be thrown if the parameter is not a number.
+     */
+    private long timeParam(Context context, String name, long missing)
+    {
+        String value = context.queryParam(name);
+        if(value == null || value.isEmpty())
+            return missing;
+
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch(NumberFormatException e)
+        {
+            throw new BadRequestResponse(name + " must be a time_posted_epoch");
+        }
+    }
+
+
+    /**
+     * Reads the page size from the limit query parameter.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return The requested page size, the default if none was given, capped at the maximum page size.
+     * 
+     * @throws BadRequestResponse will be thrown if the limit is not a positive number.
+     */
+    private int pageLimit(Context context)
+    {
+        String limit = context.queryParam("limit");
+        if(limit == null)
+            return MessageService.DEFAULT_PAGE_SIZE;
+
+        try
+        {
+            int pageSize = Integer.parseInt(limit);
+            if(pageSize > 0)
+                return Math.min(pageSize, MessageService.MAX_PAGE_SIZE);
+        }
+        catch(NumberFormatException e)
+        {
+            //Falls through to the bad request below
+        }
+        throw new BadRequestResponse("limit must be a positive number");
+    }
+
+
+    /**
+     * Reads the cursor query parameter.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * 
+     * @return The cursor returned with the previous page, or null for the first page.
+     * 
+     * @throws BadRequestResponse will be thrown if the cursor was not produced by this API.
+     */
+    private Integer pageCursor(Context context)
+    {
+        String cursor = context.queryParam("cursor");
+        if(cursor == null || cursor.isEmpty())
+            return null;
+
+        try
+        {
+            return Integer.parseInt(cursor);
+        }
+        catch(NumberFormatException e)
+        {
+            throw new BadRequestResponse("cursor is not valid");
+        }
+    }
+
+
+    /**
+     * Handler to get runtime metrics.
+     * 
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getAccountMessagesHandler(Context context)
+    private void getMetricsHandler(Context context)
     {
-        //Calling method to return all messages associated with an account
-        List<Message> messages = messageService.getAllAccountMessages(Integer.parseInt(context.pathParam("account_id")));
-        context.json(messages);
+        //Collecting counters from each instrumented component
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.putAll(storage.getMetrics());
+        metrics.putAll(messageService.getMetrics());
+        if(databaseExecutor != null)
+            metrics.put("db_executor", databaseExecutor.getStats());
+        if(messageStream != null)
+            metrics.put("message_stream", messageStream.getStats());
+        context.json(metrics);
     }
 
 }
\ No newline at end of file
@@ -2,10 +2,66 @@ package DAO;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.UnitOfWork;
 
 import java.sql.*;
 
-public class AccountDAO {
+public class AccountDAO implements AccountStore {
+
+/*
+* Account IDs known to exist, updated as accounts are registered
+*/
+private AccountIdIndex accountIds;
+
+/*
+* Usernames that might be taken, checked before asking the database
+*/
+private UsernameBloomFilter usernames;
+
+
+/*
+* Constructor with no provided index, which loads one
+*/
+public AccountDAO()
+{
+    this(AccountIdIndex.load());
+}
+
+
+/*
+* Constructor with provided index, shared with the MessageDAO
+* that validates posted_by
+*
+* @param accountIds
+*/
+public AccountDAO(AccountIdIndex accountIds)
+{
+    this(accountIds, UsernameBloomFilter.load());
+}
+
+
+/*
+* Constructor with provided index and username filter
+*
+* @param accountIds
+* @param usernames
+*/
+public AccountDAO(AccountIdIndex accountIds, UsernameBloomFilter usernames)
+{
+    this.accountIds = accountIds;
+    this.usernames = usernames;
+}
+
+
+/*
+* Returns the username filter, for reporting its statistics.
+*
+* @return Returns the username filter.
+*/
+public UsernameBloomFilter getUsernameFilter()
+{
+    return usernames;
+}
 
     
 /*
@@ -20,18 +76,21 @@ public class AccountDAO {
 */
 public boolean validAccountParameters(String username, String password)
 {
-    //Checking if username is blank and password is at least 4 characters
-    if(username.equals("") == true || password.length() < 4)
+    //Checking the username and password themselves
+    if(AccountStore.wellFormed(username, password) == false)
         return false;
 
-    //Checking if username and password are over the character limit
-    if(username.length() > 255 || password.length() > 255)
-        return false;
+    //Skipping the lookup when the filter knows the username is not taken;
+    //the unique constraint on username still rejects a duplicate insert
+    if(usernames.mightContain(username) == false)
+        return true;
 
     //Checking if account with provided username exists
     if(getAccountByUsername(username) != null)
         return false;
 
+    usernames.recordFalsePositive();
+
     return true;
 }
 
@@ -73,6 +132,11 @@ public Account getAccountByUsername(String username)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
@@ -82,6 +146,10 @@ public Account getAccountByUsername(String username)
 * Creates an entry in the Account table to register
 * an account.
 *
+* The insert is wrapped in a FINAL TABLE query so the
+* created row, including its generated account_id, comes
+* back from the same statement.
+*
 * @param account
 *
 * @return Returns an account if the account registration is
@@ -95,23 +163,39 @@ public Account registerAccount(Account account)
     try
     {
         //SQL Statement
-        String sql = "INSERT INTO Account (username, password) VALUES(?,?)";
+        String sql = "SELECT * FROM FINAL TABLE (INSERT INTO Account (username, password) VALUES(?,?))";
         PreparedStatement ps = connection.prepareStatement(sql);
 
         //Setting prepared statement's parameters
         ps.setString(1, account.getUsername());
         ps.setString(2, account.getPassword());
 
-        ps.executeUpdate();
+        //Getting the inserted row and returning it
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            Account registeredAccount = new Account(rs.getInt("account_id"),
+                              rs.getString("username"),
+                              rs.getString("password"));
+            //Indexing the ID only once it is committed, so a rolled back registration is never reported to exist
+            UnitOfWork.afterCommit(() -> accountIds.add(registeredAccount.getAccount_id()));
 
+            //Adding the username at once; if the registration rolls back it only becomes a false positive
+            usernames.add(registeredAccount.getUsername());
+            return registeredAccount;
+        }
     }
     catch(SQLException e)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
-    //Getting updated account entry for return
-    return getAccountByUsername(account.getUsername());
+    return null;
 }
 
 
@@ -154,6 +238,11 @@ public Account logInAccount(String username, String password)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
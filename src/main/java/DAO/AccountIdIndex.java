@@ -0,0 +1,152 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Util.ConnectionUtil;
+
+/*
+* In-memory set of the account IDs that exist, kept as a growable
+* bitset with one bit per ID. Accounts are never deleted, so a set
+* bit means the account definitely exists. A clear bit only means the
+* index is unsure (the account may have been registered by another
+* process, or not be published to this thread yet), so callers ask
+* the database in that case and add what they find.
+*
+* Registrations add their ID only once their transaction has committed,
+* so the index never reports an account that was rolled back. The foreign
+* key on message.posted_by stays the final check.
+*
+* Reads take no lock. Writers are serialized and republish the word
+* array through a volatile field after every change.
+*/
+public class AccountIdIndex {
+
+/*
+* IDs at or above this are not indexed and always reported as unsure,
+* which caps the bitset at 16 MB.
+*/
+private static final int MAX_INDEXED_ID = 1 << 27;
+
+private volatile long[] words = new long[16];
+private int size;
+
+private final AtomicLong hits = new AtomicLong();
+private final AtomicLong unsure = new AtomicLong();
+
+
+/*
+* Builds an index of every account currently in the Account table.
+*
+* @return Returns the loaded index.
+*/
+public static AccountIdIndex load()
+{
+    AccountIdIndex index = new AccountIdIndex();
+
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT account_id FROM Account";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Adding every ID to the index
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+            index.add(rs.getInt("account_id"));
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return index;
+}
+
+
+/*
+* Checks whether an account ID is known to exist.
+*
+* @param accountId
+*
+* @return Returns true if the account definitely exists, false if
+*         the index does not know about it.
+*/
+public boolean contains(int accountId)
+{
+    if(accountId >= 0 && accountId < MAX_INDEXED_ID)
+    {
+        long[] current = words;
+        int word = accountId >>> 6;
+        if(word < current.length && (current[word] & (1L << accountId)) != 0)
+        {
+            hits.incrementAndGet();
+            return true;
+        }
+    }
+
+    unsure.incrementAndGet();
+    return false;
+}
+
+
+/*
+* Records that an account ID exists.
+*
+* @param accountId
+*/
+public synchronized void add(int accountId)
+{
+    if(accountId < 0 || accountId >= MAX_INDEXED_ID)
+        return;
+
+    long[] current = words;
+    int word = accountId >>> 6;
+    if(word >= current.length)
+    {
+        long[] grown = new long[Math.max(word + 1, current.length * 2)];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        current = grown;
+    }
+
+    long bit = 1L << accountId;
+    if((current[word] & bit) == 0)
+    {
+        current[word] |= bit;
+        size++;
+    }
+
+    //Publishing the change to lock-free readers
+    words = current;
+}
+
+
+/*
+* Returns the index counters for the metrics endpoint.
+*
+* @return Returns the number of IDs, memory used and lookup outcomes.
+*/
+public synchronized Map<String, Object> getStats()
+{
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("accounts", size);
+    stats.put("memory_bytes", (long) words.length * Long.BYTES);
+    stats.put("hits", hits.get());
+    stats.put("unsure", unsure.get());
+    return stats;
+}
+
+}
@@ -0,0 +1,82 @@
+package DAO;
+
+import Model.Account;
+
+/*
+* Storage for accounts. AccountDAO keeps them in the database;
+* InMemoryAccountStore keeps them in the JVM. Services only
+* depend on this interface, so the engine is a startup choice.
+*/
+public interface AccountStore {
+
+/*
+* Checks if a username and password are valid parameters for a
+* new account registration, including that the username is free.
+*
+* @param username
+* @param password
+*
+* @return Returns a boolean based on the validity of the
+*         provided username and password for an account registration.
+*/
+boolean validAccountParameters(String username, String password);
+
+
+/*
+* Searches for an account with the provided username.
+*
+* @param username
+*
+* @return Returns an account if one matching the provided
+*         username exists, otherwise returns null.
+*/
+Account getAccountByUsername(String username);
+
+
+/*
+* Registers an account.
+*
+* @param account
+*
+* @return Returns the registered account with its account_id
+*         if the registration is successful, otherwise returns null.
+*/
+Account registerAccount(Account account);
+
+
+/*
+* Searches for an account with the provided username and password.
+*
+* @param username
+* @param password
+*
+* @return Returns an account if one matching the provided
+*         username and password exists, otherwise returns null.
+*/
+Account logInAccount(String username, String password);
+
+
+/*
+* Checks the parts of a registration that do not depend on
+* stored accounts: the username is not blank, the password is
+* at least 4 characters and neither is over 255 characters.
+*
+* @param username
+* @param password
+*
+* @return Returns true if the username and password are well formed.
+*/
+static boolean wellFormed(String username, String password)
+{
+    //Checking if username is blank and password is at least 4 characters
+    if(username.equals("") == true || password.length() < 4)
+        return false;
+
+    //Checking if username and password are over the character limit
+    if(username.length() > 255 || password.length() > 255)
+        return false;
+
+    return true;
+}
+
+}
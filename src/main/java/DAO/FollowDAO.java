@@ -0,0 +1,205 @@
+package DAO;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import Util.ConnectionUtil;
+import Util.IntList;
+
+public class FollowDAO implements FollowStore {
+
+/*
+* SQLState H2 reports when an insert repeats a primary key
+*/
+private static final String DUPLICATE_KEY = "23505";
+
+
+/*
+* Inserts a row into the Follow table.
+*
+* @param followerId
+* @param followeeId
+*
+* @return Returns true if the row was inserted, false if it
+*         already existed or could not be inserted.
+*/
+public boolean follow(int followerId, int followeeId)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //SQL Statement
+        String sql = "INSERT INTO Follow (follower_id, followee_id) VALUES (?, ?)";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement's parameters
+        ps.setInt(1, followerId);
+        ps.setInt(2, followeeId);
+
+        ps.executeUpdate();
+        return true;
+    }
+    catch(SQLException e)
+    {
+        //Following twice is not an error
+        if(DUPLICATE_KEY.equals(e.getSQLState()) == false)
+            System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return false;
+}
+
+
+/*
+* Deletes a row from the Follow table.
+*
+* @param followerId
+* @param followeeId
+*
+* @return Returns true if a row was deleted.
+*/
+public boolean unfollow(int followerId, int followeeId)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //SQL Statement
+        String sql = "DELETE FROM Follow WHERE follower_id = ? AND followee_id = ?";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement's parameters
+        ps.setInt(1, followerId);
+        ps.setInt(2, followeeId);
+
+        return ps.executeUpdate() > 0;
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return false;
+}
+
+
+/*
+* Gets the followers of an account from the follow_followee index.
+*
+* @param followeeId
+*
+* @return Returns the follower IDs in ascending order.
+*/
+public int[] getFollowers(int followeeId)
+{
+    return queryIds("SELECT follower_id FROM Follow WHERE followee_id = ? ORDER BY followee_id, follower_id", followeeId);
+}
+
+
+/*
+* Gets the accounts an account follows from the primary key.
+*
+* @param followerId
+*
+* @return Returns the followee IDs in ascending order.
+*/
+public int[] getFollowees(int followerId)
+{
+    return queryIds("SELECT followee_id FROM Follow WHERE follower_id = ? ORDER BY follower_id, followee_id", followerId);
+}
+
+
+/*
+* Counts the followers of every account that has any.
+*
+* @return Returns a map of followee ID to follower count.
+*/
+public Map<Integer, Integer> getFollowerCounts()
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    //Creating output map
+    Map<Integer, Integer> counts = new HashMap<>();
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT followee_id, COUNT(*) AS followers FROM Follow GROUP BY followee_id";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Getting result of SQL statement
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+            counts.put(rs.getInt("followee_id"), rs.getInt("followers"));
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return counts;
+}
+
+
+/*
+* Runs a query for a single column of account IDs.
+*
+* @param sql a query with one int parameter
+* @param accountId the parameter
+*
+* @return Returns the IDs in the order the query gives them.
+*/
+private int[] queryIds(String sql, int accountId)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    //Creating output list
+    IntList ids = new IntList();
+
+    try
+    {
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameter
+        ps.setInt(1, accountId);
+
+        //Getting result of SQL statement
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+            ids.add(rs.getInt(1));
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return ids.toArray();
+}
+
+}
@@ -0,0 +1,62 @@
+package DAO;
+
+import java.util.Map;
+
+/*
+* Storage for the follow graph: which accounts follow which.
+* FollowDAO keeps it in the database; InMemoryFollowStore keeps
+* it in the JVM.
+*/
+public interface FollowStore {
+
+/*
+* Records that one account follows another.
+*
+* @param followerId
+* @param followeeId
+*
+* @return Returns true if the follow is new, false if it
+*         already existed.
+*/
+boolean follow(int followerId, int followeeId);
+
+
+/*
+* Removes a follow.
+*
+* @param followerId
+* @param followeeId
+*
+* @return Returns true if the follow existed.
+*/
+boolean unfollow(int followerId, int followeeId);
+
+
+/*
+* Gets the accounts following an account.
+*
+* @param followeeId
+*
+* @return Returns the follower IDs in ascending order.
+*/
+int[] getFollowers(int followeeId);
+
+
+/*
+* Gets the accounts an account follows.
+*
+* @param followerId
+*
+* @return Returns the followee IDs in ascending order.
+*/
+int[] getFollowees(int followerId);
+
+
+/*
+* Counts the followers of every account that has any.
+*
+* @return Returns a map of followee ID to follower count.
+*/
+Map<Integer, Integer> getFollowerCounts();
+
+}
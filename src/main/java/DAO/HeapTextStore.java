@@ -0,0 +1,117 @@
+package DAO;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Util.IntList;
+
+/*
+* Message texts kept as Strings on the heap. Equal texts are stored
+* once and shared through an int reference with a count of the rows
+* using it; a reference is reused once no row uses it.
+*/
+class HeapTextStore implements TextStore {
+
+private String[] texts = new String[1024];
+private int[] refCounts = new int[1024];
+private int used;
+private final Map<String, Integer> refsByText = new HashMap<>();
+private final IntList freeRefs = new IntList();
+private long charCount;
+
+
+/*
+* Stores a text, or finds the copy already stored.
+*
+* @param text
+*
+* @return Returns the reference for the text.
+*/
+public int store(String text)
+{
+    Integer existing = refsByText.get(text);
+    if(existing != null)
+    {
+        refCounts[existing]++;
+        return existing;
+    }
+
+    //Reusing a released reference before growing the arrays
+    int ref;
+    if(freeRefs.size() > 0)
+    {
+        ref = freeRefs.get(freeRefs.size() - 1);
+        freeRefs.removeAt(freeRefs.size() - 1);
+    }
+    else
+    {
+        if(used == texts.length)
+        {
+            texts = Arrays.copyOf(texts, used * 2);
+            refCounts = Arrays.copyOf(refCounts, used * 2);
+        }
+        ref = used++;
+    }
+
+    texts[ref] = text;
+    refCounts[ref] = 1;
+    refsByText.put(text, ref);
+    charCount += text.length();
+    return ref;
+}
+
+
+/*
+* Returns the text for a reference.
+*
+* @param ref
+*
+* @return Returns the text.
+*/
+public String get(int ref)
+{
+    return texts[ref];
+}
+
+
+/*
+* Drops one use of a reference, freeing it when no row uses it.
+*
+* @param ref
+*/
+public void release(int ref)
+{
+    if(--refCounts[ref] > 0)
+        return;
+
+    refsByText.remove(texts[ref]);
+    charCount -= texts[ref].length();
+    texts[ref] = null;
+    freeRefs.add(ref);
+}
+
+
+/*
+* Returns the store counters for the metrics endpoint. Heap use is
+* estimated from the String and map entry layouts of a 64-bit JVM
+* with compressed pointers.
+*
+* @return Returns the number of distinct texts and their estimated heap use.
+*/
+public Map<String, Object> getStats()
+{
+    //String header and value array per text, plus one HashMap entry and boxed Integer
+    long heapBytes = refsByText.size() * (24L + 16 + 32 + 16) + charCount + 8L * texts.length;
+
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("kind", "heap");
+    stats.put("texts", refsByText.size());
+    stats.put("chars", charCount);
+    stats.put("estimated_heap_bytes", heapBytes);
+    stats.put("off_heap_bytes", 0L);
+    return stats;
+}
+
+}
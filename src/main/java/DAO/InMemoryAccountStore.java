@@ -0,0 +1,252 @@
+package DAO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Account;
+
+/*
+* Account storage held entirely in the JVM. Accounts are never
+* deleted, so usernames and passwords are columns indexed directly
+* by account_id, with a hash index from username to account_id.
+*/
+public class InMemoryAccountStore implements AccountStore {
+
+/*
+* Guards every field below. InMemoryMessageStore takes this lock
+* while holding its own, never the other way around.
+*/
+final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+private String[] usernames = new String[1024];
+private String[] passwords = new String[1024];
+private final Map<String, Integer> idsByUsername = new HashMap<>();
+private int nextAccountId = 1;
+
+
+/*
+* Checks if a username and password are valid parameters for a
+* new account registration.
+*
+* @param username
+* @param password
+*
+* @return Returns a boolean based on the validity of the
+*         provided username and password for an account registration.
+*/
+public boolean validAccountParameters(String username, String password)
+{
+    //Checking the username and password themselves
+    if(AccountStore.wellFormed(username, password) == false)
+        return false;
+
+    //Checking if account with provided username exists
+    if(getAccountByUsername(username) != null)
+        return false;
+
+    return true;
+}
+
+
+/*
+* Searches for an account with the provided username.
+*
+* @param username
+*
+* @return Returns an account if one matching the provided
+*         username exists, otherwise returns null.
+*/
+public Account getAccountByUsername(String username)
+{
+    lock.readLock().lock();
+    try
+    {
+        Integer accountId = idsByUsername.get(username);
+        if(accountId == null)
+            return null;
+        return new Account(accountId, usernames[accountId], passwords[accountId]);
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+
+/*
+* Registers an account, giving it the next account_id.
+*
+* @param account
+*
+* @return Returns the registered account, or null if the
+*         username is already taken.
+*/
+public Account registerAccount(Account account)
+{
+    lock.writeLock().lock();
+    try
+    {
+        //Enforcing the same uniqueness the database constraint would
+        if(idsByUsername.containsKey(account.getUsername()))
+            return null;
+
+        int accountId = nextAccountId++;
+        put(accountId, account.getUsername(), account.getPassword());
+        return new Account(accountId, account.getUsername(), account.getPassword());
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Searches for an account with the provided username and password.
+*
+* @param username
+* @param password
+*
+* @return Returns an account if one matching the provided
+*         username and password exists, otherwise returns null.
+*/
+public Account logInAccount(String username, String password)
+{
+    Account account = getAccountByUsername(username);
+    if(account == null || account.getPassword().equals(password) == false)
+        return null;
+    return account;
+}
+
+
+/*
+* Checks if an account exists.
+*
+* @param accountId
+*
+* @return Returns true if an account with the ID exists.
+*/
+public boolean exists(int accountId)
+{
+    lock.readLock().lock();
+    try
+    {
+        return accountId > 0 && accountId < usernames.length && usernames[accountId] != null;
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+
+/*
+* Finds which of the provided account IDs exist.
+*
+* @param accountIds
+*
+* @return Returns the subset of the provided IDs that belong
+*         to an account.
+*/
+public Set<Integer> existingIds(Collection<Integer> accountIds)
+{
+    Set<Integer> existingIds = new HashSet<>();
+    lock.readLock().lock();
+    try
+    {
+        for(int accountId : accountIds)
+        {
+            if(accountId > 0 && accountId < usernames.length && usernames[accountId] != null)
+                existingIds.add(accountId);
+        }
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+    return existingIds;
+}
+
+
+/*
+* Adds an account with a known ID, for imports and snapshots.
+* Must be called holding the write lock.
+*/
+void put(int accountId, String username, String password)
+{
+    if(accountId >= usernames.length)
+    {
+        int capacity = Math.max(accountId + 1, usernames.length * 2);
+        usernames = Arrays.copyOf(usernames, capacity);
+        passwords = Arrays.copyOf(passwords, capacity);
+    }
+
+    usernames[accountId] = username;
+    passwords[accountId] = password;
+    idsByUsername.put(username, accountId);
+    nextAccountId = Math.max(nextAccountId, accountId + 1);
+}
+
+
+/*
+* Writes every account to a snapshot. Must be called holding a lock.
+*/
+void writeTo(DataOutputStream out) throws IOException
+{
+    out.writeInt(nextAccountId);
+    out.writeInt(idsByUsername.size());
+    for(int accountId = 1; accountId < usernames.length; accountId++)
+    {
+        if(usernames[accountId] == null)
+            continue;
+        out.writeInt(accountId);
+        out.writeUTF(usernames[accountId]);
+        out.writeUTF(passwords[accountId]);
+    }
+}
+
+
+/*
+* Reads the accounts written by writeTo. Must be called holding the write lock.
+*/
+void readFrom(DataInputStream in) throws IOException
+{
+    int next = in.readInt();
+    int count = in.readInt();
+    for(int i = 0; i < count; i++)
+        put(in.readInt(), in.readUTF(), in.readUTF());
+    nextAccountId = Math.max(nextAccountId, next);
+}
+
+
+/*
+* Returns the store counters for the metrics endpoint.
+*
+* @return Returns the number of accounts and the next account_id.
+*/
+public Map<String, Object> getStats()
+{
+    lock.readLock().lock();
+    try
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accounts", idsByUsername.size());
+        stats.put("next_account_id", nextAccountId);
+        return stats;
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+}
@@ -0,0 +1,258 @@
+package DAO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Util.IntList;
+
+/*
+* Follow graph held entirely in the JVM, as two adjacency maps: the
+* sorted followers of each account and the sorted followees of each
+* account. Every follow appears once in each.
+*/
+public class InMemoryFollowStore implements FollowStore {
+
+/*
+* Guards every field below. Taken after the message store's lock and
+* before the account store's.
+*/
+final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+private final Map<Integer, IntList> followersOf = new HashMap<>();
+private final Map<Integer, IntList> followeesOf = new HashMap<>();
+private long follows;
+
+
+/*
+* Records that one account follows another.
+*
+* @param followerId
+* @param followeeId
+*
+* @return Returns true if the follow is new, false if it
+*         already existed.
+*/
+public boolean follow(int followerId, int followeeId)
+{
+    lock.writeLock().lock();
+    try
+    {
+        return put(followerId, followeeId);
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Removes a follow.
+*
+* @param followerId
+* @param followeeId
+*
+* @return Returns true if the follow existed.
+*/
+public boolean unfollow(int followerId, int followeeId)
+{
+    lock.writeLock().lock();
+    try
+    {
+        if(removeFrom(followersOf, followeeId, followerId) == false)
+            return false;
+
+        removeFrom(followeesOf, followerId, followeeId);
+        follows--;
+        return true;
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Gets the accounts following an account.
+*
+* @param followeeId
+*
+* @return Returns the follower IDs in ascending order.
+*/
+public int[] getFollowers(int followeeId)
+{
+    return copyOf(followersOf, followeeId);
+}
+
+
+/*
+* Gets the accounts an account follows.
+*
+* @param followerId
+*
+* @return Returns the followee IDs in ascending order.
+*/
+public int[] getFollowees(int followerId)
+{
+    return copyOf(followeesOf, followerId);
+}
+
+
+/*
+* Counts the followers of every account that has any.
+*
+* @return Returns a map of followee ID to follower count.
+*/
+public Map<Integer, Integer> getFollowerCounts()
+{
+    Map<Integer, Integer> counts = new HashMap<>();
+    lock.readLock().lock();
+    try
+    {
+        for(Map.Entry<Integer, IntList> entry : followersOf.entrySet())
+            counts.put(entry.getKey(), entry.getValue().size());
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+    return counts;
+}
+
+
+/*
+* Adds a follow, for imports, snapshots and follow. Must be called
+* holding the write lock.
+*
+* @return Returns true if the follow is new.
+*/
+boolean put(int followerId, int followeeId)
+{
+    if(addTo(followersOf, followeeId, followerId) == false)
+        return false;
+
+    addTo(followeesOf, followerId, followeeId);
+    follows++;
+    return true;
+}
+
+
+/*
+* Writes every follow to a snapshot. Must be called holding a lock.
+*/
+void writeTo(DataOutputStream out) throws IOException
+{
+    out.writeLong(follows);
+    for(Map.Entry<Integer, IntList> entry : followeesOf.entrySet())
+    {
+        IntList followees = entry.getValue();
+        for(int i = 0; i < followees.size(); i++)
+        {
+            out.writeInt(entry.getKey());
+            out.writeInt(followees.get(i));
+        }
+    }
+}
+
+
+/*
+* Reads the follows written by writeTo. Must be called holding the write lock.
+*/
+void readFrom(DataInputStream in) throws IOException
+{
+    long count = in.readLong();
+    for(long i = 0; i < count; i++)
+        put(in.readInt(), in.readInt());
+}
+
+
+/*
+* Returns the store counters for the metrics endpoint.
+*
+* @return Returns the follow count and index memory.
+*/
+public Map<String, Object> getStats()
+{
+    lock.readLock().lock();
+    try
+    {
+        long indexBytes = 0;
+        for(IntList list : followersOf.values())
+            indexBytes += list.memoryBytes();
+        for(IntList list : followeesOf.values())
+            indexBytes += list.memoryBytes();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("follows", follows);
+        stats.put("accounts_followed", followersOf.size());
+        stats.put("accounts_following", followeesOf.size());
+        stats.put("index_bytes", indexBytes);
+        return stats;
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+
+/*
+* Adds an ID to a sorted adjacency list, creating the list if needed.
+*
+* @return Returns false if the ID was already in the list.
+*/
+private static boolean addTo(Map<Integer, IntList> adjacency, int accountId, int otherId)
+{
+    IntList list = adjacency.computeIfAbsent(accountId, id -> new IntList(4));
+    int position = list.binarySearch(otherId);
+    if(position >= 0)
+        return false;
+
+    list.insert(-position - 1, otherId);
+    return true;
+}
+
+
+/*
+* Removes an ID from a sorted adjacency list, dropping the list once empty.
+*
+* @return Returns false if the ID was not in the list.
+*/
+private static boolean removeFrom(Map<Integer, IntList> adjacency, int accountId, int otherId)
+{
+    IntList list = adjacency.get(accountId);
+    int position = list == null ? -1 : list.binarySearch(otherId);
+    if(position < 0)
+        return false;
+
+    list.removeAt(position);
+    if(list.size() == 0)
+        adjacency.remove(accountId);
+    return true;
+}
+
+
+/*
+* Copies an adjacency list out under the read lock.
+*/
+private int[] copyOf(Map<Integer, IntList> adjacency, int accountId)
+{
+    lock.readLock().lock();
+    try
+    {
+        IntList list = adjacency.get(accountId);
+        return list == null ? new int[0] : list.toArray();
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+}
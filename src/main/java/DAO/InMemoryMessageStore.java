@@ -0,0 +1,815 @@
+package DAO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Message;
+import Util.IntIntHashMap;
+import Util.IntList;
+
+/*
+* Message storage held entirely in the JVM, as columns of primitive
+* arrays with one row per slot: message_id, posted_by,
+* time_posted_epoch and a reference into a TextStore. Slots are
+* appended in message_id order, so the message_id column stays sorted
+* and keyset pages are a binary search away.
+*
+* A hash index maps message_id to slot, and another maps posted_by to
+* the account's slots in message_id order and in timeline order. A time
+* index keeps every slot in time_posted_epoch order, ties broken by
+* message_id, for range reads. Deleted rows leave a dead slot behind,
+* in the time index too, until enough have built up to be worth
+* compacting.
+*
+* Readers share a read lock and copy out the rows they need, so a slow
+* consumer never holds up writers.
+*/
+public class InMemoryMessageStore implements MessageStore {
+
+/*
+* Number of rows copied out per lock acquisition when streaming
+*/
+public static final int STREAM_CHUNK_SIZE = 256;
+
+/*
+* Text reference of a dead slot
+*/
+private static final int DEAD = -1;
+
+/*
+* Guards every field below. Taken before the account store's lock.
+*/
+final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+private final InMemoryAccountStore accounts;
+
+//Columns
+private int[] messageIds = new int[1024];
+private int[] postedBy = new int[1024];
+private long[] epochs = new long[1024];
+private int[] textRefs = new int[1024];
+private int slots;
+private int liveRows;
+private int nextMessageId = 1;
+
+//Indexes
+private final IntIntHashMap slotsById = new IntIntHashMap(1024);
+private final IntIntHashMap accountPositions = new IntIntHashMap(64);
+private IntList[] accountSlots = new IntList[64];
+private IntList[] accountTimeSlots = new IntList[64];
+private int accountCount;
+private final IntList timeSlots = new IntList(1024);
+private final TextStore texts;
+
+private long compactions;
+
+
+/*
+* Constructor, keeping texts where the socialmedia.memory.text
+* system property says
+*
+* @param accounts the account store that posted_by must refer to
+*/
+public InMemoryMessageStore(InMemoryAccountStore accounts)
+{
+    this(accounts, TextStore.fromSystemProperties());
+}
+
+
+/*
+* Constructor with provided text store
+*
+* @param accounts the account store that posted_by must refer to
+* @param texts
+*/
+InMemoryMessageStore(InMemoryAccountStore accounts, TextStore texts)
+{
+    this.accounts = accounts;
+    this.texts = texts;
+}
+
+
+/*
+* Checks if a message text and account id are valid
+* parameters for a new message's creation.
+*
+* @param messageText
+* @param accountId
+*
+* @return Returns a boolean based on the validity of the
+*         provided message text and account ID for a message's creation.
+*/
+public boolean validMessageParameters(String messageText, int accountId)
+{
+    return validMessageText(messageText) && accounts.exists(accountId);
+}
+
+
+/*
+* Finds which of the provided account IDs exist.
+*
+* @param accountIds
+*
+* @return Returns the subset of the provided IDs that belong
+*         to an account.
+*/
+public Set<Integer> getExistingAccountIds(Collection<Integer> accountIds)
+{
+    return accounts.existingIds(accountIds);
+}
+
+
+/*
+* Creates a message with the next message_id.
+*
+* @param message
+*
+* @return Returns the created message, or null if posted_by
+*         does not refer to an account.
+*/
+public Message createMessage(Message message)
+{
+    lock.writeLock().lock();
+    try
+    {
+        //Enforcing the same reference the foreign key would
+        if(accounts.exists(message.getPosted_by()) == false)
+            return null;
+
+        int messageId = nextMessageId++;
+        append(messageId, message.getPosted_by(), message.getTime_posted_epoch(), message.getMessage_text());
+        return new Message(messageId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Creates many messages under one lock acquisition, all or nothing.
+*
+* @param messages messages that have already been validated
+*
+* @return Returns the created messages, in the same order, or
+*         null if any posted_by does not refer to an account.
+*/
+public List<Message> createMessages(List<Message> messages)
+{
+    List<Message> createdMessages = new ArrayList<>(messages.size());
+    lock.writeLock().lock();
+    try
+    {
+        for(Message message : messages)
+        {
+            if(accounts.exists(message.getPosted_by()) == false)
+                return null;
+        }
+
+        for(Message message : messages)
+        {
+            int messageId = nextMessageId++;
+            append(messageId, message.getPosted_by(), message.getTime_posted_epoch(), message.getMessage_text());
+            createdMessages.add(new Message(messageId, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch()));
+        }
+        return createdMessages;
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Gets a list of all messages, in message ID order.
+*
+* @return Returns a list of messages.
+*/
+public List<Message> getAllMessages()
+{
+    return getMessagesPage(0, Integer.MAX_VALUE);
+}
+
+
+/*
+* Searches for a message with the provided ID.
+*
+* @param messageId
+*
+* @return Returns the message, or null if it does not exist.
+*/
+public Message getMessageById(int messageId)
+{
+    lock.readLock().lock();
+    try
+    {
+        int slot = slotsById.get(messageId, DEAD);
+        return slot == DEAD ? null : row(slot);
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+
+/*
+* Deletes a message with the provided ID.
+*
+* @param messageId
+*
+* @return Returns the deleted message, or null if it did not exist.
+*/
+public Message deleteMessageById(int messageId)
+{
+    lock.writeLock().lock();
+    try
+    {
+        int slot = slotsById.get(messageId, DEAD);
+        if(slot == DEAD)
+            return null;
+
+        Message deletedMessage = row(slot);
+
+        //Unlinking the slot from both indexes and the text pool
+        slotsById.remove(messageId);
+        int position = accountPositions.get(postedBy[slot], DEAD);
+        IntList slotsOfAccount = accountSlots[position];
+        slotsOfAccount.removeAt(search(slotsOfAccount, messageId, false));
+        IntList timelineOfAccount = accountTimeSlots[position];
+        timelineOfAccount.removeAt(timeSearch(timelineOfAccount, epochs[slot], messageId - 1));
+        texts.release(textRefs[slot]);
+        textRefs[slot] = DEAD;
+        liveRows--;
+
+        //Reclaiming dead slots once they are the majority
+        if(slots > 1024 && liveRows < slots / 2)
+            compact();
+
+        return deletedMessage;
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Replaces the text of a message with the provided ID.
+*
+* @param messageId
+* @param updateText
+*
+* @return Returns the patched message, or null if it does not exist.
+*/
+public Message patchMessageById(int messageId, String updateText)
+{
+    //Checking if update text is valid, as MessageDAO does
+    if(validMessageText(updateText) == false)
+        return null;
+
+    lock.writeLock().lock();
+    try
+    {
+        int slot = slotsById.get(messageId, DEAD);
+        if(slot == DEAD)
+            return null;
+
+        int newRef = texts.store(updateText);
+        texts.release(textRefs[slot]);
+        textRefs[slot] = newRef;
+        return row(slot);
+    }
+    finally
+    {
+        lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Gets a list of every message posted by an account, in message ID order.
+*
+* @param accountId
+*
+* @return Returns a list of messages.
+*/
+public List<Message> getAllAccountMessages(int accountId)
+{
+    return getAccountMessagesPage(accountId, 0, Integer.MAX_VALUE);
+}
+
+
+/*
+* Gets the messages with an ID after the provided one,
+* in message ID order.
+*
+* @param afterMessageId 0 for the first page
+* @param limit
+*
+* @return Returns up to limit messages.
+*/
+public List<Message> getMessagesPage(int afterMessageId, int limit)
+{
+    List<Message> messages = new ArrayList<>(Math.min(limit, STREAM_CHUNK_SIZE));
+    lock.readLock().lock();
+    try
+    {
+        //Finding the first slot past the cursor, then skipping dead slots
+        int slot = Arrays.binarySearch(messageIds, 0, slots, afterMessageId);
+        slot = slot >= 0 ? slot + 1 : -slot - 1;
+        for(; slot < slots && messages.size() < limit; slot++)
+        {
+            if(textRefs[slot] != DEAD)
+                messages.add(row(slot));
+        }
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+    return messages;
+}
+
+
+/*
+* Gets the messages posted by an account with an ID after
+* the provided one, in message ID order.
+*
+* @param accountId
+* @param afterMessageId 0 for the first page
+* @param limit
+*
+* @return Returns up to limit messages.
+*/
+public List<Message> getAccountMessagesPage(int accountId, int afterMessageId, int limit)
+{
+    List<Message> messages = new ArrayList<>();
+    lock.readLock().lock();
+    try
+    {
+        int position = accountPositions.get(accountId, DEAD);
+        if(position == DEAD)
+            return messages;
+
+        IntList slotsOfAccount = accountSlots[position];
+        for(int i = search(slotsOfAccount, afterMessageId, true); i < slotsOfAccount.size() && messages.size() < limit; i++)
+            messages.add(row(slotsOfAccount.get(i)));
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+    return messages;
+}
+
+
+/*
+* Gets the newest messages posted by an account with an ID
+* before the provided one, walking the account's slots backwards.
+*
+* @param accountId
+* @param beforeMessageId Integer.MAX_VALUE for the newest
+* @param limit
+*
+* @return Returns up to limit messages, newest first.
+*/
+public List<Message> getRecentAccountMessages(int accountId, int beforeMessageId, int limit)
+{
+    List<Message> messages = new ArrayList<>();
+    lock.readLock().lock();
+    try
+    {
+        int position = accountPositions.get(accountId, DEAD);
+        if(position == DEAD)
+            return messages;
+
+        IntList slotsOfAccount = accountSlots[position];
+        for(int i = search(slotsOfAccount, beforeMessageId, false) - 1; i >= 0 && messages.size() < limit; i--)
+        {
+            int slot = slotsOfAccount.get(i);
+            if(messageIds[slot] < beforeMessageId)
+                messages.add(row(slot));
+        }
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+    return messages;
+}
+
+
+/*
+* Streams every message to a consumer, copying out a chunk
+* of rows at a time so the lock is never held while the
+* consumer runs.
+*
+* @param consumer receives each message in message ID order
+*
+* @throws IOException if the consumer fails, which stops the read.
+*/
+public void forEachMessage(MessageConsumer consumer) throws IOException
+{
+    int afterMessageId = 0;
+    while(true)
+    {
+        List<Message> chunk = getMessagesPage(afterMessageId, STREAM_CHUNK_SIZE);
+        for(Message message : chunk)
+            consumer.accept(message);
+        if(chunk.size() < STREAM_CHUNK_SIZE)
+            return;
+        afterMessageId = chunk.get(chunk.size() - 1).getMessage_id();
+    }
+}
+
+
+/*
+* Streams every message posted by an account to a consumer,
+* as a timeline.
+*
+* @param accountId
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the consumer fails, which stops the read.
+*/
+public void forEachAccountMessage(int accountId, MessageConsumer consumer) throws IOException
+{
+    forEachAccountMessageInRange(accountId, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+}
+
+
+/*
+* Streams the messages posted within a time range to a consumer,
+* reading the time index a chunk at a time.
+*
+* @param from earliest time_posted_epoch, inclusive
+* @param to latest time_posted_epoch, inclusive
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the consumer fails, which stops the read.
+*/
+public void forEachMessageInRange(long from, long to, MessageConsumer consumer) throws IOException
+{
+    streamTimeRange(-1, from, to, consumer);
+}
+
+
+/*
+* Streams the messages an account posted within a time range
+* to a consumer, reading the account's timeline a chunk at a time.
+*
+* @param accountId
+* @param from earliest time_posted_epoch, inclusive
+* @param to latest time_posted_epoch, inclusive
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the consumer fails, which stops the read.
+*/
+public void forEachAccountMessageInRange(int accountId, long from, long to, MessageConsumer consumer) throws IOException
+{
+    streamTimeRange(accountId, from, to, consumer);
+}
+
+
+/*
+* Streams a time range of the time index, or of one account's
+* timeline, resuming each chunk after the last message sent.
+*
+* @param accountId the account, or -1 for every message
+*/
+private void streamTimeRange(int accountId, long from, long to, MessageConsumer consumer) throws IOException
+{
+    //Starting just before the first possible message_id at from
+    long afterEpoch = from;
+    int afterMessageId = Integer.MIN_VALUE;
+    List<Message> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+    while(true)
+    {
+        chunk.clear();
+        boolean more = false;
+        lock.readLock().lock();
+        try
+        {
+            IntList timeline = timeSlots;
+            if(accountId != -1)
+            {
+                int position = accountPositions.get(accountId, DEAD);
+                if(position == DEAD)
+                    return;
+                timeline = accountTimeSlots[position];
+            }
+
+            for(int i = timeSearch(timeline, afterEpoch, afterMessageId); i < timeline.size(); i++)
+            {
+                int slot = timeline.get(i);
+                if(epochs[slot] > to)
+                    break;
+                if(chunk.size() == STREAM_CHUNK_SIZE)
+                {
+                    more = true;
+                    break;
+                }
+                if(textRefs[slot] != DEAD)
+                    chunk.add(row(slot));
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        for(Message message : chunk)
+            consumer.accept(message);
+        if(more == false)
+            return;
+
+        Message last = chunk.get(chunk.size() - 1);
+        afterEpoch = last.getTime_posted_epoch();
+        afterMessageId = last.getMessage_id();
+    }
+}
+
+
+/*
+* Adds a row with a known ID, for imports and snapshots.
+* Must be called holding the write lock.
+*/
+void put(int messageId, int accountId, long epoch, String text)
+{
+    append(messageId, accountId, epoch, text);
+    nextMessageId = Math.max(nextMessageId, messageId + 1);
+}
+
+
+/*
+* Writes every live row to a snapshot. Must be called holding a lock.
+*/
+void writeTo(DataOutputStream out) throws IOException
+{
+    out.writeInt(nextMessageId);
+    out.writeInt(liveRows);
+    for(int slot = 0; slot < slots; slot++)
+    {
+        if(textRefs[slot] == DEAD)
+            continue;
+        out.writeInt(messageIds[slot]);
+        out.writeInt(postedBy[slot]);
+        out.writeLong(epochs[slot]);
+        out.writeUTF(texts.get(textRefs[slot]));
+    }
+}
+
+
+/*
+* Reads the rows written by writeTo. Must be called holding the write lock.
+*/
+void readFrom(DataInputStream in) throws IOException
+{
+    int next = in.readInt();
+    int count = in.readInt();
+    for(int i = 0; i < count; i++)
+        put(in.readInt(), in.readInt(), in.readLong(), in.readUTF());
+    nextMessageId = Math.max(nextMessageId, next);
+}
+
+
+/*
+* Returns the store counters for the metrics endpoint.
+*
+* @return Returns row counts, text pool size and index memory.
+*/
+public Map<String, Object> getStats()
+{
+    lock.readLock().lock();
+    try
+    {
+        long columnBytes = (long) messageIds.length * (Integer.BYTES * 3 + Long.BYTES);
+        long indexBytes = slotsById.memoryBytes() + accountPositions.memoryBytes() + timeSlots.memoryBytes();
+        for(int i = 0; i < accountCount; i++)
+            indexBytes += accountSlots[i].memoryBytes() + accountTimeSlots[i].memoryBytes();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("messages", liveRows);
+        stats.put("slots", slots);
+        stats.put("accounts_with_messages", accountCount);
+        stats.put("column_bytes", columnBytes);
+        stats.put("index_bytes", indexBytes);
+        stats.put("compactions", compactions);
+        stats.put("next_message_id", nextMessageId);
+        stats.put("text_store", texts.getStats());
+        return stats;
+    }
+    finally
+    {
+        lock.readLock().unlock();
+    }
+}
+
+
+/*
+* Appends a row and indexes it. Rows must arrive in message_id
+* order. Must be called holding the write lock.
+*/
+private void append(int messageId, int accountId, long epoch, String text)
+{
+    if(slots > 0 && messageId <= messageIds[slots - 1])
+        throw new IllegalStateException("Message " + messageId + " is out of order");
+
+    if(slots == messageIds.length)
+    {
+        int capacity = slots * 2;
+        messageIds = Arrays.copyOf(messageIds, capacity);
+        postedBy = Arrays.copyOf(postedBy, capacity);
+        epochs = Arrays.copyOf(epochs, capacity);
+        textRefs = Arrays.copyOf(textRefs, capacity);
+    }
+
+    int slot = slots++;
+    messageIds[slot] = messageId;
+    postedBy[slot] = accountId;
+    epochs[slot] = epoch;
+    textRefs[slot] = texts.store(text);
+    liveRows++;
+
+    slotsById.put(messageId, slot);
+    int position = positionOf(accountId);
+    accountSlots[position].add(slot);
+    insertByTime(accountTimeSlots[position], slot);
+    insertByTime(timeSlots, slot);
+}
+
+
+/*
+* Returns the position of an account's slot lists, creating them if needed.
+*/
+private int positionOf(int accountId)
+{
+    int position = accountPositions.get(accountId, DEAD);
+    if(position != DEAD)
+        return position;
+
+    if(accountCount == accountSlots.length)
+    {
+        accountSlots = Arrays.copyOf(accountSlots, accountCount * 2);
+        accountTimeSlots = Arrays.copyOf(accountTimeSlots, accountCount * 2);
+    }
+    position = accountCount++;
+    accountSlots[position] = new IntList(4);
+    accountTimeSlots[position] = new IntList(4);
+    accountPositions.put(accountId, position);
+    return position;
+}
+
+
+/*
+* Adds a slot to a list kept in timeline order. Messages usually
+* arrive in time order, so this is nearly always an append.
+*/
+private void insertByTime(IntList timeline, int slot)
+{
+    int size = timeline.size();
+    if(size == 0 || compareTime(timeline.get(size - 1), epochs[slot], messageIds[slot]) < 0)
+        timeline.add(slot);
+    else
+        timeline.insert(timeSearch(timeline, epochs[slot], messageIds[slot]), slot);
+}
+
+
+/*
+* Binary search of a list kept in timeline order.
+*
+* @return Returns the position of the first slot ordered after
+*         the provided time_posted_epoch and message_id.
+*/
+private int timeSearch(IntList timeline, long epoch, int messageId)
+{
+    int low = 0;
+    int high = timeline.size() - 1;
+    while(low <= high)
+    {
+        int mid = (low + high) >>> 1;
+        if(compareTime(timeline.get(mid), epoch, messageId) <= 0)
+            low = mid + 1;
+        else
+            high = mid - 1;
+    }
+    return low;
+}
+
+
+/*
+* Compares a slot to a time_posted_epoch and message_id, in timeline order.
+*/
+private int compareTime(int slot, long epoch, int messageId)
+{
+    int byEpoch = Long.compare(epochs[slot], epoch);
+    return byEpoch != 0 ? byEpoch : Integer.compare(messageIds[slot], messageId);
+}
+
+
+/*
+* Binary search of an account's slots by message_id.
+*
+* @param after true to find the first slot with a greater message_id,
+*              false to find the slot with exactly this message_id
+*/
+private int search(IntList slotsOfAccount, int messageId, boolean after)
+{
+    int low = 0;
+    int high = slotsOfAccount.size() - 1;
+    while(low <= high)
+    {
+        int mid = (low + high) >>> 1;
+        int midId = messageIds[slotsOfAccount.get(mid)];
+        if(midId < messageId)
+            low = mid + 1;
+        else if(midId > messageId)
+            high = mid - 1;
+        else
+            return after ? mid + 1 : mid;
+    }
+    return low;
+}
+
+
+/*
+* Rewrites the columns without dead slots and rebuilds the indexes.
+* Must be called holding the write lock.
+*/
+private void compact()
+{
+    //Moving live rows down and remembering where each one went
+    int[] moved = new int[slots];
+    Arrays.fill(moved, DEAD);
+    int live = 0;
+    for(int slot = 0; slot < slots; slot++)
+    {
+        if(textRefs[slot] == DEAD)
+            continue;
+        moved[slot] = live;
+        messageIds[live] = messageIds[slot];
+        postedBy[live] = postedBy[slot];
+        epochs[live] = epochs[slot];
+        textRefs[live] = textRefs[slot];
+        live++;
+    }
+    slots = live;
+
+    slotsById.clear();
+    for(int i = 0; i < accountCount; i++)
+        accountSlots[i].clear();
+    for(int slot = 0; slot < slots; slot++)
+    {
+        slotsById.put(messageIds[slot], slot);
+        accountSlots[positionOf(postedBy[slot])].add(slot);
+    }
+
+    //Renumbering the time indexes in place, as moving rows keeps their order
+    for(int i = 0; i < accountCount; i++)
+        renumber(accountTimeSlots[i], moved);
+    renumber(timeSlots, moved);
+    compactions++;
+}
+
+
+/*
+* Replaces each slot in a list with where compaction moved it,
+* dropping the slots that were dead.
+*/
+private static void renumber(IntList list, int[] moved)
+{
+    int[] oldSlots = list.toArray();
+    list.clear();
+    for(int slot : oldSlots)
+    {
+        if(moved[slot] != DEAD)
+            list.add(moved[slot]);
+    }
+}
+
+
+/*
+* Builds a message from a live slot.
+*/
+private Message row(int slot)
+{
+    return new Message(messageIds[slot], postedBy[slot], texts.get(textRefs[slot]), epochs[slot]);
+}
+
+}
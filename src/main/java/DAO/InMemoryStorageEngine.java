@@ -0,0 +1,343 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Util.ConnectionUtil;
+
+/*
+* The in-memory engine: every account, message and follow lives in the JVM.
+* State is lost on exit unless a snapshot file is configured, in which
+* case it is loaded at startup and written on close, and optionally on
+* a fixed interval. Without a snapshot the engine can import the
+* current contents of the database once at startup. Writers wait
+* while a snapshot is being written, so all stores are captured at
+* the same point in time.
+*
+* Settings read from system properties:
+*   socialmedia.memory.snapshot                  snapshot file, unset for none
+*   socialmedia.memory.snapshotIntervalSeconds   0 to snapshot only on close
+*   socialmedia.memory.import                    true to import from the database
+*                                                when there is no snapshot to load
+*/
+public class InMemoryStorageEngine implements StorageEngine {
+
+/*
+* First int of every snapshot file, and the format version after it
+*/
+private static final int SNAPSHOT_MAGIC = 0x534D4D53;
+private static final int SNAPSHOT_VERSION = 2;
+
+/*
+* Version 1 snapshots, written before follows existed, are still read
+*/
+private static final int SNAPSHOT_VERSION_WITHOUT_FOLLOWS = 1;
+
+private final InMemoryAccountStore accounts = new InMemoryAccountStore();
+private final InMemoryMessageStore messages = new InMemoryMessageStore(accounts);
+private final InMemoryFollowStore follows = new InMemoryFollowStore();
+private final Path snapshotPath;
+private ScheduledExecutorService snapshotter;
+
+private volatile long lastSnapshotMillis;
+private volatile long lastSnapshotDurationMillis;
+private final AtomicLong snapshotFailures = new AtomicLong();
+private volatile String loadedFrom = "empty";
+
+
+/*
+* Constructor
+*
+* @param snapshotPath snapshot file to load and write, or null for none
+*/
+public InMemoryStorageEngine(Path snapshotPath)
+{
+    this.snapshotPath = snapshotPath;
+}
+
+
+/*
+* Creates an engine from the socialmedia.memory.* system properties,
+* loading its snapshot or importing from the database as configured.
+*
+* @return Returns the loaded engine.
+*/
+public static InMemoryStorageEngine fromSystemProperties()
+{
+    String snapshot = System.getProperty("socialmedia.memory.snapshot");
+    InMemoryStorageEngine engine = new InMemoryStorageEngine(snapshot == null ? null : Paths.get(snapshot));
+
+    if(engine.snapshotPath != null && Files.exists(engine.snapshotPath))
+        engine.loadSnapshot();
+    else if(importsFromDatabase())
+        engine.importFromDatabase();
+
+    long interval = Long.getLong("socialmedia.memory.snapshotIntervalSeconds", 0);
+    if(engine.snapshotPath != null && interval > 0)
+        engine.startSnapshotter(interval);
+
+    return engine;
+}
+
+
+/*
+* Checks the socialmedia.memory.import system property.
+*
+* @return Returns true if an engine without a snapshot should import from the database.
+*/
+static boolean importsFromDatabase()
+{
+    return Boolean.getBoolean("socialmedia.memory.import");
+}
+
+
+public AccountStore getAccountStore()
+{
+    return accounts;
+}
+
+
+public MessageStore getMessageStore()
+{
+    return messages;
+}
+
+
+public FollowStore getFollowStore()
+{
+    return follows;
+}
+
+
+public Map<String, Object> getMetrics()
+{
+    Map<String, Object> engine = new LinkedHashMap<>();
+    engine.put("loaded_from", loadedFrom);
+    engine.put("snapshot", snapshotPath == null ? null : snapshotPath.toString());
+    engine.put("last_snapshot_millis", lastSnapshotMillis);
+    engine.put("last_snapshot_duration_ms", lastSnapshotDurationMillis);
+    engine.put("snapshot_failures", snapshotFailures.get());
+    engine.put("accounts", accounts.getStats());
+    engine.put("messages", messages.getStats());
+    engine.put("follows", follows.getStats());
+
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("memory_engine", engine);
+    return metrics;
+}
+
+
+/*
+* Stops the periodic snapshots and writes a final one.
+*
+* @throws IllegalStateException if the final snapshot could not be written.
+*/
+public void close()
+{
+    if(snapshotter != null)
+        snapshotter.shutdownNow();
+    if(snapshotPath != null)
+        snapshot();
+}
+
+
+/*
+* Writes every account, message and follow to the snapshot file. The file is
+* written beside the old one and moved over it, so a crash part way
+* leaves the previous snapshot intact.
+*
+* @throws IllegalStateException if the snapshot could not be written,
+*         in which case the previous snapshot is left in place.
+*/
+public void snapshot()
+{
+    long start = System.currentTimeMillis();
+    Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+    //Locking in the order the stores do, so all of them are read at one point in time
+    messages.lock.readLock().lock();
+    follows.lock.readLock().lock();
+    accounts.lock.readLock().lock();
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+    {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        accounts.writeTo(out);
+        messages.writeTo(out);
+        follows.writeTo(out);
+    }
+    catch(IOException e)
+    {
+        deleteQuietly(temporary);
+        throw new IllegalStateException("Could not write snapshot " + snapshotPath, e);
+    }
+    finally
+    {
+        accounts.lock.readLock().unlock();
+        follows.lock.readLock().unlock();
+        messages.lock.readLock().unlock();
+    }
+
+    try
+    {
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch(IOException e)
+    {
+        deleteQuietly(temporary);
+        throw new IllegalStateException("Could not replace snapshot " + snapshotPath, e);
+    }
+
+    lastSnapshotMillis = System.currentTimeMillis();
+    lastSnapshotDurationMillis = lastSnapshotMillis - start;
+}
+
+
+/*
+* Writes a snapshot for the periodic snapshotter. A failure is counted and
+* reported, and the next interval tries again instead of ending the schedule.
+*/
+private void scheduledSnapshot()
+{
+    try
+    {
+        snapshot();
+    }
+    catch(IllegalStateException e)
+    {
+        snapshotFailures.incrementAndGet();
+        e.printStackTrace();
+    }
+}
+
+
+/*
+* Removes a half-written snapshot file, if one was created.
+*/
+private static void deleteQuietly(Path path)
+{
+    try
+    {
+        Files.deleteIfExists(path);
+    }
+    catch(IOException e)
+    {
+        e.printStackTrace();
+    }
+}
+
+
+/*
+* Loads the snapshot file into the empty stores.
+*/
+private void loadSnapshot()
+{
+    messages.lock.writeLock().lock();
+    follows.lock.writeLock().lock();
+    accounts.lock.writeLock().lock();
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath))))
+    {
+        if(in.readInt() != SNAPSHOT_MAGIC)
+            throw new IOException("Not a snapshot: " + snapshotPath);
+        int version = in.readInt();
+        if(version != SNAPSHOT_VERSION && version != SNAPSHOT_VERSION_WITHOUT_FOLLOWS)
+            throw new IOException("Unsupported snapshot version " + version + ": " + snapshotPath);
+
+        accounts.readFrom(in);
+        messages.readFrom(in);
+        if(version == SNAPSHOT_VERSION)
+            follows.readFrom(in);
+        loadedFrom = "snapshot";
+    }
+    catch(IOException e)
+    {
+        //Refusing to start empty over a snapshot that could not be read
+        throw new IllegalStateException("Could not load snapshot " + snapshotPath, e);
+    }
+    finally
+    {
+        accounts.lock.writeLock().unlock();
+        follows.lock.writeLock().unlock();
+        messages.lock.writeLock().unlock();
+    }
+}
+
+
+/*
+* Copies every account, message and follow out of the database into the empty stores.
+*
+* @throws IllegalStateException if the database could not be read in full.
+*/
+private void importFromDatabase()
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    messages.lock.writeLock().lock();
+    follows.lock.writeLock().lock();
+    accounts.lock.writeLock().lock();
+    try
+    {
+        ResultSet accountRs = connection.prepareStatement("SELECT * FROM Account ORDER BY account_id").executeQuery();
+        while(accountRs.next())
+            accounts.put(accountRs.getInt("account_id"), accountRs.getString("username"), accountRs.getString("password"));
+
+        //Reading through the database engine, which merges sharded messages back into message ID order
+        new JdbcStorageEngine().getMessageStore().forEachMessage(message ->
+            messages.put(message.getMessage_id(),
+                         message.getPosted_by(),
+                         message.getTime_posted_epoch(),
+                         message.getMessage_text()));
+
+        ResultSet followRs = connection.prepareStatement("SELECT * FROM Follow").executeQuery();
+        while(followRs.next())
+            follows.put(followRs.getInt("follower_id"), followRs.getInt("followee_id"));
+        loadedFrom = "database";
+    }
+    catch(SQLException | IOException e)
+    {
+        //Refusing to start with only part of the database imported
+        throw new IllegalStateException("Could not import from the database", e);
+    }
+    finally
+    {
+        accounts.lock.writeLock().unlock();
+        follows.lock.writeLock().unlock();
+        messages.lock.writeLock().unlock();
+
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+/*
+* Starts writing a snapshot on a fixed interval from a daemon thread.
+*/
+private void startSnapshotter(long intervalSeconds)
+{
+    snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "memory-engine-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    snapshotter.scheduleWithFixedDelay(this::scheduledSnapshot, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+}
+
+}
@@ -0,0 +1,75 @@
+package DAO;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Util.ConnectionUtil;
+
+/*
+* The database engine: AccountDAO and MessageDAO sharing one
+* index of existing account IDs, and FollowDAO. With more than
+* one socialmedia.shards the messages are kept by a
+* ShardedMessageStore instead of a single MessageDAO.
+*/
+public class JdbcStorageEngine implements StorageEngine {
+
+private final AccountIdIndex accountIds;
+private final AccountDAO accountDAO;
+private final MessageStore messageStore;
+private final FollowDAO followDAO = new FollowDAO();
+
+
+/*
+* Constructor, which loads the account ID index and username filter
+* and moves messages between shards if the shard count changed
+*/
+public JdbcStorageEngine()
+{
+    this.accountIds = AccountIdIndex.load();
+    this.accountDAO = new AccountDAO(accountIds);
+
+    int shards = ConnectionUtil.getShardCount();
+    ShardedMessageStore.applyLayout(accountIds, shards);
+    if(shards > 1)
+        this.messageStore = new ShardedMessageStore(accountIds, shards);
+    else
+        this.messageStore = new MessageDAO(accountIds);
+}
+
+
+public AccountStore getAccountStore()
+{
+    return accountDAO;
+}
+
+
+public MessageStore getMessageStore()
+{
+    return messageStore;
+}
+
+
+public FollowStore getFollowStore()
+{
+    return followDAO;
+}
+
+
+public Map<String, Object> getMetrics()
+{
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("connection_pool", ConnectionUtil.getPool().getStats());
+    if(messageStore instanceof ShardedMessageStore)
+        metrics.put("message_shards", ((ShardedMessageStore) messageStore).getStats());
+    metrics.put("account_index", accountIds.getStats());
+    metrics.put("username_filter", accountDAO.getUsernameFilter().getStats());
+    return metrics;
+}
+
+
+public void close()
+{
+    //The pool outlives any one engine
+}
+
+}
@@ -0,0 +1,25 @@
+package DAO;
+
+import java.io.IOException;
+
+import Model.Message;
+
+/*
+* Receives messages one at a time as they are read from
+* the database, so a caller can handle a large result
+* without holding all of it in memory.
+*/
+@FunctionalInterface
+public interface MessageConsumer {
+
+/*
+* Handles one message.
+*
+* @param message
+*
+* @throws IOException if the message could not be written onward,
+*         which stops the read.
+*/
+void accept(Message message) throws IOException;
+
+}
@@ -2,15 +2,70 @@ package DAO;
 
 import static org.mockito.ArgumentMatchers.nullable;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import Util.ConnectionUtil;
+import Util.UnitOfWork;
 import java.sql.*;
 
 import Model.Message;
 import Model.Account;
 
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+
+/*
+* Number of rows fetched at a time by the streaming reads
+*/
+public static final int STREAM_FETCH_SIZE = 256;
+
+/*
+* Account IDs known to exist, checked before asking the database
+*/
+private AccountIdIndex accountIds;
+
+/*
+* The message shard this DAO reads and writes, 0 being the main
+* database. Account lookups always go to the main database.
+*/
+private final int shard;
+
+
+/*
+* Constructor with no provided index, which loads one
+*/
+public MessageDAO()
+{
+    this(AccountIdIndex.load());
+}
+
+
+/*
+* Constructor with provided index, shared with the AccountDAO
+* that registers new accounts
+*
+* @param accountIds
+*/
+public MessageDAO(AccountIdIndex accountIds)
+{
+    this(accountIds, 0);
+}
+
+
+/*
+* Constructor for one message shard, used by ShardedMessageStore
+*
+* @param accountIds
+* @param shard
+*/
+public MessageDAO(AccountIdIndex accountIds, int shard)
+{
+    this.accountIds = accountIds;
+    this.shard = shard;
+}
 
 
 /*
@@ -26,13 +81,35 @@ public class MessageDAO {
 public boolean validMessageParameters(String messageText, int accountId)
 {
     //Checking String validity
-    if(messageText == "" || messageText.length() > 255)
+    if(validMessageText(messageText) == false)
         return false;
 
     //Checking if corresponding account exists
+    if(accountExists(accountId) == false)
+        return false;
+
+    return true;
+}
+
+
+/*
+* Checks if an account exists, using the in-memory index and
+* only asking the database when the index is unsure.
+*
+* @param accountId
+*
+* @return Returns true if an account with the ID exists.
+*/
+public boolean accountExists(int accountId)
+{
+    if(accountIds.contains(accountId))
+        return true;
+
+    //Asking the database and remembering a positive answer
     if(getAccountById(accountId) == null)
         return false;
 
+    accountIds.add(accountId);
     return true;
 }
 
@@ -74,6 +151,11 @@ public Account getAccountById(int accountId)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
@@ -83,6 +165,10 @@ public Account getAccountById(int accountId)
 * Creates a message entry in the Message table and 
 * returns it.
 *
+* The insert is wrapped in a FINAL TABLE query so the
+* created row, including its generated message_id, comes
+* back from the same statement.
+*
 * @param message
 *
 * @return Returns a newly created message entry.
@@ -91,12 +177,12 @@ public Account getAccountById(int accountId)
 public Message createMessage(Message message)
 {
     //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
+    Connection connection = ConnectionUtil.getConnection(shard);
 
     try
     {
         //SQL Statement
-        String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES(?,?,?)";
+        String sql = "SELECT * FROM FINAL TABLE (INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES(?,?,?))";
         PreparedStatement ps = connection.prepareStatement(sql);
 
         //Setting prepared statement's parameters
@@ -104,70 +190,26 @@ public Message createMessage(Message message)
         ps.setString(2, message.getMessage_text());
         ps.setLong(3, message.getTime_posted_epoch());
 
-        ps.executeUpdate();
-
-    }
-    catch(SQLException e)
-    {
-        System.out.println(e.getMessage());
-    }
-
-    //Getting updated message entry for return
-    return getMessageByTimePostedMessageTextAndAccountId(message.getTime_posted_epoch(), message.getMessage_text(), message.getPosted_by());
-}
-
-
-/*
-* Searches the Message table for a message matching
-* the provided time, text, and account ID.
-*
-* @param timePosted
-* @param messageText
-* @param accountId
-*
-* @return Returns a message entry with the
-*         provided time posted, text, and account ID.
-*         Returns null upon failure.
-*/
-public Message getMessageByTimePostedMessageTextAndAccountId(long timePosted, String messageText, int accountId)
-{
-
-    /*
-    * Note: 
-    * This method is necessary when creating new messages.
-    * The Message object passed in to createMessage lacks a message_id,
-    * this method finds the assigned message_id by using the other elements in the object. 
-    */
-
-    //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
-
-    try
-    {
-        //SQL Statement
-        String sql = "SELECT * FROM Message WHERE time_posted_epoch = ? AND message_text = ? AND posted_by = ?";
-        PreparedStatement ps = connection.prepareStatement(sql);
-
-        //Setting prepared statement's parameters
-        ps.setLong(1, timePosted);
-        ps.setString(2, messageText);
-        ps.setInt(3, accountId);
-
-        //Getting result of SQL statement and returning the result
+        //Getting the inserted row and returning it
         ResultSet rs = ps.executeQuery();
         while(rs.next())
         {
-            Message message = new Message(rs.getInt("message_id"),
+            Message createdMessage = new Message(rs.getInt("message_id"),
                               rs.getInt("posted_by"),
                               rs.getString("message_text"),
                               rs.getLong("time_posted_epoch"));
-            return message;
+            return createdMessage;
         }
     }
     catch(SQLException e)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
@@ -181,7 +223,7 @@ public Message getMessageByTimePostedMessageTextAndAccountId(long timePosted, St
 public List<Message> getAllMessages()
 {
     //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
+    Connection connection = ConnectionUtil.getConnection(shard);
 
     //Creating output list
     List<Message> messageList = new ArrayList<>();
@@ -208,6 +250,11 @@ public List<Message> getAllMessages()
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     //Returned list may or may not be empty
     return messageList;
@@ -227,7 +274,7 @@ public List<Message> getAllMessages()
 public Message getMessageById(int messageId)
 {
     //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
+    Connection connection = ConnectionUtil.getConnection(shard);
 
     try
     {
@@ -253,6 +300,11 @@ public Message getMessageById(int messageId)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
@@ -262,6 +314,10 @@ public Message getMessageById(int messageId)
 * Deletes a message in the Message table if
 * the corresponding message ID exists.
 *
+* The delete is wrapped in an OLD TABLE query so the
+* removed row comes back from the same statement, with
+* no window between checking for the message and deleting it.
+*
 * @param messageId
 *
 * @return Returns the deleted message entry.
@@ -270,32 +326,37 @@ public Message getMessageById(int messageId)
 public Message deleteMessageById(int messageId)
 {
     //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
-
-    //Object holding message to be deleted
-    Message deletedMessage = getMessageById(messageId);
-
-    //Checking if message to delete exists
-    if(deletedMessage == null)
-        return null;
+    Connection connection = ConnectionUtil.getConnection(shard);
 
     try
     {
         //SQL Statement
-        String sql = "DELETE FROM Message WHERE message_id = ?";
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM Message WHERE message_id = ?)";
         PreparedStatement ps = connection.prepareStatement(sql);
 
         //Setting prepared statement parameter
         ps.setInt(1, messageId);
 
-        //Executing delete and returning deleted message
-        ps.executeUpdate();
-        return deletedMessage;
+        //Executing delete and returning deleted message, if there was one
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            Message deletedMessage = new Message(rs.getInt("message_id"),
+                              rs.getInt("posted_by"),
+                              rs.getString("message_text"),
+                              rs.getLong("time_posted_epoch"));
+            return deletedMessage;
+        }
     }
     catch(SQLException e)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
@@ -304,6 +365,10 @@ public Message deleteMessageById(int messageId)
 /*
 * Updates a message's text in the Message Table.
 *
+* The update is wrapped in a FINAL TABLE query so the
+* updated row comes back from the same statement. No row
+* comes back if the message does not exist.
+*
 * @param messageId
 * @param updateText
 *
@@ -312,21 +377,17 @@ public Message deleteMessageById(int messageId)
 */
 public Message patchMessageById(int messageId, String updateText)
 {
-    //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
-
     //Checking if update text is valid
-    if(updateText == "" || updateText.length() > 255)
+    if(validMessageText(updateText) == false)
         return null;
 
-    //Checking if message to be updated exists
-    if(getMessageById(messageId) == null)
-        return null;
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
 
     try
     {
         //SQL Statement
-        String sql = "UPDATE Message SET message_text = ? WHERE message_id = ?";
+        String sql = "SELECT * FROM FINAL TABLE (UPDATE Message SET message_text = ? WHERE message_id = ?)";
         PreparedStatement ps = connection.prepareStatement(sql);
 
         //Setting prepared statement's parameters
@@ -334,13 +395,25 @@ public Message patchMessageById(int messageId, String updateText)
         ps.setInt(2, messageId);
 
         //Getting result of SQL statement and returning updated message
-        ps.executeUpdate();
-        return getMessageById(messageId);
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            Message updatedMessage = new Message(rs.getInt("message_id"),
+                              rs.getInt("posted_by"),
+                              rs.getString("message_text"),
+                              rs.getLong("time_posted_epoch"));
+            return updatedMessage;
+        }
     }
     catch(SQLException e)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     return null;
 }
@@ -357,7 +430,7 @@ public Message patchMessageById(int messageId, String updateText)
 public List<Message> getAllAccountMessages(int accountId)
 {
     //Connecting to database
-    Connection connection = ConnectionUtil.getConnection();
+    Connection connection = ConnectionUtil.getConnection(shard);
 
     //Creating output list
     List<Message> messageList = new ArrayList<>();
@@ -386,9 +459,718 @@ public List<Message> getAllAccountMessages(int accountId)
     {
         System.out.println(e.getMessage());
     }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    //Returned list may or may not be empty
+    return messageList;
+}
+
+
+/*
+* Gets one page of messages from the Message table,
+* ordered by message ID. Seeking past the cursor uses
+* the primary key, so every page costs the same no matter
+* how deep into the table it is.
+*
+* @param afterMessageId only messages with a greater ID are returned
+* @param limit maximum number of messages to return
+*
+* @return Returns a list of at most limit messages.
+*/
+public List<Message> getMessagesPage(int afterMessageId, int limit)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    //Creating output list
+    List<Message> messageList = new ArrayList<>();
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT * FROM Message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement's parameters
+        ps.setInt(1, afterMessageId);
+        ps.setInt(2, limit);
+
+        //Getting result of SQL statement
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            Message message = new Message(rs.getInt("message_id"),
+                              rs.getInt("posted_by"),
+                              rs.getString("message_text"),
+                              rs.getLong("time_posted_epoch"));
+            messageList.add(message);
+        }
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    //Returned list may or may not be empty
+    return messageList;
+}
+
+
+/*
+* Gets one page of the messages posted by a specific
+* account, ordered by message ID.
+*
+* @param accountId
+* @param afterMessageId only messages with a greater ID are returned
+* @param limit maximum number of messages to return
+*
+* @return Returns a list of at most limit messages from a specific account.
+*/
+public List<Message> getAccountMessagesPage(int accountId, int afterMessageId, int limit)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    //Creating output list
+    List<Message> messageList = new ArrayList<>();
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT * FROM Message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement's parameters
+        ps.setInt(1, accountId);
+        ps.setInt(2, afterMessageId);
+        ps.setInt(3, limit);
+
+        //Getting result of SQL statement
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            Message message = new Message(rs.getInt("message_id"),
+                              rs.getInt("posted_by"),
+                              rs.getString("message_text"),
+                              rs.getLong("time_posted_epoch"));
+            messageList.add(message);
+        }
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    //Returned list may or may not be empty
+    return messageList;
+}
+
+
+/*
+* Gets the newest messages posted by an account with an ID
+* before the provided one, from the descending
+* (posted_by, message_id) index.
+*
+* @param accountId
+* @param beforeMessageId Integer.MAX_VALUE for the newest
+* @param limit
+*
+* @return Returns up to limit messages, newest first.
+*/
+public List<Message> getRecentAccountMessages(int accountId, int beforeMessageId, int limit)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    //Creating output list
+    List<Message> messageList = new ArrayList<>();
+
+    try
+    {
+        //SQL Statement, ordered by the whole descending index so H2 reads it in order instead of sorting
+        String sql = "SELECT * FROM Message WHERE posted_by = ? AND message_id < ? ORDER BY posted_by, message_id DESC LIMIT ?";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement's parameters
+        ps.setInt(1, accountId);
+        ps.setInt(2, beforeMessageId);
+        ps.setInt(3, limit);
+
+        //Getting result of SQL statement
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            Message message = new Message(rs.getInt("message_id"),
+                              rs.getInt("posted_by"),
+                              rs.getString("message_text"),
+                              rs.getLong("time_posted_epoch"));
+            messageList.add(message);
+        }
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
 
     //Returned list may or may not be empty
     return messageList;
 }
 
+
+/*
+* Streams every message in the Message table to a consumer,
+* one row at a time off a forward-only result set. The query
+* runs with H2's lazy execution so rows are produced as they
+* are read instead of being materialized up front.
+*
+* @param consumer receives each message in message ID order
+*
+* @throws IOException if the query or the consumer fails, which
+*                     stops the read.
+*/
+public void forEachMessage(MessageConsumer consumer) throws IOException
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT * FROM Message ORDER BY message_id";
+        streamMessages(connection, connection.prepareStatement(sql), consumer);
+    }
+    catch(SQLException e)
+    {
+        //Failing the read, so the caller never mistakes a cut-short stream for every message
+        throw new IOException("Streaming messages failed: " + e.getMessage(), e);
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+/*
+* Streams every message posted by a specific account
+* to a consumer, one row at a time, as a timeline.
+*
+* @param accountId
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the query or the consumer fails, which
+*                     stops the read.
+*/
+public void forEachAccountMessage(int accountId, MessageConsumer consumer) throws IOException
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement, ordered by the whole index so H2 reads it in order instead of sorting
+        String sql = "SELECT * FROM Message WHERE posted_by = ? ORDER BY posted_by, time_posted_epoch, message_id";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameter
+        ps.setInt(1, accountId);
+
+        streamMessages(connection, ps, consumer);
+    }
+    catch(SQLException e)
+    {
+        //Failing the read, so the caller never mistakes a cut-short stream for every message
+        throw new IOException("Streaming messages failed: " + e.getMessage(), e);
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+/*
+* Streams the messages posted within a time range to a
+* consumer, one row at a time. The range is read from the
+* message_time_posted_epoch index.
+*
+* @param from earliest time_posted_epoch, inclusive
+* @param to latest time_posted_epoch, inclusive
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the query or the consumer fails, which
+*                     stops the read.
+*/
+public void forEachMessageInRange(long from, long to, MessageConsumer consumer) throws IOException
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT * FROM Message WHERE time_posted_epoch BETWEEN ? AND ? ORDER BY time_posted_epoch, message_id";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameters
+        ps.setLong(1, from);
+        ps.setLong(2, to);
+
+        streamMessages(connection, ps, consumer);
+    }
+    catch(SQLException e)
+    {
+        //Failing the read, so the caller never mistakes a cut-short stream for every message
+        throw new IOException("Streaming messages failed: " + e.getMessage(), e);
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+/*
+* Streams the messages an account posted within a time range
+* to a consumer, one row at a time. The range is read from the
+* message_posted_by_time_posted_epoch index.
+*
+* @param accountId
+* @param from earliest time_posted_epoch, inclusive
+* @param to latest time_posted_epoch, inclusive
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the query or the consumer fails, which
+*                     stops the read.
+*/
+public void forEachAccountMessageInRange(int accountId, long from, long to, MessageConsumer consumer) throws IOException
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement, ordered by the whole index so H2 reads it in order instead of sorting
+        String sql = "SELECT * FROM Message WHERE posted_by = ? AND time_posted_epoch BETWEEN ? AND ? ORDER BY posted_by, time_posted_epoch, message_id";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameters
+        ps.setInt(1, accountId);
+        ps.setLong(2, from);
+        ps.setLong(3, to);
+
+        streamMessages(connection, ps, consumer);
+    }
+    catch(SQLException e)
+    {
+        //Failing the read, so the caller never mistakes a cut-short stream for every message
+        throw new IOException("Streaming messages failed: " + e.getMessage(), e);
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+/*
+* Runs a prepared query lazily and hands each row to a
+* consumer as it comes off the result set.
+*
+* @param connection the connection the statement was prepared on
+* @param ps the prepared query, with its parameters set
+* @param consumer receives each message
+*/
+private void streamMessages(Connection connection, PreparedStatement ps, MessageConsumer consumer) throws SQLException, IOException
+{
+    Statement session = connection.createStatement();
+    session.execute("SET LAZY_QUERY_EXECUTION TRUE");
+
+    try
+    {
+        ps.setFetchSize(STREAM_FETCH_SIZE);
+        ResultSet rs = ps.executeQuery();
+        try
+        {
+            while(rs.next())
+            {
+                consumer.accept(new Message(rs.getInt("message_id"),
+                                rs.getInt("posted_by"),
+                                rs.getString("message_text"),
+                                rs.getLong("time_posted_epoch")));
+            }
+        }
+        finally
+        {
+            rs.close();
+        }
+    }
+    finally
+    {
+        //Putting the session back the way other queries expect it
+        session.execute("SET LAZY_QUERY_EXECUTION FALSE");
+        session.close();
+    }
+}
+
+
+/*
+* Finds which of the provided account IDs exist. IDs in the
+* in-memory index are answered directly; the rest are checked
+* with one set-based query instead of one query per ID.
+*
+* @param accountIds
+*
+* @return Returns the subset of the provided IDs that belong
+*         to an account.
+*/
+public Set<Integer> getExistingAccountIds(Collection<Integer> accountIds)
+{
+    //Creating output set, starting with the IDs the index already knows
+    Set<Integer> existingIds = new HashSet<>();
+    List<Integer> unknownIds = new ArrayList<>();
+    for(int accountId : accountIds)
+    {
+        if(this.accountIds.contains(accountId))
+            existingIds.add(accountId);
+        else
+            unknownIds.add(accountId);
+    }
+    if(unknownIds.isEmpty())
+        return existingIds;
+
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT account_id FROM Account WHERE account_id = ANY(?)";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameter to an array of every ID the index did not know
+        ps.setObject(1, unknownIds.toArray(new Integer[0]));
+
+        //Getting result of SQL statement
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+        {
+            existingIds.add(rs.getInt("account_id"));
+            this.accountIds.add(rs.getInt("account_id"));
+        }
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return existingIds;
+}
+
+
+/*
+* Creates many message entries in the Message table with
+* one JDBC batch in one transaction. If no unit of work is
+* active the method commits its own transaction; otherwise
+* a failure marks the unit of work for rollback.
+*
+* @param messages messages that have already been validated
+*
+* @return Returns the created messages, in the same order,
+*         with their generated message IDs. Returns null upon
+*         failure, in which case nothing was saved.
+*/
+public List<Message> createMessages(List<Message> messages)
+{
+    //Creating output list
+    List<Message> createdMessages = new ArrayList<>();
+    if(messages.isEmpty())
+        return createdMessages;
+
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+    boolean ownTransaction = false;
+
+    try
+    {
+        //Starting a transaction unless one is already open
+        ownTransaction = connection.getAutoCommit();
+        if(ownTransaction)
+            connection.setAutoCommit(false);
+
+        //SQL Statement
+        String sql = "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES(?,?,?)";
+        PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+
+        //Adding one set of parameters per message to the batch
+        for(Message message : messages)
+        {
+            ps.setInt(1, message.getPosted_by());
+            ps.setString(2, message.getMessage_text());
+            ps.setLong(3, message.getTime_posted_epoch());
+            ps.addBatch();
+        }
+        ps.executeBatch();
+
+        //Pairing each generated key with the message it was created for
+        ResultSet keys = ps.getGeneratedKeys();
+        for(Message message : messages)
+        {
+            if(keys.next() == false)
+                throw new SQLException("Missing generated key for batch insert");
+
+            createdMessages.add(new Message(keys.getInt(1),
+                                message.getPosted_by(),
+                                message.getMessage_text(),
+                                message.getTime_posted_epoch()));
+        }
+
+        if(ownTransaction)
+            connection.commit();
+        return createdMessages;
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+        rollback(connection, ownTransaction);
+    }
+    finally
+    {
+        //Ending our own transaction and returning connection to the pool
+        if(ownTransaction)
+            restoreAutoCommit(connection);
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return null;
+}
+
+
+/*
+* Saves messages that already have IDs, replacing any row
+* with the same ID, for moving messages between shards. The
+* MERGE makes a move that was interrupted safe to repeat.
+*
+* @param messages
+*
+* @return Returns true if every message was saved.
+*/
+public boolean putMessages(List<Message> messages)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement
+        String sql = "MERGE INTO Message (message_id, posted_by, message_text, time_posted_epoch) KEY (message_id) VALUES(?,?,?,?)";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Adding one set of parameters per message to the batch
+        for(Message message : messages)
+        {
+            ps.setInt(1, message.getMessage_id());
+            ps.setInt(2, message.getPosted_by());
+            ps.setString(3, message.getMessage_text());
+            ps.setLong(4, message.getTime_posted_epoch());
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        return true;
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return false;
+}
+
+
+/*
+* Deletes every message with one of the provided IDs.
+*
+* @param messageIds
+*
+* @return Returns true if the delete ran.
+*/
+public boolean deleteMessages(List<Integer> messageIds)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement
+        String sql = "DELETE FROM Message WHERE message_id = ANY(?)";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameter to an array of every ID
+        ps.setObject(1, messageIds.toArray(new Integer[0]));
+        ps.executeUpdate();
+        return true;
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return false;
+}
+
+
+/*
+* Gets the highest message ID this shard has stored or
+* handed out, including IDs of rows deleted since.
+*
+* @return Returns the highest ID, 0 for a new table, or -1
+*         upon failure.
+*/
+public int getHighestMessageId()
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //SQL Statement, reading the next identity value H2 would hand out
+        String sql = "SELECT GREATEST(COALESCE(MAX(message_id), 0), "
+                   + "(SELECT COALESCE(identity_base, 1) - 1 FROM information_schema.columns "
+                   + "WHERE table_schema = 'PUBLIC' AND table_name = 'MESSAGE' AND column_name = 'MESSAGE_ID')) FROM Message";
+        ResultSet rs = connection.prepareStatement(sql).executeQuery();
+        if(rs.next())
+            return rs.getInt(1);
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return -1;
+}
+
+
+/*
+* Makes the message_id identity hand out start, start +
+* increment, start + 2 * increment, and so on, so that
+* shards never hand out the same ID.
+*
+* @param start
+* @param increment
+*
+* @return Returns true if the identity was changed.
+*/
+public boolean restartMessageIds(int start, int increment)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        //DDL takes no parameters, so the integers are written into the statements
+        Statement statement = connection.createStatement();
+        statement.execute("ALTER TABLE Message ALTER COLUMN message_id SET INCREMENT BY " + increment);
+        statement.execute("ALTER TABLE Message ALTER COLUMN message_id RESTART WITH " + start);
+        return true;
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return false;
+}
+
+
+/*
+* Undoes a failed write. A transaction this DAO opened is
+* rolled back directly; a unit of work is marked so that
+* it rolls back when it finishes.
+*/
+private void rollback(Connection connection, boolean ownTransaction)
+{
+    if(ownTransaction == false)
+    {
+        UnitOfWork.setRollbackOnly();
+        return;
+    }
+
+    try
+    {
+        connection.rollback();
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+}
+
+
+/*
+* Puts a connection back into auto-commit mode after
+* a transaction this DAO opened.
+*/
+private void restoreAutoCommit(Connection connection)
+{
+    try
+    {
+        connection.setAutoCommit(true);
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+}
+
 }
@@ -0,0 +1,220 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import Model.Message;
+
+/*
+* Storage for messages. MessageDAO keeps them in the database;
+* InMemoryMessageStore keeps them in the JVM. Services only
+* depend on this interface, so the engine is a startup choice.
+*/
+public interface MessageStore {
+
+/*
+* Checks if a message text and account id are valid 
+* parameters for a new message's creation.
+*
+* @param messageText
+* @param accountId
+*
+* @return Returns a boolean based on the validity of the
+*         provided message text and account ID for a message's creation.
+*/
+boolean validMessageParameters(String messageText, int accountId);
+
+
+/*
+* Checks if a message text is not blank and is not over
+* the character limit.
+*
+* @param messageText
+*
+* @return Returns a boolean based on the validity of the text.
+*/
+default boolean validMessageText(String messageText)
+{
+    return messageText != null && messageText.isBlank() == false && messageText.length() <= 255;
+}
+
+
+/*
+* Finds which of the provided account IDs exist.
+*
+* @param accountIds
+*
+* @return Returns the subset of the provided IDs that belong
+*         to an account.
+*/
+Set<Integer> getExistingAccountIds(Collection<Integer> accountIds);
+
+
+/*
+* Creates a message and returns it.
+*
+* @param message
+*
+* @return Returns the created message with its message_id.
+*         Returns null upon failure.
+*/
+Message createMessage(Message message);
+
+
+/*
+* Creates many messages at once, all or nothing.
+*
+* @param messages messages that have already been validated
+*
+* @return Returns the created messages, in the same order,
+*         with their message IDs. Returns null upon failure,
+*         in which case nothing was saved.
+*/
+List<Message> createMessages(List<Message> messages);
+
+
+/*
+* Gets a list of all messages.
+* 
+* @return Returns a list of messages.
+*/
+List<Message> getAllMessages();
+
+
+/*
+* Searches for a message with the provided ID.
+*
+* @param messageId
+*
+* @return Returns the message, or null if it does not exist.
+*/
+Message getMessageById(int messageId);
+
+
+/*
+* Deletes a message with the provided ID.
+*
+* @param messageId
+*
+* @return Returns the deleted message, or null if it did not exist.
+*/
+Message deleteMessageById(int messageId);
+
+
+/*
+* Replaces the text of a message with the provided ID.
+*
+* @param messageId
+* @param updateText
+*
+* @return Returns the patched message, or null if it does not exist.
+*/
+Message patchMessageById(int messageId, String updateText);
+
+
+/*
+* Gets a list of every message posted by an account.
+*
+* @param accountId
+*
+* @return Returns a list of messages.
+*/
+List<Message> getAllAccountMessages(int accountId);
+
+
+/*
+* Gets the messages with an ID after the provided one,
+* in message ID order.
+*
+* @param afterMessageId 0 for the first page
+* @param limit
+*
+* @return Returns up to limit messages.
+*/
+List<Message> getMessagesPage(int afterMessageId, int limit);
+
+
+/*
+* Gets the messages posted by an account with an ID after
+* the provided one, in message ID order.
+*
+* @param accountId
+* @param afterMessageId 0 for the first page
+* @param limit
+*
+* @return Returns up to limit messages.
+*/
+List<Message> getAccountMessagesPage(int accountId, int afterMessageId, int limit);
+
+
+/*
+* Gets the newest messages posted by an account with an ID
+* before the provided one, in descending message ID order.
+*
+* @param accountId
+* @param beforeMessageId Integer.MAX_VALUE for the newest
+* @param limit
+*
+* @return Returns up to limit messages.
+*/
+List<Message> getRecentAccountMessages(int accountId, int beforeMessageId, int limit);
+
+
+/*
+* Streams every message to a consumer without collecting
+* them into a list first.
+*
+* @param consumer receives each message in message ID order
+*
+* @throws IOException if the read or the consumer fails, which
+*                     stops the read.
+*/
+void forEachMessage(MessageConsumer consumer) throws IOException;
+
+
+/*
+* Streams every message posted by an account to a consumer,
+* as a timeline.
+*
+* @param accountId
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the read or the consumer fails, which
+*                     stops the read.
+*/
+void forEachAccountMessage(int accountId, MessageConsumer consumer) throws IOException;
+
+
+/*
+* Streams the messages posted within a time range to a consumer.
+*
+* @param from earliest time_posted_epoch, inclusive
+* @param to latest time_posted_epoch, inclusive
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the read or the consumer fails, which
+*                     stops the read.
+*/
+void forEachMessageInRange(long from, long to, MessageConsumer consumer) throws IOException;
+
+
+/*
+* Streams the messages an account posted within a time range
+* to a consumer.
+*
+* @param accountId
+* @param from earliest time_posted_epoch, inclusive
+* @param to latest time_posted_epoch, inclusive
+* @param consumer receives each message in time_posted_epoch
+*                 order, ties broken by message ID
+*
+* @throws IOException if the read or the consumer fails, which
+*                     stops the read.
+*/
+void forEachAccountMessageInRange(int accountId, long from, long to, MessageConsumer consumer) throws IOException;
+
+}
@@ -0,0 +1,195 @@
+package DAO;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import Util.IntList;
+
+/*
+* Message texts kept as UTF-8 bytes in direct ByteBuffer slabs outside
+* the Java heap, so millions of texts add almost nothing for the garbage
+* collector to trace. The only heap cost per text is one long in the
+* reference index, packing the slab, offset and length of its bytes.
+*
+* Space is handed out in 16-byte size classes. A released block goes on
+* the free list of its class and is reused by the next text of the same
+* class, so slabs never need compacting. Texts are not deduplicated.
+*/
+class OffHeapTextStore implements TextStore {
+
+/*
+* Block sizes are rounded up to a multiple of this
+*/
+private static final int SIZE_CLASS_BYTES = 16;
+
+/*
+* Longest UTF-8 encoding of a 255 character message is 765 bytes;
+* anything up to the 16-bit length field is accepted
+*/
+private static final int MAX_TEXT_BYTES = 0xFFFF;
+
+private final int slabBytes;
+private final List<ByteBuffer> slabs = new ArrayList<>();
+private int slabPosition;
+
+/*
+* Reference index: slab (16 bits), offset (32 bits) and length (16 bits)
+* of each text, indexed by reference
+*/
+private long[] addresses = new long[1024];
+private int usedRefs;
+private final IntList freeRefs = new IntList();
+
+/*
+* Released blocks by size class, each packed as slab (32 bits) and offset (32 bits)
+*/
+private final long[][] freeBlocks = new long[MAX_TEXT_BYTES / SIZE_CLASS_BYTES + 2][];
+private final int[] freeBlockCounts = new int[MAX_TEXT_BYTES / SIZE_CLASS_BYTES + 2];
+
+private int texts;
+private long liveBytes;
+private long reusedBlocks;
+
+
+/*
+* Constructor
+*
+* @param slabBytes size of each direct buffer allocated for texts
+*/
+OffHeapTextStore(int slabBytes)
+{
+    this.slabBytes = Math.max(slabBytes, 64 * 1024);
+}
+
+
+public int store(String text)
+{
+    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+    if(utf8.length > MAX_TEXT_BYTES)
+        throw new IllegalArgumentException("Text is " + utf8.length + " bytes, over the " + MAX_TEXT_BYTES + " byte limit");
+
+    //Writing the bytes into a reused or new block
+    int sizeClass = (utf8.length + SIZE_CLASS_BYTES - 1) / SIZE_CLASS_BYTES;
+    long block = allocate(sizeClass);
+    int slab = (int) (block >>> 32);
+    int offset = (int) block;
+    ByteBuffer buffer = slabs.get(slab);
+    buffer.position(offset);
+    buffer.put(utf8);
+
+    //Recording where the bytes went
+    int ref;
+    if(freeRefs.size() > 0)
+    {
+        ref = freeRefs.get(freeRefs.size() - 1);
+        freeRefs.removeAt(freeRefs.size() - 1);
+    }
+    else
+    {
+        if(usedRefs == addresses.length)
+            addresses = Arrays.copyOf(addresses, usedRefs * 2);
+        ref = usedRefs++;
+    }
+    addresses[ref] = ((long) slab << 48) | ((long) offset << 16) | utf8.length;
+
+    texts++;
+    liveBytes += utf8.length;
+    return ref;
+}
+
+
+public String get(int ref)
+{
+    long address = addresses[ref];
+    int slab = (int) (address >>> 48);
+    int offset = (int) (address >>> 16);
+    int length = (int) (address & 0xFFFF);
+
+    //Reading through a duplicate, as concurrent readers must not share a position
+    ByteBuffer view = slabs.get(slab).duplicate();
+    view.position(offset);
+    byte[] utf8 = new byte[length];
+    view.get(utf8);
+    return new String(utf8, StandardCharsets.UTF_8);
+}
+
+
+public void release(int ref)
+{
+    long address = addresses[ref];
+    int slab = (int) (address >>> 48);
+    int offset = (int) (address >>> 16);
+    int length = (int) (address & 0xFFFF);
+
+    int sizeClass = (length + SIZE_CLASS_BYTES - 1) / SIZE_CLASS_BYTES;
+    if(sizeClass > 0)
+        pushFreeBlock(sizeClass, ((long) slab << 32) | offset);
+
+    freeRefs.add(ref);
+    texts--;
+    liveBytes -= length;
+}
+
+
+public Map<String, Object> getStats()
+{
+    long freeBlockCount = 0;
+    for(int count : freeBlockCounts)
+        freeBlockCount += count;
+
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("kind", "offheap");
+    stats.put("texts", texts);
+    stats.put("live_bytes", liveBytes);
+    stats.put("slabs", slabs.size());
+    stats.put("off_heap_bytes", (long) slabs.size() * slabBytes);
+    stats.put("index_heap_bytes", (long) addresses.length * Long.BYTES);
+    stats.put("free_blocks", freeBlockCount);
+    stats.put("reused_blocks", reusedBlocks);
+    return stats;
+}
+
+
+/*
+* Takes a free block of a size class, or carves a new one from the
+* current slab, starting a new slab when it is full.
+*/
+private long allocate(int sizeClass)
+{
+    if(sizeClass > 0 && freeBlockCounts[sizeClass] > 0)
+    {
+        reusedBlocks++;
+        return freeBlocks[sizeClass][--freeBlockCounts[sizeClass]];
+    }
+
+    int bytes = sizeClass * SIZE_CLASS_BYTES;
+    if(slabs.isEmpty() || slabPosition + bytes > slabBytes)
+    {
+        if(slabs.size() == 0xFFFF)
+            throw new IllegalStateException("Off-heap text store is out of slabs");
+        slabs.add(ByteBuffer.allocateDirect(slabBytes));
+        slabPosition = 0;
+    }
+
+    long block = ((long) (slabs.size() - 1) << 32) | slabPosition;
+    slabPosition += bytes;
+    return block;
+}
+
+
+private void pushFreeBlock(int sizeClass, long block)
+{
+    long[] stack = freeBlocks[sizeClass];
+    if(stack == null)
+        stack = freeBlocks[sizeClass] = new long[16];
+    else if(freeBlockCounts[sizeClass] == stack.length)
+        stack = freeBlocks[sizeClass] = Arrays.copyOf(stack, stack.length * 2);
+    stack[freeBlockCounts[sizeClass]++] = block;
+}
+
+}
@@ -0,0 +1,716 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.KWayMerge;
+import Util.PoolExhaustedException;
+import Util.SchemaMigrator;
+import Util.UnitOfWork;
+
+/*
+* Messages spread over several H2 databases, one MessageDAO per
+* shard. A message lives in the shard picked by a hash of its
+* posted_by, so everything about one account is read from one
+* database, while reads over every message ask all shards at
+* once and merge their sorted answers.
+*
+* Each shard's message_id identity counts up by the shard count
+* from a different start, so shard s hands out the IDs with
+* (id - 1) % shards == s and IDs stay unique without the shards
+* talking to each other. Messages moved by a change of shard count
+* keep their IDs, so a lookup by ID tries the shard the ID points
+* at first and then the others.
+*
+* Accounts and follows stay in shard 0, the main database.
+*/
+public class ShardedMessageStore implements MessageStore {
+
+/*
+* Number of messages read and moved at a time when the shard
+* count changes
+*/
+private static final int MOVE_BATCH_SIZE = 1000;
+
+/*
+* Runs the per-shard reads of a scatter-gather. A streaming read
+* holds its thread for as long as the consumer takes, so threads
+* are not capped here; each shard's pool caps the connections.
+*/
+private static final ExecutorService shardReaders = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "message-shard-reader");
+    thread.setDaemon(true);
+    return thread;
+});
+
+/*
+* Orders the merged reads are sorted by
+*/
+private static final Comparator<Message> ID_ORDER = Comparator.comparingInt(Message::getMessage_id);
+private static final Comparator<Message> TIME_ORDER =
+        Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id);
+
+private final MessageDAO[] shards;
+
+
+/*
+* Constructor with the index of existing account IDs, shared
+* with the AccountDAO that registers new accounts
+*
+* @param accountIds
+* @param shardCount
+*/
+public ShardedMessageStore(AccountIdIndex accountIds, int shardCount)
+{
+    this.shards = new MessageDAO[shardCount];
+    for(int shard = 0; shard < shardCount; shard++)
+        shards[shard] = new MessageDAO(accountIds, shard);
+}
+
+
+/*
+* Picks the shard an account's messages live in.
+*
+* @param accountId
+* @param shardCount
+*
+* @return Returns a shard number from 0 to shardCount - 1.
+*/
+public static int shardOf(int accountId, int shardCount)
+{
+    //Mixing the bits with MurmurHash3's finalizer so neighbouring IDs spread out
+    int hash = accountId;
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return Math.floorMod(hash, shardCount);
+}
+
+
+/*
+* Gets the shard that handed out a message ID.
+*
+* @param messageId
+* @param shardCount
+*
+* @return Returns a shard number from 0 to shardCount - 1.
+*/
+public static int shardOfMessageId(int messageId, int shardCount)
+{
+    return Math.floorMod(messageId - 1, shardCount);
+}
+
+
+/*
+* Returns the number of shards.
+*/
+public int getShardCount()
+{
+    return shards.length;
+}
+
+
+public boolean validMessageParameters(String messageText, int accountId)
+{
+    return shards[0].validMessageParameters(messageText, accountId);
+}
+
+
+public Set<Integer> getExistingAccountIds(Collection<Integer> accountIds)
+{
+    return shards[0].getExistingAccountIds(accountIds);
+}
+
+
+/*
+* Creates a message in its account's shard.
+*/
+public Message createMessage(Message message)
+{
+    return shardFor(message.getPosted_by()).createMessage(message);
+}
+
+
+/*
+* Creates many messages at once, one JDBC batch per shard, all in
+* one unit of work. A batch that fails in any shard rolls back
+* every shard, but the shards are committed one after another, so
+* a commit that fails part way leaves the shards before it committed.
+*/
+public List<Message> createMessages(List<Message> messages)
+{
+    //Splitting the batch by shard, remembering where each message came from
+    List<List<Message>> batches = new ArrayList<>();
+    List<List<Integer>> positions = new ArrayList<>();
+    for(int shard = 0; shard < shards.length; shard++)
+    {
+        batches.add(new ArrayList<>());
+        positions.add(new ArrayList<>());
+    }
+    for(int i = 0; i < messages.size(); i++)
+    {
+        int shard = shardOf(messages.get(i).getPosted_by(), shards.length);
+        batches.get(shard).add(messages.get(i));
+        positions.get(shard).add(i);
+    }
+
+    Message[] createdMessages = new Message[messages.size()];
+    boolean[] failed = new boolean[1];
+    try
+    {
+        UnitOfWork.run(() -> {
+            for(int shard = 0; shard < shards.length; shard++)
+            {
+                if(batches.get(shard).isEmpty())
+                    continue;
+
+                List<Message> created = shards[shard].createMessages(batches.get(shard));
+                if(created == null)
+                {
+                    failed[0] = true;
+                    UnitOfWork.setRollbackOnly();
+                    return;
+                }
+                for(int i = 0; i < created.size(); i++)
+                    createdMessages[positions.get(shard).get(i)] = created.get(i);
+            }
+        });
+    }
+    catch(PoolExhaustedException e)
+    {
+        //Left for the controller to answer 503
+        throw e;
+    }
+    catch(Exception e)
+    {
+        System.out.println(e.getMessage());
+        return null;
+    }
+
+    return failed[0] ? null : new ArrayList<>(Arrays.asList(createdMessages));
+}
+
+
+/*
+* Gets every message from every shard, merged in message ID order.
+*/
+public List<Message> getAllMessages()
+{
+    return merge(gather(MessageDAO::getAllMessages), ID_ORDER, Integer.MAX_VALUE);
+}
+
+
+/*
+* Looks the message up in the shard its ID points at, then in
+* the others for messages moved there by a change of shard count.
+*/
+public Message getMessageById(int messageId)
+{
+    int home = shardOfMessageId(messageId, shards.length);
+    Message message = shards[home].getMessageById(messageId);
+    for(int shard = 0; message == null && shard < shards.length; shard++)
+    {
+        if(shard != home)
+            message = shards[shard].getMessageById(messageId);
+    }
+    return message;
+}
+
+
+public Message deleteMessageById(int messageId)
+{
+    int home = shardOfMessageId(messageId, shards.length);
+    Message message = shards[home].deleteMessageById(messageId);
+    for(int shard = 0; message == null && shard < shards.length; shard++)
+    {
+        if(shard != home)
+            message = shards[shard].deleteMessageById(messageId);
+    }
+    return message;
+}
+
+
+/*
+* Patches the message in the shard its ID points at, then in the
+* others. Invalid text is refused before any shard is asked.
+*/
+public Message patchMessageById(int messageId, String updateText)
+{
+    if(validMessageText(updateText) == false)
+        return null;
+
+    int home = shardOfMessageId(messageId, shards.length);
+    Message message = shards[home].patchMessageById(messageId, updateText);
+    for(int shard = 0; message == null && shard < shards.length; shard++)
+    {
+        if(shard != home)
+            message = shards[shard].patchMessageById(messageId, updateText);
+    }
+    return message;
+}
+
+
+public List<Message> getAllAccountMessages(int accountId)
+{
+    return shardFor(accountId).getAllAccountMessages(accountId);
+}
+
+
+/*
+* Reads a page from every shard and keeps the lowest IDs.
+*/
+public List<Message> getMessagesPage(int afterMessageId, int limit)
+{
+    return merge(gather(shard -> shard.getMessagesPage(afterMessageId, limit)), ID_ORDER, limit);
+}
+
+
+public List<Message> getAccountMessagesPage(int accountId, int afterMessageId, int limit)
+{
+    return shardFor(accountId).getAccountMessagesPage(accountId, afterMessageId, limit);
+}
+
+
+public List<Message> getRecentAccountMessages(int accountId, int beforeMessageId, int limit)
+{
+    return shardFor(accountId).getRecentAccountMessages(accountId, beforeMessageId, limit);
+}
+
+
+/*
+* Streams every shard at once, merged in message ID order.
+*/
+public void forEachMessage(MessageConsumer consumer) throws IOException
+{
+    stream((shard, shardConsumer) -> shard.forEachMessage(shardConsumer), ID_ORDER, consumer);
+}
+
+
+public void forEachAccountMessage(int accountId, MessageConsumer consumer) throws IOException
+{
+    shardFor(accountId).forEachAccountMessage(accountId, consumer);
+}
+
+
+/*
+* Streams the range from every shard at once, merged in
+* time_posted_epoch order.
+*/
+public void forEachMessageInRange(long from, long to, MessageConsumer consumer) throws IOException
+{
+    stream((shard, shardConsumer) -> shard.forEachMessageInRange(from, to, shardConsumer), TIME_ORDER, consumer);
+}
+
+
+public void forEachAccountMessageInRange(int accountId, long from, long to, MessageConsumer consumer) throws IOException
+{
+    shardFor(accountId).forEachAccountMessageInRange(accountId, from, to, consumer);
+}
+
+
+/*
+* Returns the runtime counters of each shard's pool.
+*
+* @return Returns a map of shard name to its pool counters.
+*/
+public Map<String, Object> getStats()
+{
+    Map<String, Object> stats = new LinkedHashMap<>();
+    for(int shard = 0; shard < shards.length; shard++)
+        stats.put("shard" + shard, ConnectionUtil.getPool(shard).getStats());
+    return stats;
+}
+
+
+/*
+* Brings the databases in line with the configured shard count.
+* Creates the message tables of new shards and, when the count
+* differs from the one recorded in shard_layout, moves every
+* message to the shard its account now hashes to and restarts
+* each shard's IDs past the highest ID used anywhere. Runs at
+* startup, before any request.
+*
+* @param accountIds
+* @param shardCount
+*
+* @throws IllegalStateException if the messages could not be moved,
+*         in which case the recorded count is left as it was so the
+*         next start tries again.
+*/
+public static void applyLayout(AccountIdIndex accountIds, int shardCount)
+{
+    int recorded = readShardLayout();
+    if(recorded < 1)
+        return;
+
+    int span = Math.max(recorded, shardCount);
+    for(int shard = 1; shard < span; shard++)
+        migrateShard(shard);
+    if(recorded == shardCount)
+        return;
+
+    MessageDAO[] all = new MessageDAO[span];
+    for(int shard = 0; shard < span; shard++)
+        all[shard] = new MessageDAO(accountIds, shard);
+
+    long moved = 0;
+    for(int source = 0; source < span; source++)
+        moved += moveMisplacedMessages(all, source, shardCount);
+
+    //Starting every shard past every ID in use, moved messages included
+    int highest = 0;
+    for(MessageDAO shard : all)
+    {
+        int shardHighest = shard.getHighestMessageId();
+        if(shardHighest < 0)
+            throw new IllegalStateException("Could not read the message IDs of every shard");
+        highest = Math.max(highest, shardHighest);
+    }
+    for(int shard = 0; shard < shardCount; shard++)
+    {
+        //The first ID past the highest that belongs to this shard
+        int start = highest + 1 + Math.floorMod(shard - highest, shardCount);
+        if(all[shard].restartMessageIds(start, shardCount) == false)
+            throw new IllegalStateException("Could not restart the message IDs of shard " + shard);
+    }
+
+    writeShardLayout(shardCount);
+    System.out.println("Moved " + moved + " messages from " + recorded + " to " + shardCount + " shards");
+}
+
+
+/*
+* Moves the messages of one shard that belong in another, a page
+* at a time. Each page is saved to its new shard before it is
+* deleted from the old one, so an interrupted move leaves copies
+* behind rather than losing messages, and the next start repeats it.
+*
+* @return Returns the number of messages moved.
+*/
+private static long moveMisplacedMessages(MessageDAO[] all, int source, int shardCount)
+{
+    long moved = 0;
+    int afterMessageId = 0;
+    while(true)
+    {
+        List<Message> page = all[source].getMessagesPage(afterMessageId, MOVE_BATCH_SIZE);
+        if(page.isEmpty())
+            return moved;
+        afterMessageId = page.get(page.size() - 1).getMessage_id();
+
+        Map<Integer, List<Message>> byTarget = new HashMap<>();
+        for(Message message : page)
+        {
+            int target = shardOf(message.getPosted_by(), shardCount);
+            if(target != source)
+                byTarget.computeIfAbsent(target, shard -> new ArrayList<>()).add(message);
+        }
+
+        for(Map.Entry<Integer, List<Message>> entry : byTarget.entrySet())
+        {
+            List<Integer> messageIds = new ArrayList<>();
+            for(Message message : entry.getValue())
+                messageIds.add(message.getMessage_id());
+
+            if(all[entry.getKey()].putMessages(entry.getValue()) == false || all[source].deleteMessages(messageIds) == false)
+                throw new IllegalStateException("Could not move messages from shard " + source + " to shard " + entry.getKey());
+            moved += messageIds.size();
+        }
+    }
+}
+
+
+/*
+* Creates or updates the message table of a shard after the first.
+*/
+private static void migrateShard(int shard)
+{
+    //Connecting to the shard's database
+    Connection connection = ConnectionUtil.getConnection(shard);
+
+    try
+    {
+        SchemaMigrator.migrateShard(connection);
+    }
+    catch(SQLException | IOException e)
+    {
+        throw new IllegalStateException("Schema migration of message shard " + shard + " failed", e);
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+/*
+* Reads the shard count messages were last spread over.
+*
+* @return Returns the recorded count, or -1 if the database
+*         has no shard_layout table yet.
+*/
+private static int readShardLayout()
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //SQL Statement
+        String sql = "SELECT shard_count FROM shard_layout WHERE layout_id = 1";
+        ResultSet rs = connection.prepareStatement(sql).executeQuery();
+        if(rs.next())
+            return rs.getInt("shard_count");
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return -1;
+}
+
+
+/*
+* Records the shard count messages are now spread over.
+*/
+private static void writeShardLayout(int shardCount)
+{
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //SQL Statement
+        String sql = "UPDATE shard_layout SET shard_count = ? WHERE layout_id = 1";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Setting prepared statement parameter
+        ps.setInt(1, shardCount);
+        ps.executeUpdate();
+    }
+    catch(SQLException e)
+    {
+        throw new IllegalStateException("Could not record the shard count", e);
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+}
+
+
+private MessageDAO shardFor(int accountId)
+{
+    return shards[shardOf(accountId, shards.length)];
+}
+
+
+/*
+* Runs one read against every shard in parallel and waits for
+* all of the answers.
+*
+* @return Returns the answers in shard order.
+*/
+private <T> List<T> gather(Function<MessageDAO, T> read)
+{
+    List<CompletableFuture<T>> answers = new ArrayList<>();
+    for(MessageDAO shard : shards)
+        answers.add(CompletableFuture.supplyAsync(() -> read.apply(shard), shardReaders));
+
+    List<T> results = new ArrayList<>();
+    for(CompletableFuture<T> answer : answers)
+        results.add(answer.join());
+    return results;
+}
+
+
+/*
+* Merges sorted lists from the shards, keeping the first limit messages.
+*/
+private static List<Message> merge(List<List<Message>> shardMessages, Comparator<Message> order, int limit)
+{
+    List<Iterator<Message>> sources = new ArrayList<>();
+    for(List<Message> messages : shardMessages)
+        sources.add(messages.iterator());
+    return KWayMerge.merge(sources, order, limit);
+}
+
+
+/*
+* Streams a read from every shard in parallel into one consumer,
+* merging as it goes. Each shard's reader runs ahead of the merge
+* by at most one fetch, and readers still running when the
+* consumer fails are stopped.
+*/
+private void stream(ShardRead read, Comparator<Message> order, MessageConsumer consumer) throws IOException
+{
+    List<ShardStream> streams = new ArrayList<>();
+    for(MessageDAO shard : shards)
+    {
+        ShardStream stream = new ShardStream();
+        streams.add(stream);
+        shardReaders.execute(() -> stream.fill(shard, read));
+    }
+
+    try
+    {
+        Iterator<Message> merged = KWayMerge.iterator(streams, order);
+        while(merged.hasNext())
+            consumer.accept(merged.next());
+    }
+    catch(UncheckedIOException e)
+    {
+        throw e.getCause();
+    }
+    finally
+    {
+        //Stopping any reader the merge did not run to the end
+        for(ShardStream stream : streams)
+            stream.cancel();
+    }
+}
+
+
+/*
+* A streaming read of one shard
+*/
+@FunctionalInterface
+private interface ShardRead
+{
+    void read(MessageDAO shard, MessageConsumer consumer) throws IOException;
+}
+
+
+/*
+* The messages of one shard's streaming read, handed from the
+* reader thread to the merging thread through a bounded queue.
+*/
+private static class ShardStream implements Iterator<Message>
+{
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(MessageDAO.STREAM_FETCH_SIZE);
+    private volatile boolean cancelled;
+
+    /*
+    * The item taken off the queue but not yet returned: a message,
+    * END, or the exception the read ended with
+    */
+    private Object next;
+
+    /*
+    * Runs the read on the reader thread, ending with END or the failure.
+    */
+    void fill(MessageDAO shard, ShardRead read)
+    {
+        Object last = END;
+        try
+        {
+            read.read(shard, this::put);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            last = e;
+        }
+
+        try
+        {
+            put(last);
+        }
+        catch(IOException e)
+        {
+            //Cancelled, so nobody is waiting for the end
+        }
+    }
+
+    void cancel()
+    {
+        cancelled = true;
+    }
+
+    private void put(Object item) throws IOException
+    {
+        try
+        {
+            while(queue.offer(item, 100, TimeUnit.MILLISECONDS) == false)
+            {
+                if(cancelled)
+                    throw new IOException("Shard read cancelled");
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    public boolean hasNext()
+    {
+        if(next == null)
+        {
+            try
+            {
+                next = queue.take();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException());
+            }
+        }
+
+        if(next instanceof IOException)
+            throw new UncheckedIOException((IOException) next);
+        if(next instanceof RuntimeException)
+            throw (RuntimeException) next;
+        return next != END;
+    }
+
+    public Message next()
+    {
+        if(hasNext() == false)
+            throw new NoSuchElementException();
+
+        Message message = (Message) next;
+        next = null;
+        return message;
+    }
+}
+
+}
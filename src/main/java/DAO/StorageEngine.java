@@ -0,0 +1,79 @@
+package DAO;
+
+import java.util.Map;
+
+/*
+* The storage the services run on, chosen at startup with the
+* socialmedia.engine system property:
+*
+*   jdbc   - AccountDAO and MessageDAO over the H2 database (default)
+*   memory - InMemoryAccountStore and InMemoryMessageStore, with no
+*            SQL layer unless told to import from the database
+*/
+public interface StorageEngine {
+
+/*
+* Returns the account storage.
+*/
+AccountStore getAccountStore();
+
+
+/*
+* Returns the message storage.
+*/
+MessageStore getMessageStore();
+
+
+/*
+* Returns the follow graph storage.
+*/
+FollowStore getFollowStore();
+
+
+/*
+* Returns runtime counters for the metrics endpoint.
+*
+* @return Returns a map of component name to its counters.
+*/
+Map<String, Object> getMetrics();
+
+
+/*
+* Releases anything the engine holds, such as writing a final snapshot.
+*/
+void close();
+
+
+/*
+* Creates the engine named by the socialmedia.engine system property.
+*
+* @return Returns the engine.
+*/
+static StorageEngine fromSystemProperties()
+{
+    String engine = System.getProperty("socialmedia.engine", "jdbc");
+    switch(engine)
+    {
+        case "jdbc":
+            return new JdbcStorageEngine();
+        case "memory":
+            return InMemoryStorageEngine.fromSystemProperties();
+        default:
+            throw new IllegalArgumentException("Unknown socialmedia.engine: " + engine);
+    }
+}
+
+
+/*
+* Checks if the configured engine reads the database, so that
+* startup knows whether to run schema migrations.
+*
+* @return Returns true unless the memory engine runs without importing.
+*/
+static boolean usesDatabase()
+{
+    return "memory".equals(System.getProperty("socialmedia.engine", "jdbc")) == false
+            || InMemoryStorageEngine.importsFromDatabase();
+}
+
+}
@@ -0,0 +1,71 @@
+package DAO;
+
+import java.util.Map;
+
+/*
+* Where the in-memory engine keeps message texts. Each stored text is
+* identified by an int reference held in the message columns, and only
+* becomes a String again when a row is read.
+*
+* Implementations are not thread-safe; InMemoryMessageStore guards
+* them with its lock, and may call get from many readers at once.
+*/
+interface TextStore {
+
+/*
+* Stores a text.
+*
+* @param text
+*
+* @return Returns the reference for the text.
+*/
+int store(String text);
+
+
+/*
+* Returns the text for a reference.
+*
+* @param ref
+*
+* @return Returns the text.
+*/
+String get(int ref);
+
+
+/*
+* Drops a reference once no row uses it.
+*
+* @param ref
+*/
+void release(int ref);
+
+
+/*
+* Returns the store counters for the metrics endpoint.
+*
+* @return Returns the number of texts and the memory they use.
+*/
+Map<String, Object> getStats();
+
+
+/*
+* Creates the store named by the socialmedia.memory.text system property:
+* heap (the default) or offheap.
+*
+* @return Returns an empty store.
+*/
+static TextStore fromSystemProperties()
+{
+    String kind = System.getProperty("socialmedia.memory.text", "heap");
+    switch(kind)
+    {
+        case "heap":
+            return new HeapTextStore();
+        case "offheap":
+            return new OffHeapTextStore(Integer.getInteger("socialmedia.memory.slabBytes", 4 * 1024 * 1024));
+        default:
+            throw new IllegalArgumentException("Unknown socialmedia.memory.text: " + kind);
+    }
+}
+
+}
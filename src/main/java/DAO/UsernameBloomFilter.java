@@ -0,0 +1,238 @@
+package DAO;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import Util.ConnectionUtil;
+
+/*
+* Bloom filter over every registered username. A negative answer means
+* the username is definitely not taken, so registration can skip the
+* lookup query. A positive answer may be a false positive, so callers
+* still ask the database in that case. Usernames are never removed.
+*
+* Bits are set with compare-and-set, so lookups and adds take no lock.
+*/
+public class UsernameBloomFilter {
+
+private final AtomicLongArray bits;
+private final long bitCount;
+private final int hashCount;
+private final long expectedUsernames;
+
+private final AtomicLong usernames = new AtomicLong();
+private final AtomicLong definitelyAbsent = new AtomicLong();
+private final AtomicLong maybePresent = new AtomicLong();
+private final AtomicLong falsePositives = new AtomicLong();
+
+
+/*
+* Constructor, sizing the filter for a number of usernames and
+* a target false-positive probability.
+*
+* @param expectedUsernames
+* @param falsePositiveProbability
+*/
+public UsernameBloomFilter(long expectedUsernames, double falsePositiveProbability)
+{
+    this.expectedUsernames = Math.max(1, expectedUsernames);
+
+    //Optimal sizes: m = -n ln(p) / (ln 2)^2 and k = (m / n) ln 2
+    long optimalBits = (long) Math.ceil(-this.expectedUsernames * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+    int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (optimalBits + 63) >>> 6));
+    this.bits = new AtomicLongArray(words);
+    this.bitCount = (long) words * Long.SIZE;
+    this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.expectedUsernames * Math.log(2)));
+}
+
+
+/*
+* Builds a filter of every username currently in the Account table,
+* sized from the socialmedia.usernameFilter.* system properties and
+* with room for at least as many new usernames as already exist.
+*
+* @return Returns the loaded filter.
+*/
+public static UsernameBloomFilter load()
+{
+    long expected = Long.getLong("socialmedia.usernameFilter.expectedUsernames", 100000);
+    double fpp = Double.parseDouble(System.getProperty("socialmedia.usernameFilter.falsePositiveProbability", "0.01"));
+
+    //Connecting to database
+    Connection connection = ConnectionUtil.getConnection();
+
+    try
+    {
+        //Sizing for twice the current number of accounts
+        PreparedStatement count = connection.prepareStatement("SELECT COUNT(*) FROM Account");
+        ResultSet countRs = count.executeQuery();
+        if(countRs.next())
+            expected = Math.max(expected, countRs.getLong(1) * 2);
+
+        UsernameBloomFilter filter = new UsernameBloomFilter(expected, fpp);
+
+        //SQL Statement
+        String sql = "SELECT username FROM Account";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        //Adding every username to the filter
+        ResultSet rs = ps.executeQuery();
+        while(rs.next())
+            filter.add(rs.getString("username"));
+
+        return filter;
+    }
+    catch(SQLException e)
+    {
+        System.out.println(e.getMessage());
+    }
+    finally
+    {
+        //Returning connection to the pool
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    return new UsernameBloomFilter(expected, fpp);
+}
+
+
+/*
+* Checks whether a username might be taken.
+*
+* @param username
+*
+* @return Returns false if the username is definitely not taken,
+*         true if it might be.
+*/
+public boolean mightContain(String username)
+{
+    if(username == null)
+        return true;
+
+    long hash = hash(username);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for(int i = 0; i < hashCount; i++)
+    {
+        long bit = index(h1 + i * h2);
+        if((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+        {
+            definitelyAbsent.incrementAndGet();
+            return false;
+        }
+    }
+
+    maybePresent.incrementAndGet();
+    return true;
+}
+
+
+/*
+* Records that a username is taken.
+*
+* @param username
+*/
+public void add(String username)
+{
+    if(username == null)
+        return;
+
+    long hash = hash(username);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    boolean changed = false;
+    for(int i = 0; i < hashCount; i++)
+    {
+        long bit = index(h1 + i * h2);
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current;
+        while(((current = bits.get(word)) & mask) == 0)
+        {
+            if(bits.compareAndSet(word, current, current | mask))
+            {
+                changed = true;
+                break;
+            }
+        }
+    }
+
+    //A username that set no new bit was already counted, or is indistinguishable from one that was
+    if(changed)
+        usernames.incrementAndGet();
+}
+
+
+/*
+* Records that a positive answer turned out to be wrong, for the
+* observed false-positive count in the metrics.
+*/
+public void recordFalsePositive()
+{
+    falsePositives.incrementAndGet();
+}
+
+
+/*
+* Returns the filter counters for the metrics endpoint.
+*
+* @return Returns the size, memory used, estimated and observed
+*         false-positive rates and lookup outcomes.
+*/
+public Map<String, Object> getStats()
+{
+    long n = usernames.get();
+    long positives = maybePresent.get();
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("usernames", n);
+    stats.put("expected_usernames", expectedUsernames);
+    stats.put("bits", bitCount);
+    stats.put("hash_functions", hashCount);
+    stats.put("memory_bytes", bitCount / 8);
+    //(1 - e^(-kn/m))^k for the current number of usernames
+    stats.put("estimated_fpp", Math.pow(1 - Math.exp(-(double) hashCount * n / bitCount), hashCount));
+    stats.put("definitely_absent", definitelyAbsent.get());
+    stats.put("maybe_present", positives);
+    stats.put("false_positives", falsePositives.get());
+    stats.put("observed_fpp", positives == 0 ? 0 : (double) falsePositives.get() / positives);
+    return stats;
+}
+
+
+/*
+* Maps a combined hash onto a bit position.
+*/
+private long index(int combined)
+{
+    return (combined & 0x7fffffffL) % bitCount;
+}
+
+
+/*
+* 64-bit FNV-1a over the UTF-8 bytes, finished with a murmur mix so
+* both 32-bit halves are usable as independent hashes.
+*/
+private static long hash(String username)
+{
+    long hash = 0xcbf29ce484222325L;
+    for(byte b : username.getBytes(StandardCharsets.UTF_8))
+    {
+        hash ^= b;
+        hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+}
+
+}
@@ -1,4 +1,6 @@
 import Controller.SocialMediaController;
+import DAO.StorageEngine;
+import Util.SchemaMigrator;
 import io.javalin.Javalin;
 
 /**
@@ -7,6 +9,8 @@ import io.javalin.Javalin;
  */
 public class Main {
     public static void main(String[] args) {
+        if(StorageEngine.usesDatabase())
+            SchemaMigrator.migrate();
         SocialMediaController controller = new SocialMediaController();
         Javalin app = controller.startAPI();
         app.start(8080);
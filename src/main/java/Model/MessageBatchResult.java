@@ -0,0 +1,129 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models the outcome of one message in a batch creation request.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the message in the request array.
+     */
+    public int index;
+    /**
+     * The created message, including its generated message_id, or null if it was not created.
+     */
+    public Message message;
+    /**
+     * Why the message was not created, or null if it was.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult(){
+    }
+    /**
+     * @param index
+     * @param message
+     * @param error
+     */
+    public MessageBatchResult(int index, Message message, String error) {
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @param index
+     * @param message the created message
+     * @return a result for a message that was created.
+     */
+    public static MessageBatchResult created(int index, Message message) {
+        return new MessageBatchResult(index, message, null);
+    }
+    /**
+     * @param index
+     * @param error
+     * @return a result for a message that was not created.
+     */
+    public static MessageBatchResult failed(int index, String error) {
+        return new MessageBatchResult(index, null, error);
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work.
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work.
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work.
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work.
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work.
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work.
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default equals() method adds functionality to tell when two objects are identical, allowing
+     * Assert.assertEquals and List.contains to function.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageBatchResult result = (MessageBatchResult) o;
+        return index == result.index && Objects.equals(message, result.message) && Objects.equals(error, result.error);
+    }
+    /**
+     * Overriding the default hashCode() method keeps it consistent with equals(), so equal results can be
+     * found in hash based collections.
+     * @return a hash of the fields compared by equals().
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, message, error);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -2,11 +2,12 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import DAO.AccountStore;
 
 public class AccountService 
 {
 
-    private AccountDAO accountDAO;
+    private AccountStore accountStore;
     
     
     /*
@@ -14,18 +15,19 @@ public class AccountService
     */
     public AccountService()
     {
-        accountDAO = new AccountDAO();
+        accountStore = new AccountDAO();
     }
 
 
     /*
-    * Constructor with provided DAO
+    * Constructor with provided storage, which may be
+    * an AccountDAO or the in-memory engine's store
     * 
-    * @param accountDAO
+    * @param accountStore
     */
-    public AccountService(AccountDAO accountDAO)
+    public AccountService(AccountStore accountStore)
     {
-        this.accountDAO = accountDAO;
+        this.accountStore = accountStore;
     }
 
 
@@ -39,10 +41,10 @@ public class AccountService
     public Account registerAccount(Account account)
     {
         //Checking input to see if the parameters are valid
-        if(accountDAO.validAccountParameters(account.getUsername(), account.getPassword()) == false)
+        if(accountStore.validAccountParameters(account.getUsername(), account.getPassword()) == false)
             return null;
 
-        return accountDAO.registerAccount(account);
+        return accountStore.registerAccount(account);
     }
 
 
@@ -55,7 +57,7 @@ public class AccountService
     */
     public Account logInAccount(Account account)
     {
-        return accountDAO.logInAccount(account.getUsername(), account.getPassword());
+        return accountStore.logInAccount(account.getUsername(), account.getPassword());
     }
 
 }
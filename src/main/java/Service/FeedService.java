@@ -0,0 +1,553 @@
+package Service;
+
+import Model.Message;
+import Model.MessagePage;
+import DAO.FollowStore;
+import DAO.MessageStore;
+import Util.IntList;
+import Util.UnitOfWork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/*
+* Home feeds built by fan-out on write. Each follower whose feed has
+* been read has a bounded buffer holding the IDs of the newest messages
+* posted by the accounts it follows. When a message is created, its ID
+* is pushed into the buffer of every follower of its author once the
+* transaction commits, so a feed read is a walk down one buffer plus a
+* point lookup per message on the page.
+*
+* Accounts with more than celebrityFollowers followers are not fanned
+* out; one post would touch too many buffers. Their messages are merged
+* into each follower's page at read time instead, one bounded query per
+* celebrity followed. Reading past the oldest message a buffer holds
+* falls back to the same merge over every followee.
+*
+* Buffers live only in memory. A feed is loaded from the follow graph
+* and the followees' newest messages on its first read, and reloaded
+* after its owner follows or unfollows someone. Messages are ordered by
+* message_id, newest first.
+*/
+public class FeedService
+{
+    private final FollowStore followStore;
+    private final MessageStore messageStore;
+    private final int bufferSize;
+    private final int celebrityFollowers;
+
+    /*
+    * Follower count of every account that has followers, guarded by itself
+    */
+    private final Map<Integer, Integer> followerCounts;
+
+    /*
+    * Loaded feeds by follower ID in access order, guarded by itself
+    */
+    private final LinkedHashMap<Integer, Feed> feeds;
+
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong celebrityPosts = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong readsPastBuffer = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+
+    /*
+    * Constructor with the sizes given by the system properties
+    * socialmedia.feed.bufferSize (500), .celebrityFollowers (10000)
+    * and .maxFeeds (100000)
+    *
+    * @param followStore
+    * @param messageStore
+    */
+    public FeedService(FollowStore followStore, MessageStore messageStore)
+    {
+        this(followStore, messageStore,
+                Integer.getInteger("socialmedia.feed.bufferSize", 500),
+                Integer.getInteger("socialmedia.feed.celebrityFollowers", 10000),
+                Integer.getInteger("socialmedia.feed.maxFeeds", 100000));
+    }
+
+
+    /*
+    * Constructor, which loads every account's follower count
+    *
+    * @param followStore
+    * @param messageStore
+    * @param bufferSize most message IDs kept per feed
+    * @param celebrityFollowers follower count above which an account is merged on read
+    * @param maxFeeds most feeds kept loaded; the least recently read are dropped
+    */
+    public FeedService(FollowStore followStore, MessageStore messageStore, int bufferSize, int celebrityFollowers, int maxFeeds)
+    {
+        this.followStore = followStore;
+        this.messageStore = messageStore;
+        this.bufferSize = bufferSize;
+        this.celebrityFollowers = celebrityFollowers;
+        this.followerCounts = new HashMap<>(followStore.getFollowerCounts());
+        this.feeds = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Feed> eldest)
+            {
+                return size() > maxFeeds;
+            }
+        };
+    }
+
+
+    /*
+    * Makes one account follow another.
+    *
+    * @param followerId
+    * @param followeeId
+    *
+    * @return Returns false if either account does not exist or
+    *         they are the same account.
+    */
+    public boolean follow(int followerId, int followeeId)
+    {
+        if(validFollow(followerId, followeeId) == false)
+            return false;
+
+        if(followStore.follow(followerId, followeeId))
+            UnitOfWork.afterCommit(() -> followersChanged(followerId, followeeId, 1));
+        return true;
+    }
+
+
+    /*
+    * Makes one account stop following another.
+    *
+    * @param followerId
+    * @param followeeId
+    *
+    * @return Returns false if either account does not exist or
+    *         they are the same account.
+    */
+    public boolean unfollow(int followerId, int followeeId)
+    {
+        if(validFollow(followerId, followeeId) == false)
+            return false;
+
+        if(followStore.unfollow(followerId, followeeId))
+            UnitOfWork.afterCommit(() -> followersChanged(followerId, followeeId, -1));
+        return true;
+    }
+
+
+    /*
+    * Fans newly created messages out to their authors' followers once
+    * the current unit of work has committed. The followers are looked
+    * up now, inside the transaction that created the messages.
+    *
+    * @param messages
+    */
+    public void fanOut(List<Message> messages)
+    {
+        Map<Integer, int[]> targets = fanOutTargets(messages);
+        if(targets.isEmpty() == false)
+            UnitOfWork.afterCommit(() -> push(messages, targets));
+    }
+
+
+    /*
+    * Fans messages that are already committed out to their authors'
+    * followers straight away.
+    *
+    * @param messages
+    */
+    public void fanOutCommitted(List<Message> messages)
+    {
+        Map<Integer, int[]> targets = fanOutTargets(messages);
+        if(targets.isEmpty() == false)
+            push(messages, targets);
+    }
+
+
+    /*
+    * Returns one page of an account's feed: the messages posted by
+    * the accounts it follows, newest first.
+    *
+    * @param accountId
+    * @param beforeMessageId only messages with a lower ID are returned; Integer.MAX_VALUE for the first page
+    * @param limit maximum number of messages on the page
+    * @param lookup fetches a buffered message by ID, returning null if it has been deleted
+    *
+    * @return Returns a page of messages and the cursor for the page after it.
+    */
+    public MessagePage getFeedPage(int accountId, int beforeMessageId, int limit, IntFunction<Message> lookup)
+    {
+        reads.incrementAndGet();
+        Feed feed = loadedFeed(accountId);
+
+        //Candidates by ID, newest first; asking for one extra tells us whether another page follows
+        TreeMap<Integer, Message> candidates = new TreeMap<>();
+        IntList buffered = feed.newestBefore(beforeMessageId, limit + 1);
+        for(int i = 0; i < buffered.size(); i++)
+            candidates.put(buffered.get(i), null);
+
+        //Paging past what the buffer holds means asking every followee
+        if(buffered.size() <= limit && feed.isComplete() == false)
+        {
+            readsPastBuffer.incrementAndGet();
+            int olderThan = Math.min(beforeMessageId, feed.oldest());
+            mergeRecent(candidates, feed.followees, olderThan, limit + 1 - buffered.size());
+        }
+
+        //Celebrities are never fanned out, so every page asks them directly
+        mergeRecent(candidates, feed.celebrities, beforeMessageId, limit + 1);
+
+        //Keeping the newest limit candidates and fetching the buffered ones
+        List<Message> messages = new ArrayList<>(Math.min(limit, candidates.size()));
+        int lookedAt = 0;
+        int lastLookedAt = 0;
+        for(Map.Entry<Integer, Message> candidate : candidates.descendingMap().entrySet())
+        {
+            if(lookedAt++ == limit)
+                break;
+            Message message = candidate.getValue() != null ? candidate.getValue() : lookup.apply(candidate.getKey());
+            if(message != null)
+                messages.add(message);
+            lastLookedAt = candidate.getKey();
+        }
+
+        //The cursor is the last ID looked at, so deleted messages do not end the feed early
+        String nextCursor = candidates.size() > limit ? Integer.toString(lastLookedAt) : null;
+        return new MessagePage(messages, nextCursor);
+    }
+
+
+    /*
+    * Returns the feed counters for the metrics endpoint.
+    *
+    * @return Returns loaded feed counts, buffer memory and fan-out counters.
+    */
+    public Map<String, Object> getStats()
+    {
+        int loadedFeeds;
+        long bufferBytes = 0;
+        synchronized(feeds)
+        {
+            loadedFeeds = feeds.size();
+            for(Feed feed : feeds.values())
+                bufferBytes += feed.memoryBytes();
+        }
+        int celebrities = 0;
+        synchronized(followerCounts)
+        {
+            for(int count : followerCounts.values())
+            {
+                if(count > celebrityFollowers)
+                    celebrities++;
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loaded_feeds", loadedFeeds);
+        stats.put("buffer_bytes", bufferBytes);
+        stats.put("buffer_size", bufferSize);
+        stats.put("celebrity_followers", celebrityFollowers);
+        stats.put("celebrities", celebrities);
+        stats.put("pushes", pushes.get());
+        stats.put("celebrity_posts", celebrityPosts.get());
+        stats.put("loads", loads.get());
+        stats.put("reads", reads.get());
+        stats.put("reads_past_buffer", readsPastBuffer.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+
+    /*
+    * Checks a follow names two different existing accounts.
+    */
+    private boolean validFollow(int followerId, int followeeId)
+    {
+        if(followerId == followeeId)
+            return false;
+        return messageStore.getExistingAccountIds(Arrays.asList(followerId, followeeId)).size() == 2;
+    }
+
+
+    /*
+    * Applies a committed follow or unfollow. The follower's feed is
+    * reloaded on its next read. If the followee became or stopped
+    * being a celebrity, so is the feed of each of its followers, as
+    * those hold its messages under the other rule; no other feed does.
+    */
+    private void followersChanged(int followerId, int followeeId, int delta)
+    {
+        boolean wasCelebrity;
+        boolean isCelebrity;
+        synchronized(followerCounts)
+        {
+            int before = followerCounts.getOrDefault(followeeId, 0);
+            int after = Math.max(0, before + delta);
+            if(after == 0)
+                followerCounts.remove(followeeId);
+            else
+                followerCounts.put(followeeId, after);
+            wasCelebrity = before > celebrityFollowers;
+            isCelebrity = after > celebrityFollowers;
+        }
+
+        int[] followers = wasCelebrity != isCelebrity ? followStore.getFollowers(followeeId) : new int[0];
+        synchronized(feeds)
+        {
+            feeds.remove(followerId);
+            for(int id : followers)
+                feeds.remove(id);
+        }
+        invalidations.incrementAndGet();
+    }
+
+
+    /*
+    * Looks up the followers to push each message's ID to, once per
+    * author. Authors with no followers, and celebrities, are skipped.
+    */
+    private Map<Integer, int[]> fanOutTargets(List<Message> messages)
+    {
+        Map<Integer, int[]> targets = new HashMap<>();
+        for(Message message : messages)
+        {
+            int author = message.getPosted_by();
+            if(targets.containsKey(author))
+                continue;
+
+            int followers = followerCount(author);
+            if(followers > celebrityFollowers)
+                celebrityPosts.incrementAndGet();
+            else if(followers > 0)
+                targets.put(author, followStore.getFollowers(author));
+        }
+        return targets;
+    }
+
+
+    /*
+    * Pushes each message's ID into the loaded feeds of its author's
+    * followers. Followers whose feeds are not loaded are skipped, as
+    * loading reads the committed messages anyway.
+    */
+    private void push(List<Message> messages, Map<Integer, int[]> targets)
+    {
+        for(Message message : messages)
+        {
+            int[] followers = targets.get(message.getPosted_by());
+            if(followers == null)
+                continue;
+
+            List<Feed> loaded = new ArrayList<>(followers.length);
+            synchronized(feeds)
+            {
+                for(int followerId : followers)
+                {
+                    Feed feed = feeds.get(followerId);
+                    if(feed != null)
+                        loaded.add(feed);
+                }
+            }
+            for(Feed feed : loaded)
+                feed.push(message.getMessage_id());
+            pushes.addAndGet(loaded.size());
+        }
+    }
+
+
+    /*
+    * Returns an account's feed, loading it first if needed. The empty
+    * feed is registered before loading, so messages committed while it
+    * loads are pushed into it rather than missed; pushes and loaded
+    * IDs are merged without duplicates in either order. Concurrent
+    * first reads of a feed wait for one of them to load it.
+    */
+    private Feed loadedFeed(int accountId)
+    {
+        Feed feed;
+        synchronized(feeds)
+        {
+            feed = feeds.get(accountId);
+            if(feed == null)
+            {
+                feed = new Feed(bufferSize);
+                feeds.put(accountId, feed);
+            }
+        }
+        if(feed.loaded)
+            return feed;
+
+        synchronized(feed.loadLock)
+        {
+            //Loaded by another read while this one waited; a failed load is left for the next one to retry
+            if(feed.loaded == false)
+                load(accountId, feed);
+        }
+        return feed;
+    }
+
+
+    /*
+    * Fills a registered feed from the follow graph and the followees'
+    * newest messages. Called holding the feed's load lock.
+    */
+    private void load(int accountId, Feed feed)
+    {
+        //Splitting the followees by how their messages reach the feed
+        IntList followees = new IntList();
+        IntList celebrities = new IntList();
+        for(int followeeId : followStore.getFollowees(accountId))
+        {
+            if(followerCount(followeeId) > celebrityFollowers)
+                celebrities.add(followeeId);
+            else
+                followees.add(followeeId);
+        }
+
+        //Each followee's newest buffer-full is enough to fill the buffer
+        boolean cut = false;
+        for(int i = 0; i < followees.size(); i++)
+        {
+            List<Message> recent = messageStore.getRecentAccountMessages(followees.get(i), Integer.MAX_VALUE, bufferSize);
+            for(Message message : recent)
+                feed.push(message.getMessage_id());
+            cut |= recent.size() == bufferSize;
+        }
+
+        feed.followees = followees.toArray();
+        feed.celebrities = celebrities.toArray();
+        feed.loaded(cut);
+        loads.incrementAndGet();
+    }
+
+
+    /*
+    * Adds the newest messages of some accounts, older than a message
+    * ID, to a set of candidates.
+    */
+    private void mergeRecent(TreeMap<Integer, Message> candidates, int[] accountIds, int beforeMessageId, int limit)
+    {
+        if(limit <= 0)
+            return;
+        for(int accountId : accountIds)
+        {
+            for(Message message : messageStore.getRecentAccountMessages(accountId, beforeMessageId, limit))
+                candidates.put(message.getMessage_id(), message);
+        }
+    }
+
+
+    private int followerCount(int accountId)
+    {
+        synchronized(followerCounts)
+        {
+            return followerCounts.getOrDefault(accountId, 0);
+        }
+    }
+
+
+    /*
+    * One follower's buffer: the newest message IDs from the accounts it
+    * follows, other than celebrities, in ascending order. Once full, the
+    * oldest ID is dropped for each new one.
+    */
+    private static class Feed
+    {
+        private final int capacity;
+        private final IntList ids;
+
+        /*
+        * Held while loading, so only one read loads the feed. Kept apart
+        * from the feed's own lock, so pushes are not held up by a load.
+        */
+        private final Object loadLock = new Object();
+
+        /*
+        * True once nothing older than the oldest buffered ID is known
+        * to be missing: the load was not cut short and no ID was dropped
+        */
+        private boolean complete = true;
+
+        private volatile boolean loaded;
+        private volatile int[] followees = new int[0];
+        private volatile int[] celebrities = new int[0];
+
+        private Feed(int capacity)
+        {
+            this.capacity = capacity;
+            this.ids = new IntList(Math.min(capacity, 16));
+        }
+
+        /*
+        * Adds an ID in order, ignoring one already held.
+        */
+        private synchronized void push(int messageId)
+        {
+            int position = ids.binarySearch(messageId);
+            if(position >= 0)
+                return;
+            position = -position - 1;
+
+            if(ids.size() == capacity)
+            {
+                complete = false;
+
+                //Older than everything in a full buffer
+                if(position == 0)
+                    return;
+                ids.removeAt(0);
+                position--;
+            }
+            ids.insert(position, messageId);
+        }
+
+        private synchronized void loaded(boolean cut)
+        {
+            if(cut)
+                complete = false;
+            loaded = true;
+        }
+
+        /*
+        * Returns up to limit buffered IDs below a message ID, newest first.
+        */
+        private synchronized IntList newestBefore(int beforeMessageId, int limit)
+        {
+            IntList newest = new IntList(Math.min(limit, 64));
+            int position = ids.binarySearch(beforeMessageId);
+            position = position >= 0 ? position - 1 : -position - 2;
+            for(; position >= 0 && newest.size() < limit; position--)
+                newest.add(ids.get(position));
+            return newest;
+        }
+
+        /*
+        * Checks if every non-celebrity message older than the oldest
+        * buffered ID is known not to exist.
+        */
+        private synchronized boolean isComplete()
+        {
+            return complete;
+        }
+
+        private synchronized int oldest()
+        {
+            return ids.size() == 0 ? Integer.MAX_VALUE : ids.get(0);
+        }
+
+        private synchronized long memoryBytes()
+        {
+            return ids.memoryBytes();
+        }
+    }
+}
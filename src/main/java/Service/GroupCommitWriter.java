@@ -0,0 +1,409 @@
+package Service;
+
+import Model.Message;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* Write-behind group commit for message inserts. Request threads put
+* their message on a bounded queue and wait; a single writer thread
+* drains the queue every few milliseconds, or as soon as a full batch
+* is waiting, and inserts everything it took as one JDBC batch in one
+* transaction. Each request gets its own message back, with its own
+* message_id, only after that transaction has committed.
+*
+* The writer keeps one connection from the pool for itself, so it can
+* always make progress while request threads wait on it holding theirs.
+* After a batch fails it hands that connection back, so the pool can
+* discard it if it is broken, and borrows another for the next batch.
+*
+* A request never waits longer than the write timeout, and one that
+* arrives after close(), or after the writer thread has died, is
+* refused straight away instead of being queued with nobody to write it.
+*/
+public class GroupCommitWriter
+{
+    /*
+    * Settings read from system properties
+    */
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("socialmedia.groupCommit.maxBatchSize", 256);
+    private static final long MAX_DELAY_MILLIS = Long.getLong("socialmedia.groupCommit.maxDelayMillis", 2);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("socialmedia.groupCommit.queueCapacity", 10000);
+    private static final boolean SYNC = Boolean.parseBoolean(System.getProperty("socialmedia.groupCommit.sync", "true"));
+    private static final long WRITE_TIMEOUT_MILLIS = Long.getLong("socialmedia.groupCommit.writeTimeoutMillis", 10000);
+
+    private final MessageDAO messageDAO;
+    private final BlockingQueue<PendingWrite> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    //Set while the writer waits for work in take(), the only place close() may interrupt it
+    private final Object takeLock = new Object();
+    private volatile boolean taking = false;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong rowCount = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong failedRowCount = new AtomicLong();
+
+
+    /*
+    * Checks the socialmedia.groupCommit system property, which turns
+    * group commit on for services created after it is set.
+    *
+    * @return Returns true if new services should use group commit.
+    */
+    public static boolean isEnabled()
+    {
+        return Boolean.getBoolean("socialmedia.groupCommit");
+    }
+
+
+    /*
+    * Constructor, which starts the writer thread
+    *
+    * @param messageDAO
+    */
+    public GroupCommitWriter(MessageDAO messageDAO)
+    {
+        this.messageDAO = messageDAO;
+        this.writer = new Thread(this::writeLoop, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+
+    /*
+    * Queues a message for the next group commit and waits for it.
+    * Blocks while the queue is full, for at most the write timeout
+    * in all.
+    *
+    * @param message a message that has already been validated
+    *
+    * @return Returns the created message once it has been committed,
+    *         or null if it could not be saved.
+    *
+    * @throws RejectedExecutionException if the writer has stopped, or
+    *         the message was not written within the write timeout.
+    */
+    public Message write(Message message)
+    {
+        if(running == false)
+            throw new RejectedExecutionException("Group commit writer is closed");
+
+        PendingWrite pending = new PendingWrite(message);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MILLIS);
+        try
+        {
+            if(queue.offer(pending, WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) == false)
+                throw new RejectedExecutionException("Group commit queue stayed full for " + WRITE_TIMEOUT_MILLIS + " ms");
+
+            //Closed while this was being queued, after the writer's last look at the queue
+            if(running == false && writer.isAlive() == false && queue.remove(pending))
+                throw new RejectedExecutionException("Group commit writer is closed");
+
+            return pending.result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            queue.remove(pending);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RejectedExecutionException)
+                throw (RejectedExecutionException) e.getCause();
+            System.out.println(e.getCause().getMessage());
+            return null;
+        }
+        catch(TimeoutException e)
+        {
+            //Still queued means it will never be written now; otherwise it is part way through a batch
+            queue.remove(pending);
+            throw new RejectedExecutionException("Message was not written within " + WRITE_TIMEOUT_MILLIS + " ms");
+        }
+    }
+
+
+    /*
+    * Stops the writer thread once the queued messages have been written,
+    * and waits for it, so nothing is still writing when the storage is
+    * closed. The writer is only interrupted while it waits for work, never
+    * part way through a batch.
+    */
+    public void close()
+    {
+        running = false;
+        synchronized(takeLock)
+        {
+            if(taking)
+                writer.interrupt();
+        }
+
+        try
+        {
+            writer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /*
+    * Writes batches until closed, then fails anything still queued,
+    * including when the loop stops because of an unexpected error.
+    */
+    private void writeLoop()
+    {
+        try
+        {
+            writeBatches();
+        }
+        finally
+        {
+            running = false;
+            List<PendingWrite> stranded = new ArrayList<>();
+            queue.drainTo(stranded);
+            fail(stranded, new RejectedExecutionException("Group commit writer stopped"));
+        }
+    }
+
+
+    /*
+    * Takes batches off the queue and writes them until closed.
+    */
+    private void writeBatches()
+    {
+        Connection connection = null;
+        List<PendingWrite> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        while(running || queue.isEmpty() == false)
+        {
+            try
+            {
+                //Waiting for the first message, then gathering more until the batch is full or the delay is up
+                PendingWrite first = takeFirst();
+                if(first == null)
+                    break;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+                while(batch.size() < MAX_BATCH_SIZE)
+                {
+                    queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if(batch.size() >= MAX_BATCH_SIZE || remaining <= 0)
+                        break;
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if(next == null)
+                        break;
+                    batch.add(next);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                //close() interrupts the wait for a first message; whatever is queued is still written
+                if(batch.isEmpty())
+                    continue;
+            }
+
+            //Borrowing the writer's connection, or a new one after a failed batch gave the last one back
+            try
+            {
+                if(connection == null)
+                    connection = ConnectionUtil.getConnection();
+            }
+            catch(RuntimeException e)
+            {
+                fail(batch, e);
+                batch.clear();
+                continue;
+            }
+
+            if(flush(connection, batch) == false)
+            {
+                ConnectionUtil.closeConnection(connection);
+                connection = null;
+            }
+            batch.clear();
+        }
+
+        ConnectionUtil.closeConnection(connection);
+    }
+
+
+    /*
+    * Waits for the first message of a batch while running, or takes one
+    * without waiting once closed. close() can only interrupt the wait, and
+    * an interrupt that arrives as the wait ends is cleared here, so it
+    * never lands part way through a batch.
+    *
+    * @return Returns the message, or null once closed and the queue is empty.
+    */
+    private PendingWrite takeFirst() throws InterruptedException
+    {
+        taking = true;
+        try
+        {
+            return running ? queue.take() : queue.poll();
+        }
+        finally
+        {
+            synchronized(takeLock)
+            {
+                taking = false;
+                Thread.interrupted();
+            }
+        }
+    }
+
+
+    /*
+    * Writes one batch in one transaction and completes each waiting request.
+    * If the batch insert fails the messages are retried one transaction at a
+    * time, so a single bad row only fails its own request.
+    *
+    * @return Returns false if the batch failed with an error, after which
+    *         the connection should not be trusted with the next one.
+    */
+    private boolean flush(Connection connection, List<PendingWrite> batch)
+    {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for(PendingWrite pending : batch)
+            messages.add(pending.message);
+
+        long start = System.nanoTime();
+        List<Message> created = new ArrayList<>(batch.size());
+        try
+        {
+            UnitOfWork.run(connection, () -> {
+                List<Message> inserted = messageDAO.createMessages(messages);
+                if(inserted != null)
+                    created.addAll(inserted);
+            });
+
+            //The batch was rolled back as a whole, so each message gets its own transaction
+            if(created.isEmpty())
+            {
+                for(Message message : messages)
+                    UnitOfWork.run(connection, () -> created.add(messageDAO.createMessage(message)));
+            }
+
+            if(SYNC)
+                sync(connection);
+        }
+        catch(Exception e)
+        {
+            fail(batch, e);
+            return false;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        batchCount.incrementAndGet();
+        rowCount.addAndGet(batch.size());
+        lastBatchSize.set(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        totalCommitNanos.addAndGet(elapsed);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+
+        for(int i = 0; i < batch.size(); i++)
+        {
+            Message message = created.get(i);
+            if(message == null)
+                failedRowCount.incrementAndGet();
+            batch.get(i).result.complete(message);
+        }
+        return true;
+    }
+
+
+    /*
+    * Fails every request waiting on a batch that could not be written.
+    */
+    private void fail(List<PendingWrite> batch, Exception e)
+    {
+        for(PendingWrite pending : batch)
+            pending.result.completeExceptionally(e);
+        failedRowCount.addAndGet(batch.size());
+    }
+
+
+    /*
+    * Forces committed changes to disk. H2 otherwise writes committed
+    * transactions to the file store in the background, so one sync per
+    * group commit is what makes a response mean the message is durable.
+    */
+    private void sync(Connection connection) throws SQLException
+    {
+        Statement statement = connection.createStatement();
+        try
+        {
+            statement.execute("CHECKPOINT SYNC");
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+
+    /*
+    * Returns the writer's counters for the metrics endpoint.
+    *
+    * @return Returns queue depth, batch sizes and commit latencies.
+    */
+    public Map<String, Object> getStats()
+    {
+        long batches = batchCount.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queue_depth", queue.size());
+        stats.put("queue_capacity", QUEUE_CAPACITY);
+        stats.put("batches", batches);
+        stats.put("rows", rowCount.get());
+        stats.put("failed_rows", failedRowCount.get());
+        stats.put("last_batch_size", lastBatchSize.get());
+        stats.put("max_batch_size", maxBatchSize.get());
+        stats.put("avg_batch_size", batches == 0 ? 0 : (double) rowCount.get() / batches);
+        stats.put("avg_commit_us", batches == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalCommitNanos.get() / batches));
+        stats.put("max_commit_us", TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get()));
+        return stats;
+    }
+
+
+    /*
+    * A queued message and the future its request thread waits on
+    */
+    private static class PendingWrite
+    {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingWrite(Message message)
+        {
+            this.message = message;
+        }
+    }
+}
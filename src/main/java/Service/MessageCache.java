@@ -0,0 +1,217 @@
+package Service;
+
+import Model.Message;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/*
+* Bounded read-through cache of messages by message ID, with
+* least-recently-used eviction and a time-to-live on every entry.
+* IDs that do not exist are cached too, with a shorter time-to-live,
+* so repeated lookups of a missing message do not reach the database.
+*
+* A load only fills the cache if no invalidation of its ID happened
+* while it was running, so a slow read can never put back a value that
+* a concurrent patch or delete has just invalidated. Invalidations of
+* other IDs do not hold a load back, apart from the rare ID that shares
+* its generation stripe.
+*/
+public class MessageCache
+{
+    /*
+    * Number of generation stripes that message IDs are hashed onto
+    */
+    private static final int STRIPES = 1024;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    /*
+    * Cached entries in access order, guarded by this
+    */
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    /*
+    * Bumped for a message ID's stripe by every invalidation of it,
+    * guarded by this
+    */
+    private final long[] generations = new long[STRIPES];
+
+    private long hits;
+    private long negativeHits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private long loads;
+    private long totalLoadNanos;
+    private long maxLoadNanos;
+
+
+    /*
+    * Constructor
+    *
+    * @param maxSize maximum number of cached IDs
+    * @param ttlMillis how long a found message stays cached
+    * @param negativeTtlMillis how long a missing ID stays cached
+    */
+    public MessageCache(int maxSize, long ttlMillis, long negativeTtlMillis)
+    {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest)
+            {
+                if(size() <= MessageCache.this.maxSize)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+
+    /*
+    * Creates a cache sized from the socialmedia.messageCache.* system properties.
+    *
+    * @return Returns a cache, or null if the configured size is 0.
+    */
+    public static MessageCache fromSystemProperties()
+    {
+        int maxSize = Integer.getInteger("socialmedia.messageCache.maxSize", 10000);
+        if(maxSize <= 0)
+            return null;
+
+        return new MessageCache(maxSize,
+                Long.getLong("socialmedia.messageCache.ttlMillis", 60000),
+                Long.getLong("socialmedia.messageCache.negativeTtlMillis", 1000));
+    }
+
+
+    /*
+    * Returns the message with the provided ID, loading it on a miss.
+    *
+    * @param messageId
+    * @param loader reads the message from the database, returning null if it does not exist
+    *
+    * @return Returns a copy of the message, or null if it does not exist.
+    */
+    public Message get(int messageId, IntFunction<Message> loader)
+    {
+        long loadGeneration;
+        synchronized(this)
+        {
+            Entry entry = entries.get(messageId);
+            if(entry != null && entry.expiresAt - System.nanoTime() > 0)
+            {
+                if(entry.message == null)
+                    negativeHits++;
+                else
+                    hits++;
+                return copy(entry.message);
+            }
+            if(entry != null)
+            {
+                expirations++;
+                entries.remove(messageId);
+            }
+            misses++;
+            loadGeneration = generations[stripe(messageId)];
+        }
+
+        long start = System.nanoTime();
+        Message message = loader.apply(messageId);
+        long elapsed = System.nanoTime() - start;
+
+        synchronized(this)
+        {
+            loads++;
+            totalLoadNanos += elapsed;
+            maxLoadNanos = Math.max(maxLoadNanos, elapsed);
+
+            if(loadGeneration == generations[stripe(messageId)])
+            {
+                long ttl = message == null ? negativeTtlNanos : ttlNanos;
+                entries.put(messageId, new Entry(copy(message), System.nanoTime() + ttl));
+            }
+        }
+        return message;
+    }
+
+
+    /*
+    * Removes the entry for the provided ID, found or missing.
+    *
+    * @param messageId
+    */
+    public synchronized void invalidate(int messageId)
+    {
+        generations[stripe(messageId)]++;
+        invalidations++;
+        entries.remove(messageId);
+    }
+
+
+    /*
+    * Returns the cache counters for the metrics endpoint.
+    *
+    * @return Returns size, hit ratio, evictions and load latency.
+    */
+    public synchronized Map<String, Object> getStats()
+    {
+        long lookups = hits + negativeHits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("max_size", maxSize);
+        stats.put("hits", hits);
+        stats.put("negative_hits", negativeHits);
+        stats.put("misses", misses);
+        stats.put("hit_ratio", lookups == 0 ? 0 : (double) (hits + negativeHits) / lookups);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        stats.put("invalidations", invalidations);
+        stats.put("loads", loads);
+        stats.put("avg_load_us", loads == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLoadNanos / loads));
+        stats.put("max_load_us", TimeUnit.NANOSECONDS.toMicros(maxLoadNanos));
+        return stats;
+    }
+
+
+    private static int stripe(int messageId)
+    {
+        return messageId & (STRIPES - 1);
+    }
+
+
+    /*
+    * Messages are mutable, so the cache never shares an instance with callers.
+    */
+    private static Message copy(Message message)
+    {
+        if(message == null)
+            return null;
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+    }
+
+
+    /*
+    * A cached message, or a cached miss when message is null
+    */
+    private static class Entry
+    {
+        final Message message;
+        final long expiresAt;
+
+        Entry(Message message, long expiresAt)
+        {
+            this.message = message;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
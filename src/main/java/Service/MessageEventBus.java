@@ -0,0 +1,199 @@
+package Service;
+
+import Model.Message;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+* Broadcast ring buffer of committed message changes, for the live
+* message stream. Publishers never block and never wait for readers:
+* each one claims the next sequence number and stores its event in the
+* slot that number maps to, overwriting whatever was there. Readers
+* keep their own position and read the slots behind the publishers.
+*
+* A reader that falls more than the buffer's capacity behind finds its
+* next event overwritten. It is told it has been overrun and decides for
+* itself whether to skip ahead or give up, so one slow reader can never
+* hold up publishers or other readers.
+*/
+public class MessageEventBus
+{
+    public static final String CREATED = "created";
+    public static final String PATCHED = "patched";
+    public static final String DELETED = "deleted";
+
+    /*
+    * A change to one message, numbered in the order it was published
+    */
+    public static class Event
+    {
+        public final long sequence;
+        public final String type;
+        public final Message message;
+
+        Event(long sequence, String type, Message message)
+        {
+            this.sequence = sequence;
+            this.type = type;
+            this.message = message;
+        }
+    }
+
+    /*
+    * Returned by read when the requested event has been overwritten
+    */
+    public static final Event OVERRUN = new Event(-1, null, null);
+
+    private final AtomicReferenceArray<Event> slots;
+    private final int mask;
+
+    /*
+    * Sequence number the next published event will get
+    */
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /*
+    * Thread waiting in awaitEvents, unparked by every publish
+    */
+    private volatile Thread waiter;
+
+
+    /*
+    * Constructor
+    *
+    * @param capacity the number of events kept, rounded up to a power of two
+    */
+    public MessageEventBus(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+
+    /*
+    * Creates the bus described by the socialmedia.stream and
+    * socialmedia.stream.capacity system properties.
+    *
+    * @return Returns the bus, or null if the live stream is turned off.
+    */
+    public static MessageEventBus fromSystemProperties()
+    {
+        if(Boolean.parseBoolean(System.getProperty("socialmedia.stream", "true")) == false)
+            return null;
+
+        return new MessageEventBus(Integer.getInteger("socialmedia.stream.capacity", 4096));
+    }
+
+
+    /*
+    * Publishes a change. Never blocks.
+    *
+    * @param type one of CREATED, PATCHED or DELETED
+    * @param message the message as it is after the change, or as it was before a delete
+    */
+    public void publish(String type, Message message)
+    {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) sequence & mask, new Event(sequence, type, message));
+
+        Thread thread = waiter;
+        if(thread != null)
+            LockSupport.unpark(thread);
+    }
+
+
+    /*
+    * Reads one event.
+    *
+    * @param sequence
+    *
+    * @return Returns the event, null if it has not been published yet,
+    *         or OVERRUN if it has already been overwritten.
+    */
+    public Event read(long sequence)
+    {
+        Event event = slots.get((int) sequence & mask);
+        if(event == null || event.sequence < sequence)
+            return null;
+        if(event.sequence > sequence)
+            return OVERRUN;
+        return event;
+    }
+
+
+    /*
+    * Returns the number of events the buffer holds.
+    *
+    * @return Returns the capacity, a power of two.
+    */
+    public int getCapacity()
+    {
+        return slots.length();
+    }
+
+
+    /*
+    * Returns the sequence number the next published event will get.
+    * Events before it may still be being stored by their publishers.
+    *
+    * @return Returns the next sequence number.
+    */
+    public long getNextSequence()
+    {
+        return nextSequence.get();
+    }
+
+
+    /*
+    * Returns the oldest sequence number that may still be read.
+    *
+    * @return Returns the oldest sequence number still in the buffer.
+    */
+    public long getOldestSequence()
+    {
+        return Math.max(0, nextSequence.get() - slots.length());
+    }
+
+
+    /*
+    * Waits until an event after the given sequence number is
+    * published or the timeout passes. Only one thread may wait.
+    *
+    * @param sequence the sequence number the caller will read next
+    * @param timeout
+    * @param unit
+    */
+    public void awaitEvents(long sequence, long timeout, TimeUnit unit)
+    {
+        waiter = Thread.currentThread();
+        try
+        {
+            if(nextSequence.get() <= sequence)
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+        }
+        finally
+        {
+            waiter = null;
+        }
+    }
+
+
+    /*
+    * Returns the bus's counters for the metrics endpoint.
+    *
+    * @return Returns a map of counter name to value.
+    */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacity", getCapacity());
+        stats.put("published", nextSequence.get());
+        return stats;
+    }
+}
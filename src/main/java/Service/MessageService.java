@@ -1,13 +1,89 @@
 package Service;
 
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessagePage;
+import DAO.MessageConsumer;
 import DAO.MessageDAO;
+import DAO.MessageStore;
+import DAO.ShardedMessageStore;
+import Util.KWayMerge;
+import Util.UnitOfWork;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 public class MessageService 
 {
-    private MessageDAO messageDAO;
+    /*
+    * Page size used when a paginated request gives no limit
+    */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /*
+    * Largest page a paginated request may ask for
+    */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /*
+    * Largest number of messages a batch creation request may contain
+    */
+    public static final int MAX_BATCH_SIZE = 10000;
+
+    /*
+    * Most accounts one merged timeline request may name
+    */
+    public static final int MAX_MERGED_ACCOUNTS = 100;
+
+    /*
+    * Smallest number of rows read from one account at a time
+    * when merging timelines
+    */
+    private static final int MIN_MERGE_CHUNK = 16;
+
+    private MessageStore messageStore;
+
+    /*
+    * Group commit writer for createMessage, or null when group commit is off
+    */
+    private GroupCommitWriter groupCommitWriter;
+
+    /*
+    * Read-through cache in front of getMessageById, or null when caching is off
+    */
+    private MessageCache messageCache;
+
+    /*
+    * Per-account timelines for the unpaginated account messages endpoint,
+    * or null when timeline caching is off
+    */
+    private TimelineCache timelineCache;
+
+    /*
+    * Inverted index of message text for search, or null when search is off
+    */
+    private SearchIndex searchIndex;
+
+    /*
+    * Home feeds that new messages are fanned out to, or null when
+    * this service has none
+    */
+    private FeedService feedService;
+
+    /*
+    * Committed creates, patches and deletes for the live message
+    * stream, or null when the stream is off
+    */
+    private MessageEventBus eventBus;
 
     
     /*
@@ -15,18 +91,90 @@ public class MessageService
     */
     public MessageService()
     {
-        messageDAO = new MessageDAO();
+        this(new MessageDAO());
+    }
+
+
+    /*
+    * Constructor with provided storage, which may be
+    * a MessageDAO or the in-memory engine's store
+    * 
+    * @param messageStore
+    */
+    public MessageService(MessageStore messageStore)
+    {
+        this(messageStore, null);
+    }
+
+
+    /*
+    * Constructor with provided storage and the feeds that
+    * created messages are fanned out to
+    * 
+    * @param messageStore
+    * @param feedService
+    */
+    public MessageService(MessageStore messageStore, FeedService feedService)
+    {
+        this.messageStore = messageStore;
+        this.feedService = feedService;
+
+        //Group commit and the read caches only pay off in front of the database
+        if(messageStore instanceof MessageDAO || messageStore instanceof ShardedMessageStore)
+        {
+            //Group commit batches on one connection, so it only runs over a single database
+            if(GroupCommitWriter.isEnabled() && messageStore instanceof MessageDAO)
+                this.groupCommitWriter = new GroupCommitWriter((MessageDAO) messageStore);
+            this.messageCache = MessageCache.fromSystemProperties();
+            this.timelineCache = TimelineCache.fromSystemProperties();
+        }
+
+        //Rebuilding the search index from every stored message
+        this.searchIndex = SearchIndex.fromSystemProperties(messageStore);
+        this.eventBus = MessageEventBus.fromSystemProperties();
+    }
+
+
+    /*
+    * Returns the bus that committed message changes are published to.
+    * 
+    * @return Returns the bus, or null if the live stream is off.
+    */
+    public MessageEventBus getEventBus()
+    {
+        return eventBus;
+    }
+
+
+    /*
+    * Stops any background work this service started.
+    */
+    public void close()
+    {
+        if(groupCommitWriter != null)
+            groupCommitWriter.close();
     }
 
 
     /*
-    * Constructor with provided DAO
+    * Returns runtime counters for the components of this service.
     * 
-    * @param accountDAO
+    * @return Returns a map of component name to its counters.
     */
-    public MessageService(MessageDAO messageDAO)
+    public Map<String, Object> getMetrics()
     {
-        this.messageDAO = messageDAO;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        if(groupCommitWriter != null)
+            metrics.put("group_commit", groupCommitWriter.getStats());
+        if(messageCache != null)
+            metrics.put("message_cache", messageCache.getStats());
+        if(timelineCache != null)
+            metrics.put("timeline_cache", timelineCache.getStats());
+        if(searchIndex != null)
+            metrics.put("search_index", searchIndex.getStats());
+        if(feedService != null)
+            metrics.put("feeds", feedService.getStats());
+        return metrics;
     }
 
 
@@ -40,10 +188,101 @@ public class MessageService
     public Message createMessage(Message message)
     {
         //Checking input for valid text and foreign key
-        if(messageDAO.validMessageParameters(message.getMessage_text(), message.getPosted_by()) == false)
+        if(messageStore.validMessageParameters(message.getMessage_text(), message.getPosted_by()) == false)
             return null;
 
-        return messageDAO.createMessage(message);
+        //Letting the writer thread commit it together with other concurrent posts
+        Message createdMessage;
+        if(groupCommitWriter != null)
+        {
+            createdMessage = groupCommitWriter.write(message);
+
+            //Already committed by the writer thread
+            if(createdMessage != null && timelineCache != null)
+                timelineCache.put(createdMessage);
+            if(createdMessage != null && searchIndex != null)
+                searchIndex.add(createdMessage);
+            if(createdMessage != null && feedService != null)
+                feedService.fanOutCommitted(List.of(createdMessage));
+            if(createdMessage != null && eventBus != null)
+                eventBus.publish(MessageEventBus.CREATED, createdMessage);
+        }
+        else
+        {
+            createdMessage = messageStore.createMessage(message);
+            if(createdMessage != null)
+            {
+                updateTimeline(createdMessage);
+                indexCreatedMessage(createdMessage);
+                publishAfterCommit(MessageEventBus.CREATED, createdMessage);
+                if(feedService != null)
+                    feedService.fanOut(List.of(createdMessage));
+            }
+        }
+
+        //Clearing any cached miss for the new ID
+        if(createdMessage != null)
+            invalidateCachedMessage(createdMessage.getMessage_id());
+        return createdMessage;
+    }
+
+
+    /*
+    * Creates many messages at once. Text is checked per message, every
+    * posted_by is checked with a single account lookup, and the valid
+    * messages are inserted together as one JDBC batch.
+    * 
+    * @param messages
+    *
+    * @return Returns one result per provided message, in the same order,
+    *         holding either the created message or the reason it was rejected.
+    */
+    public List<MessageBatchResult> createMessages(List<Message> messages)
+    {
+        //Looking up every referenced account at once
+        Set<Integer> accountIds = new HashSet<>();
+        for(Message message : messages)
+            accountIds.add(message.getPosted_by());
+        Set<Integer> existingAccountIds = messageStore.getExistingAccountIds(accountIds);
+
+        //Checking each message and setting the valid ones aside for the insert
+        MessageBatchResult[] results = new MessageBatchResult[messages.size()];
+        List<Message> validMessages = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for(int i = 0; i < messages.size(); i++)
+        {
+            Message message = messages.get(i);
+            if(messageStore.validMessageText(message.getMessage_text()) == false)
+                results[i] = MessageBatchResult.failed(i, "message_text must not be blank or over 255 characters");
+            else if(existingAccountIds.contains(message.getPosted_by()) == false)
+                results[i] = MessageBatchResult.failed(i, "posted_by does not refer to an existing account");
+            else
+            {
+                validMessages.add(message);
+                validIndexes.add(i);
+            }
+        }
+
+        //Inserting the valid messages and matching them back to their positions
+        List<Message> createdMessages = messageStore.createMessages(validMessages);
+        for(int j = 0; j < validIndexes.size(); j++)
+        {
+            int i = validIndexes.get(j);
+            if(createdMessages == null)
+                results[i] = MessageBatchResult.failed(i, "message could not be saved");
+            else
+            {
+                results[i] = MessageBatchResult.created(i, createdMessages.get(j));
+                invalidateCachedMessage(createdMessages.get(j).getMessage_id());
+                updateTimeline(createdMessages.get(j));
+                indexCreatedMessage(createdMessages.get(j));
+                publishAfterCommit(MessageEventBus.CREATED, createdMessages.get(j));
+            }
+        }
+        if(createdMessages != null && feedService != null)
+            feedService.fanOut(createdMessages);
+
+        return List.of(results);
     }
 
 
@@ -54,7 +293,21 @@ public class MessageService
     */
     public List<Message> getAllMessages()
     {
-        return messageDAO.getAllMessages();
+        return messageStore.getAllMessages();
+    }
+
+
+    /*
+    * Streams all existing messages to a consumer without
+    * collecting them into a list first.
+    * 
+    * @param consumer receives each message in message ID order
+    *
+    * @throws IOException if the read or the consumer fails.
+    */
+    public void forEachMessage(MessageConsumer consumer) throws IOException
+    {
+        messageStore.forEachMessage(consumer);
     }
 
 
@@ -67,7 +320,10 @@ public class MessageService
     */
     public Message getMessageById(int messageId)
     {
-        return messageDAO.getMessageById(messageId);
+        if(messageCache == null)
+            return messageStore.getMessageById(messageId);
+
+        return messageCache.get(messageId, messageStore::getMessageById);
     }
 
 
@@ -81,7 +337,19 @@ public class MessageService
     */
     public Message deleteMessageById(int messageId)
     {
-        return messageDAO.deleteMessageById(messageId);
+        Message deletedMessage = messageStore.deleteMessageById(messageId);
+        invalidateCachedMessage(messageId);
+        if(deletedMessage != null && timelineCache != null)
+        {
+            timelineCache.changing(deletedMessage.getPosted_by());
+            UnitOfWork.afterCommit(() -> timelineCache.remove(deletedMessage));
+            UnitOfWork.afterCompletion(() -> timelineCache.changed(deletedMessage.getPosted_by()));
+        }
+        if(deletedMessage != null && searchIndex != null)
+            UnitOfWork.afterCommit(() -> searchIndex.remove(messageId));
+        if(deletedMessage != null)
+            publishAfterCommit(MessageEventBus.DELETED, deletedMessage);
+        return deletedMessage;
     }
 
 
@@ -98,7 +366,86 @@ public class MessageService
     */
     public Message patchMessageById(int messageId, String updateText)
     {
-        return messageDAO.patchMessageById(messageId, updateText);
+        Message patchedMessage = messageStore.patchMessageById(messageId, updateText);
+        if(patchedMessage != null)
+        {
+            invalidateCachedMessage(messageId);
+            updateTimeline(patchedMessage);
+            if(searchIndex != null)
+                UnitOfWork.afterCommit(() -> searchIndex.update(patchedMessage));
+            publishAfterCommit(MessageEventBus.PATCHED, patchedMessage);
+        }
+        return patchedMessage;
+    }
+
+
+    /*
+    * Puts a created or patched message into its account's cached
+    * timeline once the current unit of work has committed. Loads
+    * that overlap the commit are kept out of the cache, and the
+    * timeline is dropped instead if another change to the account
+    * is in flight.
+    * 
+    * @param message
+    */
+    private void updateTimeline(Message message)
+    {
+        if(timelineCache == null)
+            return;
+
+        timelineCache.changing(message.getPosted_by());
+        UnitOfWork.afterCommit(() -> timelineCache.put(message));
+        UnitOfWork.afterCompletion(() -> timelineCache.changed(message.getPosted_by()));
+    }
+
+
+    /*
+    * Adds a created message to the search index once the current
+    * unit of work has committed.
+    * 
+    * @param message
+    */
+    private void indexCreatedMessage(Message message)
+    {
+        if(searchIndex == null)
+            return;
+
+        UnitOfWork.afterCommit(() -> searchIndex.add(message));
+    }
+
+
+    /*
+    * Publishes a change to the live message stream once the current
+    * unit of work has committed, so subscribers never see a change
+    * that is rolled back.
+    * 
+    * @param type
+    * @param message
+    */
+    private void publishAfterCommit(String type, Message message)
+    {
+        if(eventBus == null)
+            return;
+
+        UnitOfWork.afterCommit(() -> eventBus.publish(type, message));
+    }
+
+
+    /*
+    * Drops a message from the cache now, and again once the current
+    * unit of work has finished. The second invalidation catches a
+    * concurrent read that loaded the old row before this transaction
+    * committed.
+    * 
+    * @param messageId
+    */
+    private void invalidateCachedMessage(int messageId)
+    {
+        if(messageCache == null)
+            return;
+
+        messageCache.invalidate(messageId);
+        UnitOfWork.afterCompletion(() -> messageCache.invalidate(messageId));
     }
 
 
@@ -111,6 +458,269 @@ public class MessageService
     */
     public List<Message> getAllAccountMessages(int accountId)
     {
-        return messageDAO.getAllAccountMessages(accountId);
+        return messageStore.getAllAccountMessages(accountId);
+    }
+
+
+    /*
+    * Returns one page of all messages, ordered by message ID.
+    * 
+    * @param cursor next_cursor from the previous page, or null for the first page
+    * @param limit maximum number of messages on the page
+    *
+    * @return Returns a page of messages and the cursor for the page after it. 
+    */
+    public MessagePage getMessagesPage(Integer cursor, int limit)
+    {
+        //Asking for one extra row tells us whether another page follows
+        List<Message> messages = messageStore.getMessagesPage(cursor == null ? 0 : cursor, limit + 1);
+        return toPage(messages, limit);
+    }
+
+
+    /*
+    * Returns one page of the messages associated with an account ID,
+    * ordered by message ID.
+    * 
+    * @param accountId
+    * @param cursor next_cursor from the previous page, or null for the first page
+    * @param limit maximum number of messages on the page
+    *
+    * @return Returns a page of messages and the cursor for the page after it. 
+    */
+    public MessagePage getAccountMessagesPage(int accountId, Integer cursor, int limit)
+    {
+        //Asking for one extra row tells us whether another page follows
+        List<Message> messages = messageStore.getAccountMessagesPage(accountId, cursor == null ? 0 : cursor, limit + 1);
+        return toPage(messages, limit);
+    }
+
+
+    /*
+    * Returns one page of the messages whose text contains every word
+    * of a query, newest first.
+    * 
+    * @param query words to search for, matched case-insensitively
+    * @param cursor next_cursor from the previous page, or null for the first page
+    * @param limit maximum number of messages on the page
+    *
+    * @return Returns a page of messages and the cursor for the page after it,
+    *         or null if the query has no words or search is off.
+    */
+    public MessagePage searchMessages(String query, Integer cursor, int limit)
+    {
+        List<String> terms = SearchIndex.tokenize(query);
+        if(searchIndex == null || terms.isEmpty() || terms.size() > SearchIndex.MAX_QUERY_TERMS)
+            return null;
+
+        //Asking for one extra match tells us whether another page follows
+        int[] messageIds = searchIndex.search(terms, cursor == null ? Integer.MAX_VALUE : cursor, limit + 1);
+        int pageSize = Math.min(messageIds.length, limit);
+        List<Message> messages = new ArrayList<>(pageSize);
+        for(int i = 0; i < pageSize; i++)
+        {
+            //Skipping matches deleted or patched since the index was read
+            Message message = getMessageById(messageIds[i]);
+            if(message != null && SearchIndex.tokenize(message.getMessage_text()).containsAll(terms))
+                messages.add(message);
+        }
+
+        //The cursor is the last ID looked at, so skipped matches do not end the results early
+        String nextCursor = messageIds.length > limit ? Integer.toString(messageIds[limit - 1]) : null;
+        return new MessagePage(messages, nextCursor);
+    }
+
+
+    /*
+    * Returns one page of the messages posted by any of several
+    * accounts, ordered by message ID. Each account is read in
+    * message ID order a chunk at a time and the accounts are merged
+    * with a k-way merge, so no account is read further than the page
+    * needs.
+    * 
+    * @param accountIds
+    * @param cursor next_cursor from the previous page, or null for the first page
+    * @param limit maximum number of messages on the page
+    *
+    * @return Returns a page of messages and the cursor for the page after it.
+    */
+    public MessagePage getMergedMessagesPage(Collection<Integer> accountIds, Integer cursor, int limit)
+    {
+        //Sharing the page between the accounts, but reading at least a few rows from each
+        int wanted = limit + 1;
+        int chunk = Math.min(wanted, Math.max(MIN_MERGE_CHUNK, 2 * wanted / Math.max(1, accountIds.size())));
+        List<Iterator<Message>> sources = new ArrayList<>(accountIds.size());
+        for(int accountId : accountIds)
+            sources.add(new AccountMessageIterator(accountId, cursor == null ? 0 : cursor, chunk, wanted));
+
+        //Asking for one extra row tells us whether another page follows
+        List<Message> messages = KWayMerge.merge(sources, Comparator.comparingInt(Message::getMessage_id), wanted);
+        return toPage(messages, limit);
+    }
+
+
+    /*
+    * Reads one account's messages in message ID order, fetching
+    * keyset pages as it goes. Each page is twice the size of the
+    * one before, up to the most the merge can use.
+    */
+    private class AccountMessageIterator implements Iterator<Message>
+    {
+        private final int accountId;
+        private final int maxChunk;
+        private int chunk;
+        private int afterMessageId;
+        private List<Message> buffer = new ArrayList<>();
+        private int position;
+        private boolean exhausted;
+
+        private AccountMessageIterator(int accountId, int afterMessageId, int chunk, int maxChunk)
+        {
+            this.accountId = accountId;
+            this.afterMessageId = afterMessageId;
+            this.chunk = chunk;
+            this.maxChunk = maxChunk;
+        }
+
+        public boolean hasNext()
+        {
+            if(position < buffer.size())
+                return true;
+            if(exhausted)
+                return false;
+
+            buffer = messageStore.getAccountMessagesPage(accountId, afterMessageId, chunk);
+            position = 0;
+            exhausted = buffer.size() < chunk;
+            if(buffer.isEmpty())
+                return false;
+
+            afterMessageId = buffer.get(buffer.size() - 1).getMessage_id();
+            chunk = Math.min(chunk * 2, maxChunk);
+            return true;
+        }
+
+        public Message next()
+        {
+            if(hasNext() == false)
+                throw new NoSuchElementException();
+            return buffer.get(position++);
+        }
+    }
+
+
+    /*
+    * Returns one page of an account's home feed: messages posted by
+    * the accounts it follows, newest first.
+    * 
+    * @param accountId
+    * @param cursor next_cursor from the previous page, or null for the first page
+    * @param limit maximum number of messages on the page
+    *
+    * @return Returns a page of messages and the cursor for the page after it,
+    *         or null if this service has no feeds.
+    */
+    public MessagePage getFeedPage(int accountId, Integer cursor, int limit)
+    {
+        if(feedService == null)
+            return null;
+
+        return feedService.getFeedPage(accountId, cursor == null ? Integer.MAX_VALUE : cursor, limit, this::getMessageById);
+    }
+
+
+    /*
+    * Trims a list fetched with one extra row down to a page.
+    * 
+    * @param messages up to limit + 1 messages in cursor order
+    * @param limit the page size
+    *
+    * @return Returns the page, with a next_cursor only if the extra row was found.
+    */
+    private MessagePage toPage(List<Message> messages, int limit)
+    {
+        if(messages.size() <= limit)
+            return new MessagePage(messages, null);
+
+        List<Message> page = messages.subList(0, limit);
+        return new MessagePage(page, Integer.toString(page.get(limit - 1).getMessage_id()));
+    }
+
+
+    /*
+    * Streams the messages posted within a time range to a consumer.
+    * 
+    * @param from earliest time_posted_epoch, inclusive
+    * @param to latest time_posted_epoch, inclusive
+    * @param consumer receives each message in time_posted_epoch
+    *                 order, ties broken by message ID
+    *
+    * @throws IOException if the read or the consumer fails.
+    */
+    public void forEachMessageInRange(long from, long to, MessageConsumer consumer) throws IOException
+    {
+        messageStore.forEachMessageInRange(from, to, consumer);
+    }
+
+
+    /*
+    * Streams the messages an account posted within a time range to
+    * a consumer. A warm account is served from its cached timeline;
+    * a cold one is read from the store's time index without being
+    * cached, as a range is only part of the timeline.
+    * 
+    * @param accountId
+    * @param from earliest time_posted_epoch, inclusive
+    * @param to latest time_posted_epoch, inclusive
+    * @param consumer receives each message in time_posted_epoch
+    *                 order, ties broken by message ID
+    *
+    * @throws IOException if the read or the consumer fails.
+    */
+    public void forEachAccountMessageInRange(int accountId, long from, long to, MessageConsumer consumer) throws IOException
+    {
+        TimelineCache.Timeline timeline = timelineCache == null ? null : timelineCache.get(accountId);
+        if(timeline != null)
+            timeline.forEachInRange(from, to, consumer);
+        else
+            messageStore.forEachAccountMessageInRange(accountId, from, to, consumer);
+    }
+
+
+    /*
+    * Streams all messages associated with an account ID to a
+    * consumer. Warm accounts are served from the timeline cache;
+    * cold accounts are streamed from the database and cached
+    * on the way through.
+    * 
+    * @param accountId
+    * @param consumer receives each message in time_posted_epoch
+    *                 order, ties broken by message ID
+    *
+    * @throws IOException if the read or the consumer fails.
+    */
+    public void forEachAccountMessage(int accountId, MessageConsumer consumer) throws IOException
+    {
+        if(timelineCache == null)
+        {
+            messageStore.forEachAccountMessage(accountId, consumer);
+            return;
+        }
+
+        //Serving a warm account from memory
+        TimelineCache.Timeline timeline = timelineCache.get(accountId);
+        if(timeline != null)
+        {
+            timeline.forEach(consumer);
+            return;
+        }
+
+        //Keeping a copy of what is streamed, and caching it only if the whole timeline was read
+        TimelineCache.Load load = timelineCache.beginLoad(accountId);
+        messageStore.forEachAccountMessage(accountId, message -> {
+            load.add(message);
+            consumer.accept(message);
+        });
+        timelineCache.install(load);
     }
 }
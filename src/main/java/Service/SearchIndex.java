@@ -0,0 +1,396 @@
+package Service;
+
+import Model.Message;
+import DAO.MessageStore;
+import Util.IntList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+* Inverted index over message_text for full-text search. Text is split
+* into lower-cased runs of letters and digits; each distinct token has a
+* posting list of the message IDs containing it, in ascending order. A
+* forward map from message ID to its tokens lets patches and deletes
+* find what to change.
+*
+* Deletes and patches do not remove old postings straight away. Every
+* candidate is checked against the forward map before it is returned,
+* so a stale posting is never a result, and the posting lists are
+* rebuilt from the forward map once stale postings make up half of them.
+*
+* Queries are AND queries ranked by recency: newest message ID first.
+*/
+public class SearchIndex
+{
+    /*
+    * Longest token kept; longer runs are cut to this length
+    */
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    /*
+    * Most distinct terms a query may contain
+    */
+    public static final int MAX_QUERY_TERMS = 16;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /*
+    * Token dictionary and one ascending posting list per token ID,
+    * guarded by lock
+    */
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final List<IntList> postings = new ArrayList<>();
+
+    /*
+    * Sorted token IDs of every indexed message, guarded by lock
+    */
+    private final Map<Integer, int[]> tokensByMessage = new HashMap<>();
+
+    private long livePostings;
+    private long stalePostings;
+    private long rebuilds;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong totalQueryNanos = new AtomicLong();
+    private final AtomicLong maxQueryNanos = new AtomicLong();
+
+
+    /*
+    * Builds an index of every message in a store, unless search is
+    * turned off with socialmedia.search=false.
+    *
+    * @param messageStore
+    *
+    * @return Returns the loaded index, or null when search is off.
+    */
+    public static SearchIndex fromSystemProperties(MessageStore messageStore)
+    {
+        if(Boolean.parseBoolean(System.getProperty("socialmedia.search", "true")) == false)
+            return null;
+
+        return load(messageStore);
+    }
+
+
+    /*
+    * Builds an index of every message in a store.
+    *
+    * @param messageStore
+    *
+    * @return Returns the loaded index.
+    *
+    * @throws IllegalStateException if the store could not be read.
+    */
+    public static SearchIndex load(MessageStore messageStore)
+    {
+        SearchIndex index = new SearchIndex();
+        try
+        {
+            messageStore.forEachMessage(index::add);
+        }
+        catch(IOException e)
+        {
+            //Refusing to serve searches from an index missing the messages after the failure
+            throw new IllegalStateException("Could not load the search index: " + e.getMessage(), e);
+        }
+        return index;
+    }
+
+
+    /*
+    * Splits text into search tokens.
+    *
+    * @param text
+    *
+    * @return Returns the distinct lower-cased tokens, in order of first appearance.
+    */
+    public static List<String> tokenize(String text)
+    {
+        List<String> tokens = new ArrayList<>();
+        if(text == null)
+            return tokens;
+
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for(int i = 0; i <= lower.length(); i++)
+        {
+            boolean tokenChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if(tokenChar && start < 0)
+                start = i;
+            else if(tokenChar == false && start >= 0)
+            {
+                String token = lower.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH));
+                if(tokens.contains(token) == false)
+                    tokens.add(token);
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+
+    /*
+    * Indexes a new message.
+    *
+    * @param message
+    */
+    public void add(Message message)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            index(message);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /*
+    * Re-indexes a patched message under its new text.
+    *
+    * @param message
+    */
+    public void update(Message message)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            unindex(message.getMessage_id());
+            index(message);
+            rebuildIfStale();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /*
+    * Drops a deleted message from the index.
+    *
+    * @param messageId
+    */
+    public void remove(int messageId)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            unindex(messageId);
+            rebuildIfStale();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /*
+    * Finds the messages containing every query term.
+    *
+    * @param terms tokens from tokenize
+    * @param beforeMessageId only IDs below this are returned; Integer.MAX_VALUE for the first page
+    * @param limit maximum number of IDs to return
+    *
+    * @return Returns matching message IDs, newest first.
+    */
+    public int[] search(List<String> terms, int beforeMessageId, int limit)
+    {
+        long start = System.nanoTime();
+        IntList matches = new IntList(Math.min(limit, 64));
+
+        lock.readLock().lock();
+        try
+        {
+            //A term nobody used means nothing can match
+            int[] queryTokens = new int[terms.size()];
+            IntList[] lists = new IntList[terms.size()];
+            for(int i = 0; i < terms.size(); i++)
+            {
+                Integer tokenId = tokenIds.get(terms.get(i));
+                if(tokenId == null)
+                    return new int[0];
+                queryTokens[i] = tokenId;
+                lists[i] = postings.get(tokenId);
+            }
+            if(lists.length == 0)
+                return new int[0];
+
+            //Walking the shortest list newest first and probing the others
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+            IntList shortest = lists[0];
+            int position = shortest.binarySearch(beforeMessageId);
+            position = position >= 0 ? position - 1 : -position - 2;
+            int previous = Integer.MAX_VALUE;
+            for(; position >= 0 && matches.size() < limit; position--)
+            {
+                int messageId = shortest.get(position);
+                if(messageId == previous)
+                    continue;
+                previous = messageId;
+
+                boolean inAll = true;
+                for(int i = 1; i < lists.length && inAll; i++)
+                    inAll = lists[i].binarySearch(messageId) >= 0;
+
+                //Stale postings of deleted or patched messages fail this check
+                if(inAll && containsAll(tokensByMessage.get(messageId), queryTokens))
+                    matches.add(messageId);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+            long elapsed = System.nanoTime() - start;
+            queries.incrementAndGet();
+            totalQueryNanos.addAndGet(elapsed);
+            maxQueryNanos.accumulateAndGet(elapsed, Math::max);
+        }
+
+        return matches.toArray();
+    }
+
+
+    /*
+    * Returns the index counters for the metrics endpoint.
+    *
+    * @return Returns index size and query latency.
+    */
+    public Map<String, Object> getStats()
+    {
+        long queryCount = queries.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try
+        {
+            stats.put("messages", tokensByMessage.size());
+            stats.put("tokens", tokenIds.size());
+            stats.put("postings", livePostings);
+            stats.put("stale_postings", stalePostings);
+            stats.put("rebuilds", rebuilds);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        stats.put("queries", queryCount);
+        stats.put("avg_query_us", queryCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueryNanos.get() / queryCount));
+        stats.put("max_query_us", TimeUnit.NANOSECONDS.toMicros(maxQueryNanos.get()));
+        return stats;
+    }
+
+
+    /*
+    * Adds a message's tokens to the posting lists and forward map.
+    * Must be called holding the write lock.
+    */
+    private void index(Message message)
+    {
+        int messageId = message.getMessage_id();
+        List<String> tokens = tokenize(message.getMessage_text());
+        int[] messageTokens = new int[tokens.size()];
+        for(int i = 0; i < tokens.size(); i++)
+        {
+            Integer tokenId = tokenIds.get(tokens.get(i));
+            if(tokenId == null)
+            {
+                tokenId = postings.size();
+                tokenIds.put(tokens.get(i), tokenId);
+                postings.add(new IntList(4));
+            }
+            messageTokens[i] = tokenId;
+
+            //New messages append; a patched older message is inserted in place
+            IntList list = postings.get(tokenId);
+            if(list.size() == 0 || list.get(list.size() - 1) < messageId)
+                list.add(messageId);
+            else
+            {
+                int position = list.binarySearch(messageId);
+                if(position >= 0)
+                {
+                    //Reviving a stale posting left by an earlier version of this message
+                    stalePostings--;
+                }
+                else
+                    list.insert(-position - 1, messageId);
+            }
+            livePostings++;
+        }
+
+        Arrays.sort(messageTokens);
+        tokensByMessage.put(messageId, messageTokens);
+    }
+
+
+    /*
+    * Forgets a message's tokens, leaving its postings behind as stale.
+    * Must be called holding the write lock.
+    */
+    private void unindex(int messageId)
+    {
+        int[] messageTokens = tokensByMessage.remove(messageId);
+        if(messageTokens == null)
+            return;
+
+        livePostings -= messageTokens.length;
+        stalePostings += messageTokens.length;
+    }
+
+
+    /*
+    * Rebuilds every posting list from the forward map once stale
+    * postings are half of all postings. Must be called holding the
+    * write lock.
+    */
+    private void rebuildIfStale()
+    {
+        if(stalePostings < 1024 || stalePostings < livePostings)
+            return;
+
+        for(IntList list : postings)
+            list.clear();
+
+        //Visiting messages in ID order keeps every list ascending
+        Integer[] messageIds = tokensByMessage.keySet().toArray(new Integer[0]);
+        Arrays.sort(messageIds);
+        for(int messageId : messageIds)
+        {
+            for(int tokenId : tokensByMessage.get(messageId))
+                postings.get(tokenId).add(messageId);
+        }
+
+        stalePostings = 0;
+        rebuilds++;
+    }
+
+
+    /*
+    * Checks that a message's sorted tokens include every query token.
+    */
+    private static boolean containsAll(int[] messageTokens, int[] queryTokens)
+    {
+        if(messageTokens == null)
+            return false;
+        for(int tokenId : queryTokens)
+        {
+            if(Arrays.binarySearch(messageTokens, tokenId) < 0)
+                return false;
+        }
+        return true;
+    }
+}
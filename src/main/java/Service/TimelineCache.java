@@ -0,0 +1,500 @@
+package Service;
+
+import Model.Message;
+import DAO.MessageConsumer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+* Per-account timelines kept in memory, each holding every message the
+* account has posted sorted by time_posted_epoch, ties broken by
+* message_id. A warm account is served without touching the database.
+*
+* Creates, patches and deletes update a cached timeline in place once
+* their transaction commits, instead of dropping it. Timelines share
+* one memory budget; when it is exceeded the least recently read
+* accounts are evicted, and a single account too large for its share
+* of the budget is never cached and is always streamed from the database.
+*
+* Timelines are immutable once published, so readers iterate them
+* outside the lock while writers swap in an updated copy.
+*/
+public class TimelineCache
+{
+    /*
+    * Number of generation stripes that account IDs are hashed onto
+    */
+    private static final int STRIPES = 1024;
+
+    /*
+    * Rough per-message and per-timeline overheads, in bytes, used
+    * to charge timelines against the budget
+    */
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+    private static final int TIMELINE_OVERHEAD_BYTES = 128;
+
+    private final long maxBytes;
+    private final long maxTimelineBytes;
+
+    /*
+    * Cached timelines in access order, guarded by this
+    */
+    private final LinkedHashMap<Integer, Timeline> timelines = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /*
+    * Bumped for an account whenever one of its messages changes, so a
+    * load that overlapped the change is not cached. Guarded by this.
+    */
+    private final long[] generations = new long[STRIPES];
+
+    /*
+    * Changes begun but not yet finished per stripe, and whether a change
+    * began while another was still in flight. Commit callbacks run on
+    * each request's own thread in no particular order, so while changes
+    * overlap a timeline is dropped instead of patched. Guarded by this.
+    */
+    private final int[] inFlight = new int[STRIPES];
+    private final boolean[] contended = new boolean[STRIPES];
+
+    private long hits;
+    private long misses;
+    private long installs;
+    private long staleLoads;
+    private long oversizedLoads;
+    private long evictions;
+    private long updates;
+    private long contendedDrops;
+
+
+    /*
+    * Constructor
+    *
+    * @param maxBytes memory budget shared by every cached timeline
+    */
+    public TimelineCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        this.maxTimelineBytes = maxBytes / 8;
+    }
+
+
+    /*
+    * Creates a cache sized from the socialmedia.timelineCache.maxBytes system property.
+    *
+    * @return Returns a cache, or null if the configured budget is 0.
+    */
+    public static TimelineCache fromSystemProperties()
+    {
+        long maxBytes = Long.getLong("socialmedia.timelineCache.maxBytes", 64L * 1024 * 1024);
+        if(maxBytes <= 0)
+            return null;
+
+        return new TimelineCache(maxBytes);
+    }
+
+
+    /*
+    * Returns the cached timeline for an account.
+    *
+    * @param accountId
+    *
+    * @return Returns the timeline, or null if the account is not cached.
+    */
+    public synchronized Timeline get(int accountId)
+    {
+        Timeline timeline = timelines.get(accountId);
+        if(timeline == null)
+            misses++;
+        else
+            hits++;
+        return timeline;
+    }
+
+
+    /*
+    * Starts collecting a timeline read from the database.
+    *
+    * @param accountId
+    *
+    * @return Returns a load to add each message to, in timeline order.
+    */
+    public synchronized Load beginLoad(int accountId)
+    {
+        return new Load(accountId, generations[stripe(accountId)]);
+    }
+
+
+    /*
+    * Caches a finished load, unless one of the account's messages changed
+    * while it was being read or it is too large for the budget.
+    *
+    * @param load
+    */
+    public synchronized void install(Load load)
+    {
+        if(load.messages == null)
+        {
+            oversizedLoads++;
+            return;
+        }
+        if(load.generation != generations[stripe(load.accountId)])
+        {
+            staleLoads++;
+            return;
+        }
+
+        Timeline timeline = new Timeline(load.accountId, load.messages);
+        replace(load.accountId, timeline);
+        installs++;
+    }
+
+
+    /*
+    * Marks an account's timeline as changing, before the change is
+    * committed, so that loads running across the commit are not cached.
+    * Every call must be followed by changed() once the change has
+    * committed or rolled back.
+    *
+    * @param accountId
+    */
+    public synchronized void changing(int accountId)
+    {
+        int stripe = stripe(accountId);
+        generations[stripe]++;
+        if(inFlight[stripe]++ > 0)
+            contended[stripe] = true;
+    }
+
+
+    /*
+    * Marks a change begun with changing() as finished, after its commit
+    * callback, if any, has run.
+    *
+    * @param accountId
+    */
+    public synchronized void changed(int accountId)
+    {
+        int stripe = stripe(accountId);
+        if(--inFlight[stripe] == 0)
+            contended[stripe] = false;
+    }
+
+
+    /*
+    * Adds a committed message to its account's timeline, replacing the
+    * entry with the same ID if there is one.
+    *
+    * @param message a created or patched message
+    */
+    public synchronized void put(Message message)
+    {
+        int accountId = message.getPosted_by();
+        Timeline timeline = committed(accountId);
+        if(timeline == null)
+            return;
+        replace(accountId, timeline.with(message));
+        updates++;
+    }
+
+
+    /*
+    * Removes a committed delete from its account's timeline.
+    *
+    * @param message the deleted message
+    */
+    public synchronized void remove(Message message)
+    {
+        int accountId = message.getPosted_by();
+        Timeline timeline = committed(accountId);
+        if(timeline == null)
+            return;
+        replace(accountId, timeline.without(message));
+        updates++;
+    }
+
+
+    /*
+    * Returns the timeline a committed change should be applied to, or
+    * null if the account is not cached. While other changes to the
+    * account are in flight their callbacks may run in either order, so
+    * the timeline is dropped instead and the next read loads it again.
+    * Must be called holding the lock.
+    */
+    private Timeline committed(int accountId)
+    {
+        int stripe = stripe(accountId);
+        generations[stripe]++;
+
+        Timeline timeline = timelines.get(accountId);
+        if(timeline == null || contended[stripe] == false)
+            return timeline;
+
+        timelines.remove(accountId);
+        bytes -= timeline.bytes;
+        contendedDrops++;
+        return null;
+    }
+
+
+    /*
+    * Returns the cache counters for the metrics endpoint.
+    *
+    * @return Returns the number of accounts, memory used, hit ratio and update counts.
+    */
+    public synchronized Map<String, Object> getStats()
+    {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accounts", timelines.size());
+        stats.put("bytes", bytes);
+        stats.put("max_bytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hit_ratio", lookups == 0 ? 0 : (double) hits / lookups);
+        stats.put("installs", installs);
+        stats.put("stale_loads", staleLoads);
+        stats.put("oversized_loads", oversizedLoads);
+        stats.put("evictions", evictions);
+        stats.put("incremental_updates", updates);
+        stats.put("contended_drops", contendedDrops);
+        return stats;
+    }
+
+
+    /*
+    * Publishes a timeline for an account, drops it if it outgrew its share
+    * of the budget, and evicts the coldest accounts until the budget holds.
+    * Must be called holding the lock.
+    */
+    private void replace(int accountId, Timeline timeline)
+    {
+        Timeline previous = timelines.remove(accountId);
+        if(previous != null)
+            bytes -= previous.bytes;
+
+        if(timeline.bytes > maxTimelineBytes)
+            return;
+
+        timelines.put(accountId, timeline);
+        bytes += timeline.bytes;
+
+        Iterator<Timeline> coldest = timelines.values().iterator();
+        while(bytes > maxBytes && coldest.hasNext())
+        {
+            bytes -= coldest.next().bytes;
+            coldest.remove();
+            evictions++;
+        }
+    }
+
+
+    private static int stripe(int accountId)
+    {
+        return accountId & (STRIPES - 1);
+    }
+
+
+    private static long sizeOf(String text)
+    {
+        return MESSAGE_OVERHEAD_BYTES + (text == null ? 0 : 2L * text.length());
+    }
+
+
+    /*
+    * Messages collected from the database for one account. Stops keeping
+    * them once they would not fit in one timeline's share of the budget.
+    */
+    public class Load
+    {
+        private final int accountId;
+        private final long generation;
+        private List<Message> messages = new ArrayList<>();
+        private long bytes = TIMELINE_OVERHEAD_BYTES;
+
+        private Load(int accountId, long generation)
+        {
+            this.accountId = accountId;
+            this.generation = generation;
+        }
+
+        /*
+        * Adds the next message of the timeline.
+        *
+        * @param message
+        */
+        public void add(Message message)
+        {
+            if(messages == null)
+                return;
+
+            bytes += sizeOf(message.getMessage_text());
+            if(bytes > maxTimelineBytes)
+                messages = null;
+            else
+                messages.add(message);
+        }
+    }
+
+
+    /*
+    * One account's messages in timeline order, stored as parallel
+    * arrays. Never modified after construction.
+    */
+    public static class Timeline
+    {
+        private final int postedBy;
+        private final int[] messageIds;
+        private final long[] times;
+        private final String[] texts;
+        private final long bytes;
+
+        private Timeline(int postedBy, List<Message> messages)
+        {
+            int size = messages.size();
+            this.postedBy = postedBy;
+            this.messageIds = new int[size];
+            this.times = new long[size];
+            this.texts = new String[size];
+            long total = TIMELINE_OVERHEAD_BYTES;
+            for(int i = 0; i < size; i++)
+            {
+                Message message = messages.get(i);
+                messageIds[i] = message.getMessage_id();
+                times[i] = message.getTime_posted_epoch();
+                texts[i] = message.getMessage_text();
+                total += sizeOf(texts[i]);
+            }
+            this.bytes = total;
+        }
+
+        private Timeline(int postedBy, int[] messageIds, long[] times, String[] texts)
+        {
+            this.postedBy = postedBy;
+            this.messageIds = messageIds;
+            this.times = times;
+            this.texts = texts;
+            long total = TIMELINE_OVERHEAD_BYTES;
+            for(String text : texts)
+                total += sizeOf(text);
+            this.bytes = total;
+        }
+
+        /*
+        * Hands each message to a consumer in timeline order.
+        *
+        * @param consumer
+        *
+        * @throws IOException if the consumer fails, which stops the iteration.
+        */
+        public void forEach(MessageConsumer consumer) throws IOException
+        {
+            for(int i = 0; i < messageIds.length; i++)
+                consumer.accept(new Message(messageIds[i], postedBy, texts[i], times[i]));
+        }
+
+        /*
+        * Hands each message posted within a time range to a consumer
+        * in timeline order, starting with a binary search for from.
+        *
+        * @param from earliest time_posted_epoch, inclusive
+        * @param to latest time_posted_epoch, inclusive
+        * @param consumer
+        *
+        * @throws IOException if the consumer fails, which stops the iteration.
+        */
+        public void forEachInRange(long from, long to, MessageConsumer consumer) throws IOException
+        {
+            //No message has the smallest int as its ID, so this always gives the insertion point
+            for(int i = -search(from, Integer.MIN_VALUE) - 1; i < messageIds.length && times[i] <= to; i++)
+                consumer.accept(new Message(messageIds[i], postedBy, texts[i], times[i]));
+        }
+
+        /*
+        * Returns the number of messages in the timeline.
+        */
+        public int size()
+        {
+            return messageIds.length;
+        }
+
+        /*
+        * Returns a copy with the message inserted at its position, or
+        * replacing the entry with the same ID and time.
+        */
+        private Timeline with(Message message)
+        {
+            int position = search(message.getTime_posted_epoch(), message.getMessage_id());
+            if(position >= 0)
+            {
+                String[] patchedTexts = texts.clone();
+                patchedTexts[position] = message.getMessage_text();
+                return new Timeline(message.getPosted_by(), messageIds, times, patchedTexts);
+            }
+
+            int insertAt = -position - 1;
+            int size = messageIds.length;
+            int[] newIds = new int[size + 1];
+            long[] newTimes = new long[size + 1];
+            String[] newTexts = new String[size + 1];
+            System.arraycopy(messageIds, 0, newIds, 0, insertAt);
+            System.arraycopy(times, 0, newTimes, 0, insertAt);
+            System.arraycopy(texts, 0, newTexts, 0, insertAt);
+            newIds[insertAt] = message.getMessage_id();
+            newTimes[insertAt] = message.getTime_posted_epoch();
+            newTexts[insertAt] = message.getMessage_text();
+            System.arraycopy(messageIds, insertAt, newIds, insertAt + 1, size - insertAt);
+            System.arraycopy(times, insertAt, newTimes, insertAt + 1, size - insertAt);
+            System.arraycopy(texts, insertAt, newTexts, insertAt + 1, size - insertAt);
+            return new Timeline(message.getPosted_by(), newIds, newTimes, newTexts);
+        }
+
+        /*
+        * Returns a copy without the message, or this timeline if it is not in it.
+        */
+        private Timeline without(Message message)
+        {
+            int position = search(message.getTime_posted_epoch(), message.getMessage_id());
+            if(position < 0)
+                return this;
+
+            int size = messageIds.length;
+            int[] newIds = Arrays.copyOf(messageIds, size - 1);
+            long[] newTimes = Arrays.copyOf(times, size - 1);
+            String[] newTexts = Arrays.copyOf(texts, size - 1);
+            System.arraycopy(messageIds, position + 1, newIds, position, size - position - 1);
+            System.arraycopy(times, position + 1, newTimes, position, size - position - 1);
+            System.arraycopy(texts, position + 1, newTexts, position, size - position - 1);
+            return new Timeline(postedBy, newIds, newTimes, newTexts);
+        }
+
+        /*
+        * Binary search on (time_posted_epoch, message_id).
+        *
+        * @return Returns the position of the entry, or -(insertion point) - 1.
+        */
+        private int search(long time, int messageId)
+        {
+            int low = 0;
+            int high = messageIds.length - 1;
+            while(low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int compare = times[mid] != time ? Long.compare(times[mid], time) : Integer.compare(messageIds[mid], messageId);
+                if(compare < 0)
+                    low = mid + 1;
+                else if(compare > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of JDBC connections. Connections handed out by borrow() are
+ * proxies whose close() returns the underlying physical connection to the
+ * pool instead of closing it.
+ *
+ * Every borrowed connection remembers the method that borrowed it, so a
+ * connection held for longer than the leak threshold can be reported by name.
+ *
+ * Each physical connection also keeps an LRU cache of prepared statements
+ * keyed by SQL text, so a DAO that prepares the same SQL on every call reuses
+ * the statement H2 already parsed and planned. Statements are handed out as
+ * proxies: closing one closes the result sets read from it and clears its
+ * parameters, but leaves the cached statement open. A statement that is still
+ * handed out is not shared, so preparing the same SQL again while a result set
+ * from it is being read gets a separate, uncached statement. Statements the
+ * caller never closed are released when the connection is returned.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Where the physical connections come from
+	 */
+	private final DataSource dataSource;
+	/**
+	 * Maximum number of physical connections, borrowed and idle combined
+	 */
+	private final int maxSize;
+	/**
+	 * How long borrow() waits for a free connection before giving up
+	 */
+	private final long borrowTimeoutMillis;
+	/**
+	 * How long a connection may be held before it is reported as a possible leak
+	 */
+	private final long leakThresholdMillis;
+	/**
+	 * Maximum number of prepared statements cached per physical connection
+	 */
+	private final int statementCacheSize;
+
+	/**
+	 * One permit per connection that may still be borrowed
+	 */
+	private final Semaphore permits;
+	/**
+	 * Physical connections waiting to be borrowed, most recently returned first
+	 */
+	private final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+	/**
+	 * Connections currently borrowed, keyed by the proxy handed out
+	 */
+	private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong discardedCount = new AtomicLong();
+	private final AtomicLong leakCount = new AtomicLong();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+	private final AtomicLong statementEvictions = new AtomicLong();
+
+	/**
+	 * Background task that looks for connections held past the leak threshold
+	 */
+	private final ScheduledExecutorService leakDetector;
+
+	/**
+	 * @param dataSource          source of physical connections
+	 * @param maxSize             maximum number of physical connections
+	 * @param borrowTimeoutMillis how long to wait for a free connection
+	 * @param leakThresholdMillis how long a connection may be held before it is
+	 *                            reported, or 0 to disable leak detection
+	 * @param statementCacheSize  prepared statements cached per connection, or 0
+	 *                            to prepare every statement afresh
+	 */
+	public ConnectionPool(DataSource dataSource, int maxSize, long borrowTimeoutMillis, long leakThresholdMillis,
+			int statementCacheSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("maxSize must be at least 1");
+
+		this.dataSource = dataSource;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		if (leakThresholdMillis > 0) {
+			leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "connection-leak-detector");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = Math.max(1, leakThresholdMillis / 2);
+			leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			leakDetector = null;
+		}
+	}
+
+	/**
+	 * Borrows a connection, waiting up to the borrow timeout for one to become
+	 * free. The caller must close() the returned connection to give it back.
+	 *
+	 * @return a pooled connection
+	 * @throws PoolExhaustedException if no connection became free in time
+	 * @throws SQLException           if a new physical connection could not be
+	 *                                opened
+	 */
+	public Connection borrow() throws SQLException {
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a pooled connection", e);
+		}
+
+		long waited = System.nanoTime() - start;
+		totalWaitNanos.addAndGet(waited);
+		maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+		if (!acquired) {
+			timeoutCount.incrementAndGet();
+			throw new PoolExhaustedException("Pool exhausted after " + borrowTimeoutMillis
+					+ " ms waiting for a connection (" + leases.size() + " of " + maxSize + " in use)");
+		}
+
+		try {
+			PhysicalConnection physical = takeValidIdle();
+			if (physical == null) {
+				physical = new PhysicalConnection(dataSource.getConnection());
+				createdCount.incrementAndGet();
+			}
+
+			Connection proxy = wrap(physical);
+			leases.put(proxy, new Lease(physical, findBorrower(), System.currentTimeMillis()));
+			borrowCount.incrementAndGet();
+			return proxy;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Pops idle connections until one passes validation.
+	 *
+	 * @return a usable idle connection, or null if none are idle
+	 */
+	private PhysicalConnection takeValidIdle() {
+		while (true) {
+			PhysicalConnection physical;
+			synchronized (idle) {
+				physical = idle.pollFirst();
+			}
+			if (physical == null)
+				return null;
+			if (isUsable(physical.connection))
+				return physical;
+			discard(physical);
+		}
+	}
+
+	/**
+	 * Called when a borrowed connection is closed. The physical connection is
+	 * reset and put back in the idle set, or discarded if it is broken.
+	 *
+	 * @param proxy the connection that was handed out by borrow()
+	 */
+	private void giveBack(Connection proxy) {
+		Lease lease = leases.remove(proxy);
+		if (lease == null)
+			return;
+
+		PhysicalConnection physical = lease.physical;
+		try {
+			physical.releaseStatements();
+			if (!physical.connection.getAutoCommit()) {
+				physical.connection.rollback();
+				physical.connection.setAutoCommit(true);
+			}
+			if (isUsable(physical.connection)) {
+				synchronized (idle) {
+					idle.addFirst(physical);
+				}
+			} else {
+				discard(physical);
+			}
+		} catch (SQLException e) {
+			discard(physical);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * @return true if the connection is open and answers a validation query
+	 */
+	private boolean isUsable(Connection physical) {
+		try {
+			return !physical.isClosed() && physical.isValid(1);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(PhysicalConnection physical) {
+		discardedCount.incrementAndGet();
+		try {
+			physical.connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reports every connection that has been held for longer than the leak
+	 * threshold. A lease is only reported once.
+	 */
+	private void detectLeaks() {
+		long now = System.currentTimeMillis();
+		for (Lease lease : leases.values()) {
+			long held = now - lease.borrowedAt;
+			if (held >= leakThresholdMillis && !lease.reported) {
+				lease.reported = true;
+				leakCount.incrementAndGet();
+				System.out.println("Possible connection leak: connection held for " + held + " ms by "
+						+ lease.borrower + " on thread " + lease.thread);
+			}
+		}
+	}
+
+	/**
+	 * Names the first caller outside of this package, which for the DAOs is the
+	 * DAO method that asked ConnectionUtil for a connection.
+	 */
+	private static String findBorrower() {
+		Optional<StackWalker.StackFrame> frame = StackWalker.getInstance()
+				.walk(frames -> frames.filter(f -> !f.getClassName().startsWith("Util.")).findFirst());
+		return frame.map(f -> f.getClassName() + "." + f.getMethodName()).orElse("unknown");
+	}
+
+	/**
+	 * Closes every idle connection. Borrowed connections are closed as they
+	 * are returned.
+	 */
+	public void evictIdle() {
+		List<PhysicalConnection> evicted;
+		synchronized (idle) {
+			evicted = new ArrayList<>(idle);
+			idle.clear();
+		}
+		for (PhysicalConnection physical : evicted)
+			discard(physical);
+	}
+
+	/**
+	 * @return number of connections currently borrowed
+	 */
+	public int getActiveCount() {
+		return leases.size();
+	}
+
+	/**
+	 * @return number of open connections waiting to be borrowed
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * @return the configured maximum number of connections
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the methods currently holding a connection for longer than the
+	 *         leak threshold, with how long they have held it in milliseconds
+	 */
+	public Map<String, Long> getLeakSuspects() {
+		Map<String, Long> suspects = new LinkedHashMap<>();
+		long now = System.currentTimeMillis();
+		for (Lease lease : leases.values()) {
+			long held = now - lease.borrowedAt;
+			if (leakThresholdMillis > 0 && held >= leakThresholdMillis)
+				suspects.merge(lease.borrower, held, Math::max);
+		}
+		return suspects;
+	}
+
+	/**
+	 * @return a snapshot of the pool counters, suitable for serializing to JSON
+	 */
+	public Map<String, Object> getStats() {
+		long borrows = borrowCount.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("max_size", maxSize);
+		stats.put("active", getActiveCount());
+		stats.put("idle", getIdleCount());
+		stats.put("borrows", borrows);
+		stats.put("timeouts", timeoutCount.get());
+		stats.put("created", createdCount.get());
+		stats.put("discarded", discardedCount.get());
+		stats.put("total_wait_ms", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+		stats.put("avg_wait_us", borrows == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / borrows));
+		stats.put("max_wait_us", TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+		stats.put("leaks_reported", leakCount.get());
+		stats.put("leak_suspects", getLeakSuspects());
+		stats.put("statement_cache_size", statementCacheSize);
+		stats.put("statement_cache_hits", statementHits.get());
+		stats.put("statement_cache_misses", statementMisses.get());
+		stats.put("statement_cache_evictions", statementEvictions.get());
+		return stats;
+	}
+
+	/**
+	 * Wraps a physical connection so that close() hands it back to the pool
+	 * and any use after close() fails.
+	 */
+	private Connection wrap(PhysicalConnection physical) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnectionHandler(physical));
+	}
+
+	/**
+	 * Bookkeeping for one borrowed connection
+	 */
+	private static class Lease {
+		final PhysicalConnection physical;
+		final String borrower;
+		final String thread = Thread.currentThread().getName();
+		final long borrowedAt;
+		volatile boolean reported;
+
+		Lease(PhysicalConnection physical, String borrower, long borrowedAt) {
+			this.physical = physical;
+			this.borrower = borrower;
+			this.borrowedAt = borrowedAt;
+		}
+	}
+
+	/**
+	 * A physical connection together with its prepared statement cache. Only
+	 * the thread holding the lease touches the cache.
+	 */
+	private class PhysicalConnection {
+		final Connection connection;
+		final Map<String, CachedStatement> statements;
+		/**
+		 * Statements handed out during the current lease and not yet closed
+		 */
+		final List<StatementHandler> outstanding = new ArrayList<>();
+
+		PhysicalConnection(Connection connection) {
+			this.connection = connection;
+			this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+					if (size() <= statementCacheSize)
+						return false;
+					statementEvictions.incrementAndGet();
+					CachedStatement evicted = eldest.getValue();
+					evicted.evicted = true;
+					// A statement still handed out is closed when its caller releases it
+					if (!evicted.inUse)
+						closeQuietly(evicted.statement);
+					return true;
+				}
+			};
+		}
+
+		/**
+		 * Returns the cached statement for this SQL, preparing and caching it on
+		 * a miss. If the cached statement is still handed out, a separate
+		 * statement is prepared and closed for real when released.
+		 *
+		 * @param connectionProxy   the pooled connection the statement belongs to
+		 * @param sql               the statement text
+		 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or
+		 *                          NO_GENERATED_KEYS, or null if not specified
+		 */
+		PreparedStatement prepare(Connection connectionProxy, String sql, Integer autoGeneratedKeys)
+				throws SQLException {
+			if (statementCacheSize <= 0) {
+				statementMisses.incrementAndGet();
+				return handOut(connectionProxy, new CachedStatement(prepareUncached(sql, autoGeneratedKeys), true));
+			}
+
+			String key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + ":" + sql;
+			CachedStatement cached = statements.get(key);
+			if (cached != null && !cached.inUse && !cached.statement.isClosed()) {
+				statementHits.incrementAndGet();
+				cached.statement.clearParameters();
+				return handOut(connectionProxy, cached);
+			}
+
+			statementMisses.incrementAndGet();
+			if (cached != null && cached.inUse)
+				return handOut(connectionProxy, new CachedStatement(prepareUncached(sql, autoGeneratedKeys), true));
+			cached = new CachedStatement(prepareUncached(sql, autoGeneratedKeys), false);
+			statements.put(key, cached);
+			return handOut(connectionProxy, cached);
+		}
+
+		private PreparedStatement prepareUncached(String sql, Integer autoGeneratedKeys) throws SQLException {
+			if (autoGeneratedKeys == null)
+				return connection.prepareStatement(sql);
+			return connection.prepareStatement(sql, autoGeneratedKeys);
+		}
+
+		private PreparedStatement handOut(Connection connectionProxy, CachedStatement cached) {
+			cached.inUse = true;
+			StatementHandler handler = new StatementHandler(this, cached, connectionProxy);
+			outstanding.add(handler);
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, handler);
+		}
+
+		/**
+		 * Releases every statement the borrower did not close itself.
+		 */
+		void releaseStatements() {
+			for (StatementHandler handler : new ArrayList<>(outstanding))
+				handler.release();
+			outstanding.clear();
+		}
+	}
+
+	/**
+	 * One entry of a statement cache. An uncached statement uses the same
+	 * holder, already marked evicted so that releasing it closes it.
+	 */
+	private static class CachedStatement {
+		final PreparedStatement statement;
+		boolean inUse;
+		boolean evicted;
+
+		CachedStatement(PreparedStatement statement, boolean evicted) {
+			this.statement = statement;
+			this.evicted = evicted;
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable closeable) {
+		try {
+			closeable.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forwards every call to the cached statement, except close() which
+	 * closes the result sets read from it and gives the statement back to the
+	 * cache, and getConnection() which answers the pooled connection.
+	 */
+	private static class StatementHandler implements InvocationHandler {
+		private final PhysicalConnection physical;
+		private final CachedStatement cached;
+		private final Connection connectionProxy;
+		private final List<ResultSet> resultSets = new ArrayList<>();
+		private boolean closed;
+
+		StatementHandler(PhysicalConnection physical, CachedStatement cached, Connection connectionProxy) {
+			this.physical = physical;
+			this.cached = cached;
+			this.connectionProxy = connectionProxy;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				release();
+				physical.outstanding.remove(this);
+				return null;
+			case "isClosed":
+				return closed;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + cached.statement;
+			default:
+				if (closed)
+					throw new SQLException("Statement has already been closed");
+				if (method.getName().equals("getConnection"))
+					return connectionProxy;
+				Object result;
+				try {
+					result = method.invoke(cached.statement, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				if (result instanceof ResultSet)
+					resultSets.add((ResultSet) result);
+				return result;
+			}
+		}
+
+		/**
+		 * Closes the result sets read from the statement, then either resets
+		 * the statement for the next caller or, if it has left the cache,
+		 * closes it.
+		 */
+		void release() {
+			if (closed)
+				return;
+			closed = true;
+			for (ResultSet resultSet : resultSets)
+				closeQuietly(resultSet);
+			resultSets.clear();
+			cached.inUse = false;
+			if (cached.evicted) {
+				closeQuietly(cached.statement);
+				return;
+			}
+			try {
+				cached.statement.clearParameters();
+				cached.statement.clearBatch();
+			} catch (SQLException e) {
+				// The statement is unusable, so the next prepare replaces it
+				closeQuietly(cached.statement);
+			}
+		}
+	}
+
+	/**
+	 * Forwards every call to the physical connection, except close() which
+	 * returns the connection to the pool and prepareStatement() which goes
+	 * through the statement cache.
+	 */
+	private class PooledConnectionHandler implements InvocationHandler {
+		private final PhysicalConnection physical;
+		private volatile boolean closed;
+
+		PooledConnectionHandler(PhysicalConnection physical) {
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					giveBack((Connection) proxy);
+				}
+				return null;
+			case "isClosed":
+				return closed || physical.connection.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + physical.connection;
+			default:
+				if (closed)
+					throw new SQLException("Connection has already been returned to the pool");
+				if (method.getName().equals("prepareStatement")) {
+					Class<?>[] types = method.getParameterTypes();
+					if (types.length == 1)
+						return physical.prepare((Connection) proxy, (String) args[0], null);
+					if (types.length == 2 && types[1] == int.class)
+						return physical.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+				}
+				try {
+					return method.invoke(physical.connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
@@ -1,9 +1,11 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,15 +15,24 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are borrowed from a bounded ConnectionPool, so every connection
+ * returned by getConnection() must be closed to give it back to the pool. The
+ * pool can be tuned with the socialmedia.pool.* system properties.
+ *
+ * Messages can be spread over several databases, set with the
+ * socialmedia.shards system property. Shard 0 is the database at url, which
+ * also holds accounts and follows; every other shard is its own H2 database
+ * with its own pool, sized like the first and opened the first time it is
+ * asked for.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. Benchmarks point it
+	 * elsewhere with the socialmedia.db.url system property.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("socialmedia.db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,43 +43,194 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource the pool opens its physical connections from
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Bounded pool of connections. Closing a borrowed connection returns it here.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Pools of the shards after the first, by shard number
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static Map<Integer, ConnectionPool> shardPools = new ConcurrentHashMap<>();
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * static initialization block to establish credentials for the DataSource and size the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = createPool(dataSource);
+	}
+
+	private static ConnectionPool createPool(JdbcDataSource source) {
+		return new ConnectionPool(source,
+				Integer.getInteger("socialmedia.pool.maxSize", 10),
+				Long.getLong("socialmedia.pool.borrowTimeoutMillis", 5000),
+				Long.getLong("socialmedia.pool.leakThresholdMillis", 30000),
+				Integer.getInteger("socialmedia.pool.statementCacheSize", 64));
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database. Close it to return it to
+	 *         the pool. Inside a UnitOfWork this is the unit of work's shared
+	 *         connection.
+	 * @throws PoolExhaustedException if no connection became free within the
+	 *                                borrow timeout
+	 * @throws IllegalStateException  if a new connection could not be opened
 	 */
 	public static Connection getConnection() {
+		UnitOfWork unitOfWork = UnitOfWork.current();
+		if (unitOfWork != null)
+			return unitOfWork.getConnection();
+
+		return borrow(pool);
+	}
+
+	/**
+	 * @param shard the message shard, 0 being the main database
+	 * @return an active connection to the shard's database. Inside a
+	 *         UnitOfWork this is the unit of work's shared connection to that
+	 *         shard.
+	 * @throws PoolExhaustedException if no connection became free within the
+	 *                                borrow timeout
+	 * @throws IllegalStateException  if a new connection could not be opened
+	 */
+	public static Connection getConnection(int shard) {
+		if (shard == 0)
+			return getConnection();
+
+		UnitOfWork unitOfWork = UnitOfWork.current();
+		if (unitOfWork != null)
+			return unitOfWork.getConnection(shard);
+
+		return borrow(getPool(shard));
+	}
+
+	/**
+	 * Borrows from a pool, turning a failure to open a connection into an
+	 * unchecked exception so callers never see a null connection.
+	 */
+	static Connection borrow(ConnectionPool connectionPool) {
+		try {
+			return connectionPool.borrow();
+		} catch (SQLException e) {
+			throw new IllegalStateException("Could not open a database connection: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns a connection obtained from getConnection() to the pool. Null
+	 * connections are ignored so this can be called from a finally block.
+	 *
+	 * @param connection the connection to give back
+	 */
+	public static void closeConnection(Connection connection) {
+		if (connection == null)
+			return;
+
 		try {
-			return pool.getConnection();
+			connection.close();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
+	}
 
-		return null;
+	/**
+	 * @return the pool behind getConnection(), for reading its counters at runtime
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @param shard the message shard, 0 being the main database
+	 * @return the pool of the shard's database, opening it on first use
+	 */
+	public static ConnectionPool getPool(int shard) {
+		if (shard == 0)
+			return pool;
+
+		return shardPools.computeIfAbsent(shard, number -> {
+			JdbcDataSource shardSource = new JdbcDataSource();
+			shardSource.setURL(getShardUrl(number));
+			shardSource.setUser(username);
+			shardSource.setPassword(password);
+			return createPool(shardSource);
+		});
+	}
+
+	/**
+	 * @return the number of databases messages are spread over, from the
+	 *         socialmedia.shards system property
+	 */
+	public static int getShardCount() {
+		int shards = Integer.getInteger("socialmedia.shards", 1);
+		if (shards < 1)
+			throw new IllegalArgumentException("socialmedia.shards must be at least 1: " + shards);
+		return shards;
+	}
+
+	/**
+	 * The connection string of a shard. Shard 0 is url; the others follow the
+	 * socialmedia.db.shardUrl pattern, with %d standing for the shard number,
+	 * or by default sit next to the main database with the shard number added
+	 * to its name, e.g. jdbc:h2:./h2/db_shard1;
+	 *
+	 * @param shard the message shard
+	 * @return the shard's connection string
+	 */
+	public static String getShardUrl(int shard) {
+		if (shard == 0)
+			return url;
+
+		String pattern = System.getProperty("socialmedia.db.shardUrl");
+		if (pattern != null)
+			return String.format(pattern, shard);
+
+		int settings = url.indexOf(';');
+		if (settings < 0)
+			return url + "_shard" + shard;
+		return url.substring(0, settings) + "_shard" + shard + url.substring(settings);
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources. This will be performed before every test. The schema
+	 * migrations are then re-applied on top of the fresh tables, and the
+	 * message tables of any other configured shards are emptied.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+			RunScript.execute(connection, sqlReader);
+
+			connection.createStatement().execute("drop table if exists schema_version");
+			SchemaMigrator.migrate(connection);
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
+		} finally {
+			closeConnection(connection);
+		}
+
+		for (int shard = 1; shard < getShardCount(); shard++) {
+			Connection shardConnection = getConnection(shard);
+			try {
+				shardConnection.createStatement().execute("drop table if exists message");
+				shardConnection.createStatement().execute("drop table if exists schema_version");
+				SchemaMigrator.migrateShard(shardConnection);
+			} catch (SQLException | IOException e) {
+				e.printStackTrace();
+			} finally {
+				closeConnection(shardConnection);
+			}
 		}
 	}
 }
@@ -0,0 +1,111 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of threads that runs database work off the web server's
+ * threads. A handler submits its unit of work and returns a future, so the
+ * Jetty thread is free again while H2 runs the query, and a burst of slow
+ * full scans queues here instead of tying up every request thread.
+ *
+ * By default there are as many threads as the connection pool has
+ * connections, since any more could only wait for one. Work submitted while
+ * the queue is full is rejected at once, so overload shows up as fast
+ * failures instead of a backlog that grows without bound. The pool is set
+ * with the socialmedia.db.* system properties; socialmedia.db.async=false
+ * turns it off and handlers block their Jetty thread as before.
+ */
+public class DatabaseExecutor {
+
+	/**
+	 * Numbers the worker threads of every executor, for thread dumps
+	 */
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+
+	private final ThreadPoolExecutor executor;
+	private final int queueSize;
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param threads   the number of worker threads
+	 * @param queueSize the most submitted work that may wait for a thread
+	 */
+	public DatabaseExecutor(int threads, int queueSize) {
+		this.queueSize = queueSize;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), runnable -> {
+					Thread thread = new Thread(runnable, "db-executor-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * Creates the executor described by the socialmedia.db.async,
+	 * socialmedia.db.threads and socialmedia.db.queueSize system properties.
+	 *
+	 * @return the executor, or null if asynchronous handlers are turned off
+	 */
+	public static DatabaseExecutor fromSystemProperties() {
+		if (Boolean.parseBoolean(System.getProperty("socialmedia.db.async", "true")) == false)
+			return null;
+
+		int threads = Integer.getInteger("socialmedia.db.threads", Integer.getInteger("socialmedia.pool.maxSize", 10));
+		return new DatabaseExecutor(threads, Integer.getInteger("socialmedia.db.queueSize", 1000));
+	}
+
+	/**
+	 * Runs work on one of the pool's threads.
+	 *
+	 * @param work the work to run, normally a whole unit of work
+	 * @return a future completed when the work finishes, or completed
+	 *         exceptionally with what it threw, or with a
+	 *         RejectedExecutionException if the queue was full
+	 */
+	public CompletableFuture<Void> submit(UnitOfWork.Work work) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					work.execute();
+					future.complete(null);
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * @return the executor's counters for the metrics endpoint
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("threads", executor.getMaximumPoolSize());
+		stats.put("active", executor.getActiveCount());
+		stats.put("queued", executor.getQueue().size());
+		stats.put("queue_size", queueSize);
+		stats.put("completed", executor.getCompletedTaskCount());
+		stats.put("rejected", rejected.sum());
+		return stats;
+	}
+
+	/**
+	 * Stops taking work and lets queued work finish.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,152 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int to int with linear probing, for indexes
+ * that would otherwise box every key and value. Integer.MIN_VALUE cannot be
+ * used as a key. Not thread-safe; callers guard it with their own lock.
+ */
+public class IntIntHashMap {
+
+	/**
+	 * Marks an empty bucket
+	 */
+	private static final int EMPTY = Integer.MIN_VALUE;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	/**
+	 * @param expectedSize number of entries to size the table for
+	 */
+	public IntIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the value for the key, or missingValue if there is none
+	 */
+	public int get(int key, int missingValue) {
+		if (key == EMPTY)
+			return missingValue;
+
+		for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+			int found = keys[i];
+			if (found == key)
+				return values[i];
+			if (found == EMPTY)
+				return missingValue;
+		}
+	}
+
+	/**
+	 * Sets the value for a key, adding the key if it is not present.
+	 *
+	 * @param key   the key, which must not be Integer.MIN_VALUE
+	 * @param value the value
+	 */
+	public void put(int key, int value) {
+		if (key == EMPTY)
+			throw new IllegalArgumentException("Integer.MIN_VALUE cannot be used as a key");
+
+		for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+			int found = keys[i];
+			if (found == key) {
+				values[i] = value;
+				return;
+			}
+			if (found == EMPTY) {
+				keys[i] = key;
+				values[i] = value;
+				if (++size * 2 > keys.length)
+					rehash(keys.length * 2);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes a key, shifting later entries of its probe run back so that
+	 * lookups never need tombstones.
+	 *
+	 * @param key the key to remove
+	 * @return true if the key was present
+	 */
+	public boolean remove(int key) {
+		if (key == EMPTY)
+			return false;
+
+		int i = mix(key) & mask;
+		while (keys[i] != key) {
+			if (keys[i] == EMPTY)
+				return false;
+			i = (i + 1) & mask;
+		}
+
+		size--;
+		int gap = i;
+		for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+			//An entry can fill the gap only if its home bucket is not between the gap and itself
+			int home = mix(keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		keys[gap] = EMPTY;
+		return true;
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the table
+	 */
+	public long memoryBytes() {
+		return 2L * keys.length * Integer.BYTES;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != EMPTY)
+				put(oldKeys[i], oldValues[i]);
+	}
+
+	/**
+	 * Spreads sequential IDs across the table.
+	 */
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
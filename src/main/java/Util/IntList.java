@@ -0,0 +1,109 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of ints kept in a primitive array. Not thread-safe; callers
+ * guard it with their own lock.
+ */
+public class IntList {
+
+	private int[] elements;
+	private int size;
+
+	public IntList() {
+		this(8);
+	}
+
+	/**
+	 * @param capacity initial capacity
+	 */
+	public IntList(int capacity) {
+		elements = new int[Math.max(1, capacity)];
+	}
+
+	/**
+	 * @param value the value to append
+	 */
+	public void add(int value) {
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, size * 2);
+		elements[size++] = value;
+	}
+
+	/**
+	 * Inserts a value at a position, shifting later elements up.
+	 *
+	 * @param index position to insert at
+	 * @param value the value to insert
+	 */
+	public void insert(int index, int value) {
+		if (index > size)
+			throw new IndexOutOfBoundsException(index);
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, size * 2);
+		System.arraycopy(elements, index, elements, index + 1, size - index);
+		elements[index] = value;
+		size++;
+	}
+
+	/**
+	 * Searches a list kept in ascending order.
+	 *
+	 * @param value the value to find
+	 * @return the position of the value, or -(insertion point) - 1 if absent
+	 */
+	public int binarySearch(int value) {
+		return Arrays.binarySearch(elements, 0, size, value);
+	}
+
+	/**
+	 * @param index position of the element
+	 * @return the element at the position
+	 */
+	public int get(int index) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException(index);
+		return elements[index];
+	}
+
+	/**
+	 * Removes the element at a position, shifting later elements down.
+	 *
+	 * @param index position of the element
+	 */
+	public void removeAt(int index) {
+		if (index >= size)
+			throw new IndexOutOfBoundsException(index);
+		System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+		size--;
+	}
+
+	/**
+	 * @return the number of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every element, keeping the capacity.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the elements
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the list
+	 */
+	public long memoryBytes() {
+		return (long) elements.length * Integer.BYTES;
+	}
+}
@@ -0,0 +1,93 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sources that are each already sorted into one sorted list. A binary
+ * heap holds the current head of every source that still has elements, so
+ * each element out costs O(log k) for k sources, and a source is only read as
+ * far as the output needs: merging stops at the limit.
+ */
+public class KWayMerge {
+
+	private KWayMerge() {
+	}
+
+	/**
+	 * @param sources iterators that each return elements in order
+	 * @param order the order every source is sorted by
+	 * @param limit the most elements to return
+	 * @return the first limit elements of all sources in order; on ties, the
+	 *         earlier source's element comes first
+	 */
+	public static <T> List<T> merge(List<? extends Iterator<? extends T>> sources, Comparator<? super T> order, int limit) {
+		Iterator<T> merged = iterator(sources, order);
+		List<T> result = new ArrayList<>(Math.min(limit, 1024));
+		while (result.size() < limit && merged.hasNext())
+			result.add(merged.next());
+		return result;
+	}
+
+	/**
+	 * Merges lazily, for outputs too large to collect: each source is read one
+	 * element ahead of what has been returned.
+	 *
+	 * @param sources iterators that each return elements in order
+	 * @param order the order every source is sorted by
+	 * @return an iterator over the elements of all sources in order; on ties,
+	 *         the earlier source's element comes first
+	 */
+	public static <T> Iterator<T> iterator(List<? extends Iterator<? extends T>> sources, Comparator<? super T> order) {
+		PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+			int compared = order.compare(a.value, b.value);
+			return compared != 0 ? compared : Integer.compare(a.sourceIndex, b.sourceIndex);
+		});
+		for (int i = 0; i < sources.size(); i++) {
+			Iterator<? extends T> source = sources.get(i);
+			if (source.hasNext())
+				heads.add(new Head<>(source.next(), source, i));
+		}
+
+		return new Iterator<T>() {
+			@Override
+			public boolean hasNext() {
+				return heads.isEmpty() == false;
+			}
+
+			@Override
+			public T next() {
+				Head<T> head = heads.poll();
+				if (head == null)
+					throw new NoSuchElementException();
+				T value = head.value;
+
+				// Putting the source back with its next element, reusing the head
+				if (head.source.hasNext()) {
+					head.value = head.source.next();
+					heads.add(head);
+				}
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * The element a source is currently offering
+	 */
+	private static class Head<T> {
+		private T value;
+		private final Iterator<? extends T> source;
+		private final int sourceIndex;
+
+		private Head(T value, Iterator<? extends T> source, int sourceIndex) {
+			this.value = value;
+			this.source = source;
+			this.sourceIndex = sourceIndex;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package Util;
+
+/**
+ * Thrown when no pooled connection became free within the borrow timeout.
+ * It is unchecked so that it passes through the DAOs, which handle
+ * SQLException themselves, and reaches the controller, which answers the
+ * request with 503 Service Unavailable.
+ */
+public class PoolExhaustedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message what was being waited for, and for how long
+	 */
+	public PoolExhaustedException(String message) {
+		super(message);
+	}
+}
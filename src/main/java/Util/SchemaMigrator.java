@@ -0,0 +1,157 @@
+package Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.stream.Collectors;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Brings a database schema up to date by running numbered SQL resources in
+ * order. Migration n lives at /db/migration/Vn.sql and its first line is a
+ * comment describing it. Every applied migration is recorded in the
+ * schema_version table, so each one runs exactly once per database and new
+ * indexes or columns can be added to an existing ./h2/db without dropping it.
+ *
+ * Message shards after the first have their own, smaller schema under
+ * /db/shard/Vn.sql, versioned the same way in each shard database.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * Classpath directory holding the migration scripts
+	 */
+	private static final String MIGRATION_PATH = "/db/migration/V";
+	/**
+	 * Classpath directory holding the message shard schema scripts
+	 */
+	private static final String SHARD_MIGRATION_PATH = "/db/shard/V";
+
+	/**
+	 * Applies every migration newer than the database's current version.
+	 *
+	 * @return the schema version after migrating
+	 */
+	public static int migrate() {
+		Connection connection = ConnectionUtil.getConnection();
+		try {
+			return migrate(connection);
+		} catch (SQLException | IOException e) {
+			throw new IllegalStateException("Schema migration failed", e);
+		} finally {
+			ConnectionUtil.closeConnection(connection);
+		}
+	}
+
+	/**
+	 * Applies every migration newer than the database's current version using
+	 * the provided connection.
+	 *
+	 * @param connection connection to the database to migrate
+	 * @return the schema version after migrating
+	 */
+	public static int migrate(Connection connection) throws SQLException, IOException {
+		return migrate(connection, MIGRATION_PATH);
+	}
+
+	/**
+	 * Applies every shard schema migration newer than a message shard's
+	 * current version using the provided connection.
+	 *
+	 * @param connection connection to the shard database to migrate
+	 * @return the shard schema version after migrating
+	 */
+	public static int migrateShard(Connection connection) throws SQLException, IOException {
+		return migrate(connection, SHARD_MIGRATION_PATH);
+	}
+
+	private static int migrate(Connection connection, String path) throws SQLException, IOException {
+		Statement statement = connection.createStatement();
+		statement.execute("create table if not exists schema_version ("
+				+ "version int primary key, "
+				+ "description varchar(255), "
+				+ "applied_at timestamp default current_timestamp)");
+
+		int version = currentVersion(connection);
+		while (true) {
+			String script = readMigration(path, version + 1);
+			if (script == null)
+				return version;
+
+			version++;
+			apply(connection, version, script);
+			System.out.println("Applied " + (path.equals(SHARD_MIGRATION_PATH) ? "shard " : "") + "schema migration V"
+					+ version + ": " + describe(script));
+		}
+	}
+
+	/**
+	 * @return the highest version recorded in schema_version, or 0 for a new
+	 *         database
+	 */
+	public static int currentVersion(Connection connection) throws SQLException {
+		ResultSet rs = connection.createStatement().executeQuery("select coalesce(max(version), 0) from schema_version");
+		rs.next();
+		return rs.getInt(1);
+	}
+
+	/**
+	 * Runs one migration script and records it, in a single transaction where
+	 * H2 allows it. H2 commits DDL implicitly, so migrations are written to be
+	 * safe to re-run (create ... if not exists).
+	 */
+	private static void apply(Connection connection, int version, String script) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			RunScript.execute(connection, new StringReader(script));
+
+			PreparedStatement ps = connection.prepareStatement(
+					"insert into schema_version (version, description) values (?, ?)");
+			ps.setInt(1, version);
+			ps.setString(2, describe(script));
+			ps.executeUpdate();
+
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * @return the text of migration Vn.sql, or null if there is no such
+	 *         migration
+	 */
+	private static String readMigration(String path, int version) throws IOException {
+		InputStream in = SchemaMigrator.class.getResourceAsStream(path + version + ".sql");
+		if (in == null)
+			return null;
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			return reader.lines().collect(Collectors.joining("\n"));
+		}
+	}
+
+	/**
+	 * @return the description from the leading comment of a migration script
+	 */
+	private static String describe(String script) {
+		String firstLine = script.lines().findFirst().orElse("").trim();
+		if (!firstLine.startsWith("--"))
+			return "";
+		String description = firstLine.substring(2).trim();
+		return description.length() > 255 ? description.substring(0, 255) : description;
+	}
+}
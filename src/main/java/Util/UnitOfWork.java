@@ -0,0 +1,306 @@
+package Util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binds one connection and one transaction to the current thread for the
+ * length of a piece of work, normally one HTTP request. While a unit of work
+ * is active, ConnectionUtil.getConnection() hands every DAO call the same
+ * connection, and closing it is a no-op. The transaction is committed when
+ * the work finishes normally and rolled back if it throws.
+ *
+ * The connection is only borrowed from the pool the first time a DAO asks
+ * for one, so requests that never touch the database never hold one.
+ *
+ * When messages are sharded, the unit of work holds one connection and one
+ * transaction per shard it touches. They are committed one after another
+ * when the work finishes, so a commit that fails part way leaves the shards
+ * committed before it; every transaction still rolls back together if the
+ * work throws or is marked rollback-only.
+ */
+public class UnitOfWork {
+
+	/**
+	 * A piece of work to run inside a unit of work
+	 */
+	@FunctionalInterface
+	public interface Work {
+		void execute() throws Exception;
+	}
+
+	/**
+	 * The unit of work bound to each thread, if any
+	 */
+	private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+	/**
+	 * The pooled connection to each message shard, borrowed on first use.
+	 * Shard 0 is the main database.
+	 */
+	private Connection[] connections = new Connection[1];
+	/**
+	 * False when the caller supplied the shard 0 connection and keeps
+	 * ownership of it
+	 */
+	private boolean ownsConnection = true;
+	/**
+	 * Handles given to DAOs, by shard; each forwards to its connection but
+	 * ignores close()
+	 */
+	private Connection[] shared = new Connection[1];
+	/**
+	 * Set when a DAO hit an error that leaves the transaction half done
+	 */
+	private boolean rollbackOnly;
+	/**
+	 * Callbacks to run once the transaction has committed or rolled back
+	 */
+	private List<Runnable> completionCallbacks;
+	/**
+	 * Callbacks to run only if the transaction commits
+	 */
+	private List<Runnable> commitCallbacks;
+
+	private UnitOfWork() {
+	}
+
+	/**
+	 * Runs work inside a new unit of work. If a unit of work is already active
+	 * on this thread the work joins it instead.
+	 *
+	 * @param work the work to run
+	 * @throws Exception whatever the work throws, after rolling back
+	 */
+	public static void run(Work work) throws Exception {
+		if (current.get() != null) {
+			work.execute();
+			return;
+		}
+
+		execute(new UnitOfWork(), work);
+	}
+
+	/**
+	 * Runs work inside a new unit of work on a connection the caller already
+	 * holds, for background writers that keep a dedicated connection. The
+	 * transaction is committed or rolled back, but the connection is left
+	 * open for the caller.
+	 *
+	 * @param connection the connection to run the work on
+	 * @param work       the work to run
+	 * @throws Exception whatever the work throws, after rolling back
+	 */
+	public static void run(Connection connection, Work work) throws Exception {
+		if (current.get() != null)
+			throw new IllegalStateException("A unit of work is already active on this thread");
+
+		UnitOfWork unitOfWork = new UnitOfWork();
+		unitOfWork.connections[0] = connection;
+		unitOfWork.ownsConnection = false;
+		execute(unitOfWork, work);
+	}
+
+	private static void execute(UnitOfWork unitOfWork, Work work) throws Exception {
+		current.set(unitOfWork);
+		boolean success = false;
+		try {
+			work.execute();
+			success = true;
+		} finally {
+			current.remove();
+			boolean commit = success && !unitOfWork.rollbackOnly;
+			boolean committed = false;
+			try {
+				unitOfWork.finish(commit);
+				committed = commit;
+			} finally {
+				if (committed)
+					runCallbacks(unitOfWork.commitCallbacks);
+				runCallbacks(unitOfWork.completionCallbacks);
+			}
+		}
+	}
+
+	/**
+	 * Registers a callback to run after the active unit of work has committed
+	 * or rolled back, for keeping caches consistent with what other
+	 * connections can see. Runs the callback immediately if no unit of work
+	 * is active.
+	 *
+	 * @param callback the callback to run
+	 */
+	public static void afterCompletion(Runnable callback) {
+		UnitOfWork unitOfWork = current.get();
+		if (unitOfWork == null) {
+			callback.run();
+			return;
+		}
+
+		if (unitOfWork.completionCallbacks == null)
+			unitOfWork.completionCallbacks = new ArrayList<>();
+		unitOfWork.completionCallbacks.add(callback);
+	}
+
+	/**
+	 * Registers a callback to run only once the active unit of work has
+	 * committed, for applying a change to an in-memory copy of the data only
+	 * when the change is visible to other connections. Runs the callback
+	 * immediately if no unit of work is active.
+	 *
+	 * @param callback the callback to run
+	 */
+	public static void afterCommit(Runnable callback) {
+		UnitOfWork unitOfWork = current.get();
+		if (unitOfWork == null) {
+			callback.run();
+			return;
+		}
+
+		if (unitOfWork.commitCallbacks == null)
+			unitOfWork.commitCallbacks = new ArrayList<>();
+		unitOfWork.commitCallbacks.add(callback);
+	}
+
+	/**
+	 * Marks the active unit of work so that it rolls back instead of
+	 * committing. Does nothing if no unit of work is active.
+	 */
+	public static void setRollbackOnly() {
+		UnitOfWork unitOfWork = current.get();
+		if (unitOfWork != null)
+			unitOfWork.rollbackOnly = true;
+	}
+
+	/**
+	 * @return the unit of work bound to this thread, or null if none is active
+	 */
+	public static UnitOfWork current() {
+		return current.get();
+	}
+
+	/**
+	 * Borrows the main database connection on first use and starts the
+	 * transaction.
+	 *
+	 * @return the shared connection for this unit of work
+	 * @throws PoolExhaustedException if no connection became free in time
+	 */
+	Connection getConnection() {
+		return getConnection(0);
+	}
+
+	/**
+	 * Borrows a shard's connection on first use and starts its transaction.
+	 *
+	 * @param shard the message shard, 0 being the main database
+	 * @return the shared connection to the shard for this unit of work
+	 * @throws PoolExhaustedException if no connection became free in time
+	 * @throws IllegalStateException  if the connection could not be opened or
+	 *                                its transaction started
+	 */
+	Connection getConnection(int shard) {
+		if (shard >= shared.length) {
+			connections = Arrays.copyOf(connections, shard + 1);
+			shared = Arrays.copyOf(shared, shard + 1);
+		}
+		if (shared[shard] != null)
+			return shared[shard];
+
+		boolean owned = ownsConnection || shard > 0;
+		Connection borrowed = connections[shard];
+		try {
+			if (borrowed == null)
+				borrowed = ConnectionUtil.borrow(ConnectionUtil.getPool(shard));
+			borrowed.setAutoCommit(false);
+		} catch (SQLException e) {
+			if (owned)
+				ConnectionUtil.closeConnection(borrowed);
+			throw new IllegalStateException("Could not start a transaction: " + e.getMessage(), e);
+		}
+
+		Connection pooled = borrowed;
+		connections[shard] = pooled;
+		shared[shard] = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						return null;
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						try {
+							return method.invoke(pooled, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+		return shared[shard];
+	}
+
+	private static void runCallbacks(List<Runnable> callbacks) {
+		if (callbacks == null)
+			return;
+
+		for (Runnable callback : callbacks) {
+			try {
+				callback.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Commits or rolls back the transaction on each shard in turn and returns
+	 * the connections to their pools. Once one commit fails the remaining
+	 * shards are rolled back, and the first failure is thrown at the end. A
+	 * failed commit is rolled back by the pool when the connection is
+	 * returned. A supplied connection is put back in auto-commit mode instead.
+	 */
+	private void finish(boolean commit) throws SQLException {
+		SQLException failure = null;
+		for (int shard = 0; shard < shared.length; shard++) {
+			if (shared[shard] == null)
+				continue;
+
+			Connection connection = connections[shard];
+			try {
+				if (commit && failure == null)
+					connection.commit();
+				else
+					connection.rollback();
+			} catch (SQLException e) {
+				if (failure == null)
+					failure = e;
+			} finally {
+				if (ownsConnection || shard > 0)
+					ConnectionUtil.closeConnection(connection);
+				else
+					restoreAutoCommit(connection);
+				connections[shard] = null;
+				shared[shard] = null;
+			}
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Clears anything a failed commit left behind on a supplied connection and
+	 * puts it back in auto-commit mode.
+	 */
+	private static void restoreAutoCommit(Connection connection) throws SQLException {
+		connection.rollback();
+		connection.setAutoCommit(true);
+	}
+}
@@ -0,0 +1,72 @@
+package Util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A Jetty thread pool that runs every task on its own virtual thread, so a
+ * request blocked on JDBC costs a parked virtual thread instead of one of a
+ * fixed number of platform threads. There is no upper bound on threads and
+ * the pool is never low on them; the connection pool's permits are what
+ * limit how many requests reach the database at once.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+	private final ExecutorService executor;
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * @param namePrefix the name of every thread, followed by a counter
+	 */
+	public VirtualThreadPool(String namePrefix) {
+		this.executor = VirtualThreads.newThreadPerTaskExecutor(namePrefix);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(() -> {
+			running.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				running.decrementAndGet();
+			}
+		});
+	}
+
+	@Override
+	public void join() throws InterruptedException {
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of tasks currently running, each on its own thread
+	 */
+	@Override
+	public int getThreads() {
+		return running.get();
+	}
+
+	/**
+	 * @return always 0, since a thread exists only while its task runs
+	 */
+	@Override
+	public int getIdleThreads() {
+		return 0;
+	}
+
+	@Override
+	public boolean isLowOnThreads() {
+		return false;
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		executor.shutdown();
+		super.doStop();
+	}
+}
@@ -0,0 +1,76 @@
+package Util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads without requiring a JDK that has them. The
+ * project compiles for Java 11, so Thread.ofVirtual() and
+ * Executors.newThreadPerTaskExecutor() are looked up by reflection and only
+ * called when running on Java 21 or later.
+ */
+public class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return true if the running JDK can start virtual threads
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks the socialmedia.threads system property, which is platform by
+	 * default or virtual to serve requests on virtual threads.
+	 *
+	 * @return true if requests should run on virtual threads
+	 * @throws IllegalStateException if virtual threads were asked for on a JDK
+	 *                               without them
+	 */
+	public static boolean isEnabled() {
+		String threads = System.getProperty("socialmedia.threads", "platform");
+		switch (threads) {
+		case "platform":
+			return false;
+		case "virtual":
+			if (!isSupported())
+				throw new IllegalStateException("socialmedia.threads=virtual needs Java 21 or later, running on "
+						+ System.getProperty("java.version"));
+			return true;
+		default:
+			throw new IllegalArgumentException("Unknown socialmedia.threads: " + threads);
+		}
+	}
+
+	/**
+	 * @param namePrefix the name of every thread, followed by a counter
+	 * @return an executor that starts a new virtual thread for every task
+	 * @throws IllegalStateException if the running JDK has no virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		try {
+			// Thread.ofVirtual().name(namePrefix, 0).factory()
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException e) {
+			throw new IllegalStateException("Virtual threads need Java 21 or later", e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create a virtual thread executor", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,2 @@
+-- Index for per-account message lookups, ordered by message_id for keyset pagination
+create index if not exists message_posted_by_message_id on message (posted_by, message_id);
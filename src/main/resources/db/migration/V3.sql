@@ -0,0 +1,3 @@
+-- Indexes for time range queries, globally and per account, in timeline order
+create index if not exists message_time_posted_epoch on message (time_posted_epoch, message_id);
+create index if not exists message_posted_by_time_posted_epoch on message (posted_by, time_posted_epoch, message_id);
@@ -0,0 +1,10 @@
+-- Follow graph, looked up in both directions, and a newest-first per-account message index for feeds
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists follow_followee on follow (followee_id, follower_id);
+create index if not exists message_posted_by_message_id_desc on message (posted_by, message_id desc);
@@ -0,0 +1,6 @@
+-- Number of shards messages were last spread over, so that a change of socialmedia.shards can move them
+create table if not exists shard_layout (
+    layout_id int primary key,
+    shard_count int not null
+);
+merge into shard_layout (layout_id, shard_count) key (layout_id) values (1, 1);
@@ -0,0 +1,11 @@
+-- Message table of a shard after the first, with the message indexes of migrations V2 to V4; accounts stay in shard 0, so there is no foreign key
+create table if not exists message (
+    message_id int primary key auto_increment,
+    posted_by int,
+    message_text varchar(255),
+    time_posted_epoch bigint
+);
+create index if not exists message_posted_by_message_id on message (posted_by, message_id);
+create index if not exists message_time_posted_epoch on message (time_posted_epoch, message_id);
+create index if not exists message_posted_by_time_posted_epoch on message (posted_by, time_posted_epoch, message_id);
+create index if not exists message_posted_by_message_id_desc on message (posted_by, message_id desc);
@@ -0,0 +1,147 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.AccountIdIndex;
+import DAO.UsernameBloomFilter;
+import Model.Account;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class AccountDAOTest {
+    AccountIdIndex accountIds;
+    UsernameBloomFilter usernames;
+    AccountDAO accountDAO;
+
+    /**
+     * Before every test, reset the database and create an AccountDAO with a freshly loaded ID index and username
+     * filter. Account 1, testuser1, is registered.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountIds = AccountIdIndex.load();
+        usernames = UsernameBloomFilter.load();
+        accountDAO = new AccountDAO(accountIds, usernames);
+    }
+
+    /**
+     * Registering an account inside a unit of work that commits
+     *
+     * Expected Result:
+     *  The new ID is only indexed once the transaction has committed
+     */
+    @Test
+    public void registeredIdIsIndexedAfterCommit() throws Exception {
+        Account[] registered = new Account[1];
+        boolean[] indexedBeforeCommit = new boolean[1];
+        UnitOfWork.run(() -> {
+            registered[0] = accountDAO.registerAccount(new Account("user2", "password"));
+            indexedBeforeCommit[0] = accountIds.contains(registered[0].getAccount_id());
+        });
+
+        Assert.assertEquals(2, registered[0].getAccount_id());
+        Assert.assertFalse(indexedBeforeCommit[0]);
+        Assert.assertTrue(accountIds.contains(2));
+    }
+
+    /**
+     * Registering an account inside a unit of work that rolls back
+     *
+     * Expected Result:
+     *  The rolled back ID is never indexed, so the index does not claim an account that does not exist
+     */
+    @Test
+    public void rolledBackIdIsNotIndexed() throws Exception {
+        Account[] registered = new Account[1];
+        UnitOfWork.run(() -> {
+            registered[0] = accountDAO.registerAccount(new Account("user2", "password"));
+            UnitOfWork.setRollbackOnly();
+        });
+
+        Assert.assertNotNull(registered[0]);
+        Assert.assertFalse(accountIds.contains(registered[0].getAccount_id()));
+        Assert.assertNull(accountDAO.getAccountByUsername("user2"));
+    }
+
+    /**
+     * Checking and registering a username that is already taken
+     *
+     * Expected Result:
+     *  The check fails, and an insert that skips the check is still refused by the unique constraint
+     */
+    @Test
+    public void duplicateUsernameIsRejected() {
+        Assert.assertTrue(usernames.mightContain("testuser1"));
+        Assert.assertFalse(accountDAO.validAccountParameters("testuser1", "password"));
+        Assert.assertNull(accountDAO.registerAccount(new Account("testuser1", "password")));
+    }
+
+    /**
+     * Registering a username through a second AccountDAO, whose filter the first one never sees, then through the
+     * first one; then loading a new filter, as a restart would
+     *
+     * Expected Result:
+     *  The stale filter says the username is absent, but the duplicate is refused by the unique constraint, and the
+     *  newly loaded filter knows every registered username
+     */
+    @Test
+    public void absentAnswerNeverLetsDuplicateThrough() {
+        AccountDAO otherProcess = new AccountDAO(AccountIdIndex.load(), UsernameBloomFilter.load());
+        for (int i = 0; i < 100; i++)
+            Assert.assertNotNull(otherProcess.registerAccount(new Account("user" + i, "password")));
+
+        Assert.assertFalse(usernames.mightContain("user0"));
+        Assert.assertTrue(accountDAO.validAccountParameters("user0", "password"));
+        Assert.assertNull(accountDAO.registerAccount(new Account("user0", "password")));
+
+        UsernameBloomFilter reloaded = UsernameBloomFilter.load();
+        AccountDAO restarted = new AccountDAO(AccountIdIndex.load(), reloaded);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(reloaded.mightContain("user" + i));
+            Assert.assertFalse(restarted.validAccountParameters("user" + i, "password"));
+        }
+    }
+
+    /**
+     * Checking a free username against a filter so full that it answers maybe for every username
+     *
+     * Expected Result:
+     *  The check falls back to the database, accepts the username and counts a false positive
+     */
+    @Test
+    public void falsePositiveFallsBackToLookup() {
+        UsernameBloomFilter full = new UsernameBloomFilter(1, 0.5);
+        for (int i = 0; full.mightContain("newuser") == false; i++)
+            full.add("filler" + i);
+        AccountDAO dao = new AccountDAO(accountIds, full);
+
+        Assert.assertTrue(dao.validAccountParameters("newuser", "password"));
+        Assert.assertEquals(1L, full.getStats().get("false_positives"));
+        Assert.assertFalse(dao.validAccountParameters("testuser1", "password"));
+        Assert.assertEquals(1L, full.getStats().get("false_positives"));
+    }
+
+    /**
+     * Registering a username in a unit of work that rolls back, then registering it for real
+     *
+     * Expected Result:
+     *  The rolled back username is left as a maybe, so it can still be registered after the database confirms it is
+     *  free; once registered, it is never reported absent and a second registration is refused
+     */
+    @Test
+    public void rolledBackRegistrationLeavesNoWrongNegative() throws Exception {
+        UnitOfWork.run(() -> {
+            Assert.assertNotNull(accountDAO.registerAccount(new Account("user2", "password")));
+            UnitOfWork.setRollbackOnly();
+        });
+        Assert.assertTrue(usernames.mightContain("user2"));
+        Assert.assertTrue(accountDAO.validAccountParameters("user2", "password"));
+
+        Assert.assertNotNull(accountDAO.registerAccount(new Account("user2", "password")));
+        Assert.assertTrue(usernames.mightContain("user2"));
+        Assert.assertFalse(accountDAO.validAccountParameters("user2", "password"));
+        Assert.assertNull(accountDAO.registerAccount(new Account("user2", "password")));
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Map<String, String> previousProperties = new HashMap<>();
+
+    /**
+     * Before every test, reset the database, shrink feed buffers to 3 messages and the celebrity threshold to
+     * 2 followers, restart the Javalin app, and register accounts 2, 3 and 4 next to the fixture's account 1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        setProperty("socialmedia.feed.bufferSize", "3");
+        setProperty("socialmedia.feed.celebrityFollowers", "2");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (String username : List.of("user2", "user3", "user4")) {
+            HttpRequest registerRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", \"password\": \"password\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        for (Map.Entry<String, String> property : previousProperties.entrySet()) {
+            if (property.getValue() == null)
+                System.clearProperty(property.getKey());
+            else
+                System.setProperty(property.getKey(), property.getValue());
+        }
+    }
+
+    private void setProperty(String key, String value) {
+        previousProperties.put(key, System.getProperty(key));
+        System.setProperty(key, value);
+    }
+
+    private int send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private int post(int postedBy, String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947900}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), Message.class).getMessage_id();
+    }
+
+    private MessagePage feed(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/feed" + query))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private MessagePage feed(int accountId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/feed"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private int feedLoads() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        Map<String, Map<String, Object>> metrics = objectMapper.readValue(
+                webClient.send(request, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<Map<String, Map<String, Object>>>(){});
+        return ((Number) metrics.get("feeds").get("loads")).intValue();
+    }
+
+    private List<Integer> messageIds(MessagePage page) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : page.getMessages())
+            ids.add(message.getMessage_id());
+        return ids;
+    }
+
+    /**
+     * Account 2 follows accounts 1 and 3, then reads its feed before and after new posts
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages from followed accounts only, newest first, including posts made after the feed loaded
+     */
+    @Test
+    public void feedShowsFollowedAccountsNewestFirst() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/3"));
+        int fromThree = post(3, "from three");
+        post(4, "from four");
+        Assert.assertEquals(List.of(fromThree, 1), messageIds(feed("")));
+
+        //Pushed into the loaded feed on commit
+        int fromOne = post(1, "from one");
+        MessagePage page = feed("");
+        Assert.assertEquals(List.of(fromOne, fromThree, 1), messageIds(page));
+        Assert.assertEquals(new Message(fromOne, 1, "from one", 1669947900), page.getMessages().get(0));
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Account 2 follows account 1, whose five posts overflow the three message buffer, then pages through its feed
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message exactly once across pages of two, the older ones read past the buffer
+     */
+    @Test
+    public void feedPagesPastBuffer() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        feed("");
+        for (int i = 0; i < 5; i++)
+            post(1, "post " + i);
+
+        List<Integer> ids = new ArrayList<>();
+        String cursor = "";
+        do {
+            MessagePage page = feed("?limit=2&cursor=" + cursor);
+            ids.addAll(messageIds(page));
+            cursor = page.getNext_cursor();
+        } while (cursor != null);
+        Assert.assertEquals(List.of(6, 5, 4, 3, 2, 1), ids);
+    }
+
+    /**
+     * Accounts 2, 3 and 4 follow account 1, making it a celebrity that is merged on read instead of fanned out
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: account 1's messages, including new ones, merged with account 3's
+     */
+    @Test
+    public void feedMergesCelebritiesOnRead() throws IOException, InterruptedException {
+        for (int follower = 2; follower <= 4; follower++)
+            Assert.assertEquals(200, send("POST", "/accounts/" + follower + "/following/1"));
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/3"));
+        int fromThree = post(3, "from three");
+        Assert.assertEquals(List.of(fromThree, 1), messageIds(feed("")));
+
+        int fromCelebrity = post(1, "from a celebrity");
+        Assert.assertEquals(List.of(fromCelebrity, fromThree, 1), messageIds(feed("")));
+    }
+
+    /**
+     * Account 2 unfollows account 3 and a message in its feed is deleted
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: neither the unfollowed account's messages nor the deleted message
+     */
+    @Test
+    public void feedDropsUnfollowedAndDeleted() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/3"));
+        int fromThree = post(3, "from three");
+        int fromOne = post(1, "from one");
+        Assert.assertEquals(List.of(fromOne, fromThree, 1), messageIds(feed("")));
+
+        Assert.assertEquals(200, send("DELETE", "/accounts/2/following/3"));
+        Assert.assertEquals(200, send("DELETE", "/messages/" + fromOne));
+        Assert.assertEquals(List.of(1), messageIds(feed("")));
+    }
+
+    /**
+     * Following oneself, following a missing account, and following twice
+     *
+     * Expected Response:
+     *  Status Code: 400 for oneself and missing accounts, 200 when repeating a follow
+     */
+    @Test
+    public void followValidation() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "/accounts/2/following/2"));
+        Assert.assertEquals(400, send("POST", "/accounts/2/following/99"));
+        Assert.assertEquals(400, send("POST", "/accounts/99/following/2"));
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        Assert.assertEquals(List.of(1), messageIds(feed("")));
+    }
+
+    /**
+     * Account 5 follows account 1, making it a celebrity, while accounts 2 and 4 have loaded feeds and only
+     * account 2 follows account 1
+     *
+     * Expected Response:
+     *  Only account 2's feed is loaded again, and it still shows account 1's messages, now merged on read
+     */
+    @Test
+    public void celebrityChangeReloadsOnlyFollowersFeeds() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"user5\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        Assert.assertEquals(200, send("POST", "/accounts/3/following/1"));
+        Assert.assertEquals(200, send("POST", "/accounts/4/following/3"));
+        int fromThree = post(3, "from three");
+        Assert.assertEquals(List.of(1), messageIds(feed(2)));
+        Assert.assertEquals(List.of(fromThree), messageIds(feed(4)));
+        int loads = feedLoads();
+
+        Assert.assertEquals(200, send("POST", "/accounts/5/following/1"));
+        Assert.assertEquals(List.of(fromThree), messageIds(feed(4)));
+        Assert.assertEquals(loads, feedLoads());
+        Assert.assertEquals(List.of(1), messageIds(feed(2)));
+        Assert.assertEquals(loads + 1, feedLoads());
+    }
+
+    /**
+     * Ten concurrent first reads of account 2's feed
+     *
+     * Expected Response:
+     *  Every read returns the same page, and the feed is loaded once
+     */
+    @Test
+    public void concurrentFirstReadsLoadFeedOnce() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1"));
+        int loads = feedLoads();
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/2/feed"))
+                    .build();
+            responses.add(webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(200, response.join().statusCode());
+            Assert.assertEquals(List.of(1), messageIds(objectMapper.readValue(response.join().body(), MessagePage.class)));
+        }
+        Assert.assertEquals(loads + 1, feedLoads());
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.TimelineCache;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountTimelineCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private List<Message> getTimeline() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    /**
+     * Reading account 1's messages, posting an older and a newer message, patching one and deleting another,
+     * reading the messages after each change
+     *
+     * Expected Response:
+     *  Every read reflects the change before it, ordered by time_posted_epoch
+     */
+    @Test
+    public void accountMessagesFollowCreatePatchAndDelete() throws IOException, InterruptedException {
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expected, getTimeline());
+
+        HttpRequest postNewer = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"newer\", \"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpRequest postOlder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"older\", \"time_posted_epoch\": 1669947700}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, send(postNewer));
+        Assert.assertEquals(200, send(postOlder));
+        expected.add(0, new Message(3, 1, "older", 1669947700));
+        expected.add(new Message(2, 1, "newer", 1669947800));
+        Assert.assertEquals(expected, getTimeline());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"patched\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, send(patchRequest));
+        expected.set(2, new Message(2, 1, "patched", 1669947800));
+        Assert.assertEquals(expected, getTimeline());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, send(deleteRequest));
+        expected.remove(1);
+        Assert.assertEquals(expected, getTimeline());
+    }
+
+    /**
+     * Caches a timeline for account 1 holding the given messages.
+     */
+    private static void install(TimelineCache cache, Message... messages) {
+        TimelineCache.Load load = cache.beginLoad(1);
+        for (Message message : messages)
+            load.add(message);
+        cache.install(load);
+    }
+
+    /**
+     * Starting a patch and a delete of the same message, then running the delete's commit callback before the
+     * patch's, as two request threads can
+     *
+     * Expected Result:
+     *  The overlapping changes drop the cached timeline instead of the late patch putting the deleted message back;
+     *  once both have finished, a single change patches the timeline again
+     */
+    @Test
+    public void overlappingChangesDropTimeline() {
+        TimelineCache cache = new TimelineCache(1024 * 1024);
+        Message original = new Message(1, 1, "test message 1", 1669947792);
+        install(cache, original);
+        Assert.assertEquals(1, cache.get(1).size());
+
+        cache.changing(1);
+        cache.changing(1);
+        cache.remove(original);
+        cache.changed(1);
+        cache.put(new Message(1, 1, "patched", 1669947792));
+        cache.changed(1);
+        Assert.assertNull(cache.get(1));
+
+        install(cache, original);
+        cache.changing(1);
+        cache.put(new Message(2, 1, "newer", 1669947800));
+        cache.changed(1);
+        Assert.assertEquals(2, cache.get(1).size());
+        Assert.assertEquals(1L, cache.getStats().get("incremental_updates"));
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.VirtualThreads;
+import io.javalin.Javalin;
+
+public class AsyncHandlersTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient = HttpClient.newHttpClient();
+    ObjectMapper objectMapper = new ObjectMapper();
+    Javalin app;
+    Map<String, String> previousProperties = new HashMap<>();
+
+    /**
+     * Resets the database and starts the Javalin app, after any system properties the test set.
+     * @throws InterruptedException
+     */
+    private void start() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null)
+            app.stop();
+        for (Map.Entry<String, String> property : previousProperties.entrySet()) {
+            if (property.getValue() == null)
+                System.clearProperty(property.getKey());
+            else
+                System.setProperty(property.getKey(), property.getValue());
+        }
+    }
+
+    private void setProperty(String key, String value) {
+        previousProperties.put(key, System.getProperty(key));
+        System.setProperty(key, value);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages, a bad page, and GET localhost:8080/metrics with a
+     * two thread database executor
+     *
+     * Expected Response:
+     *  Status Code: 200, and 400 for the bad page
+     *  Response Body: the messages, and metrics counting the requests run on the executor
+     */
+    @Test
+    public void handlersRunOnDatabaseExecutor() throws IOException, InterruptedException {
+        setProperty("socialmedia.db.threads", "2");
+        start();
+
+        for (int i = 0; i < 5; i++) {
+            HttpResponse<String> response = get("/messages");
+            Assert.assertEquals(200, response.statusCode());
+            List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+            Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), messages);
+        }
+        Assert.assertEquals(400, get("/messages?limit=0").statusCode());
+
+        Map<String, Object> metrics = objectMapper.readValue(get("/metrics").body(), new TypeReference<Map<String, Object>>(){});
+        @SuppressWarnings("unchecked")
+        Map<String, Object> executor = (Map<String, Object>) metrics.get("db_executor");
+        Assert.assertEquals(2, executor.get("threads"));
+        Assert.assertTrue(((Number) executor.get("completed")).longValue() >= 5);
+        Assert.assertEquals(0, ((Number) executor.get("rejected")).longValue());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/1 and GET localhost:8080/metrics with
+     * socialmedia.db.async=false
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the message, served by the blocking handlers, and no executor in the metrics
+     */
+    @Test
+    public void blockingHandlersWhenAsyncIsOff() throws IOException, InterruptedException {
+        setProperty("socialmedia.db.async", "false");
+        start();
+
+        HttpResponse<String> response = get("/messages/1");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(response.body(), Message.class));
+
+        Map<String, Object> metrics = objectMapper.readValue(get("/metrics").body(), new TypeReference<Map<String, Object>>(){});
+        Assert.assertFalse(metrics.containsKey("db_executor"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/1 and GET localhost:8080/metrics with
+     * socialmedia.threads=virtual, which needs Java 21 or later
+     *
+     * Expected Response:
+     *  Status Code: 200, served on a virtual thread with no executor in the metrics, or the controller refusing
+     *  to start on an older JDK
+     */
+    @Test
+    public void handlersRunOnVirtualThreads() throws IOException, InterruptedException {
+        setProperty("socialmedia.threads", "virtual");
+        if (VirtualThreads.isSupported() == false) {
+            Assert.assertThrows(IllegalStateException.class, SocialMediaController::new);
+            return;
+        }
+        start();
+
+        HttpResponse<String> response = get("/messages/1");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(response.body(), Message.class));
+
+        Map<String, Object> metrics = objectMapper.readValue(get("/metrics").body(), new TypeReference<Map<String, Object>>(){});
+        Assert.assertFalse(metrics.containsKey("db_executor"));
+    }
+}
@@ -0,0 +1,99 @@
+package Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.JsonCodecs;
+import Model.Message;
+
+/**
+ * Cost of the JSON work in one POST /messages request: parsing the request
+ * body into a Message and writing the created Message back. perRequest is how
+ * the handlers used to do it, with a new ObjectMapper each time, the body read
+ * into a String and the response written to a String first. shared uses the
+ * pre-built readers and writers of Controller.JsonCodecs, reading the body
+ * stream and writing into the response stream. Teardown of every iteration
+ * prints the bytes the benchmark thread allocated per request.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=JsonCodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"perRequest", "shared"})
+    public String codec;
+
+    private byte[] body;
+    private Message created;
+    private ByteArrayOutputStream response = new ByteArrayOutputStream(512);
+
+    private com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long allocatedBefore;
+    private long requests;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        body = "{\"posted_by\":1,\"message_text\":\"a message of about the length people post\",\"time_posted_epoch\":1669947792}"
+                .getBytes(StandardCharsets.UTF_8);
+        created = new Message(1, 1, "a message of about the length people post", 1669947792L);
+    }
+
+    @Setup(Level.Iteration)
+    public void startCounting()
+    {
+        requests = 0;
+        allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @TearDown(Level.Iteration)
+    public void printAllocation()
+    {
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        System.out.println();
+        System.out.println(codec + ": " + (allocated / Math.max(requests, 1)) + " bytes allocated per request");
+    }
+
+    @Benchmark
+    public int request() throws IOException
+    {
+        requests++;
+        response.reset();
+        if(codec.equals("perRequest"))
+        {
+            ObjectMapper mapper = new ObjectMapper();
+            Message message = mapper.readValue(new String(body, StandardCharsets.UTF_8), Message.class);
+            response.write(mapper.writeValueAsString(created).getBytes(StandardCharsets.UTF_8));
+            return message.getPosted_by() + response.size();
+        }
+
+        Message message = JsonCodecs.MESSAGE_READER.readValue(new ByteArrayInputStream(body));
+        JsonCodecs.MESSAGE_WRITER.writeValue(response, created);
+        return message.getPosted_by() + response.size();
+    }
+}
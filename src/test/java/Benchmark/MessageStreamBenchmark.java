@@ -0,0 +1,152 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Cost of holding many idle GET /messages/stream subscribers, and the time for
+ * one new message to reach all of them. Setup opens the subscriber streams and
+ * prints the live threads and heap retained per connection once they are idle;
+ * client and server run in the same JVM, so the heap figure covers both ends.
+ * Each invocation posts one message and waits until every subscriber has
+ * received its created event.
+ *
+ * Every subscriber holds a connection, so the process needs about two file
+ * descriptors per subscriber; lower -p subscribers where ulimit -n is smaller.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=MessageStreamBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageStreamBenchmark {
+
+    @Param({"1000", "10000"})
+    public int subscribers;
+
+    private Javalin app;
+    private HttpClient client;
+    private HttpRequest postMessage;
+    private final Semaphore received = new Semaphore(0);
+
+    /**
+     * Counts the created events a subscriber receives, without a thread of its own.
+     */
+    private class Subscriber implements Flow.Subscriber<String>
+    {
+        private final CountDownLatch connected;
+
+        Subscriber(CountDownLatch connected)
+        {
+            this.connected = connected;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            subscription.request(Long.MAX_VALUE);
+            connected.countDown();
+        }
+
+        @Override
+        public void onNext(String line)
+        {
+            if(line.equals("event: created"))
+                received.release();
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+        }
+
+        @Override
+        public void onComplete()
+        {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException
+    {
+        //Each fork is a fresh JVM, so the properties are set before ConnectionUtil loads
+        System.setProperty("socialmedia.db.url", "jdbc:h2:./h2/bench;");
+        ConnectionUtil.resetTestDatabase();
+
+        app = new SocialMediaController().startAPI();
+        app.start(8081);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        postMessage = HttpRequest.newBuilder(URI.create("http://localhost:8081/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"bench message\", \"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heapBefore = usedHeapAfterGc();
+
+        CountDownLatch connected = new CountDownLatch(subscribers);
+        HttpRequest subscribe = HttpRequest.newBuilder(URI.create("http://localhost:8081/messages/stream"))
+                .header("Accept", "text/event-stream")
+                .build();
+        for(int i = 0; i < subscribers; i++)
+            client.sendAsync(subscribe, HttpResponse.BodyHandlers.fromLineSubscriber(new Subscriber(connected)));
+        if(connected.await(2, TimeUnit.MINUTES) == false)
+            throw new IllegalStateException(connected.getCount() + " subscribers did not connect");
+
+        long retained = usedHeapAfterGc() - heapBefore;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        System.out.println();
+        System.out.println(subscribers + " idle subscribers: " + retained / subscribers + " bytes of heap each, "
+                + threads + " more live threads");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        app.stop();
+    }
+
+    @Benchmark
+    public void fanOut() throws IOException, InterruptedException
+    {
+        client.send(postMessage, HttpResponse.BodyHandlers.discarding());
+        received.acquire(subscribers);
+    }
+
+    private static long usedHeapAfterGc()
+    {
+        System.gc();
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,119 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Request latency of the running API under mixed load, with handlers that
+ * block their Jetty thread (async=false) and with handlers that hand their
+ * database work to the bounded database executor (async=true). Four clients
+ * stream every one of 10,000 messages from GET /messages while four others
+ * fetch single messages by ID; JMH reports the latency distribution of each
+ * kind of request, and the sample counts give the throughput.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=MixedLoadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MixedLoadBenchmark {
+
+    private static final int MESSAGES = 10000;
+
+    @Param({"false", "true"})
+    public String async;
+
+    private Javalin app;
+    private HttpClient client;
+    private URI allMessages;
+    private List<URI> singleMessages = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException
+    {
+        //Each fork is a fresh JVM, so the properties are set before ConnectionUtil loads
+        System.setProperty("socialmedia.db.url", "jdbc:h2:./h2/bench;");
+        System.setProperty("socialmedia.db.async", async);
+        ConnectionUtil.resetTestDatabase();
+
+        List<Message> messages = new ArrayList<>();
+        for(int i = 0; i < MESSAGES; i++)
+            messages.add(new Message(1, "bench message " + i, 1669947792L + i));
+        new MessageDAO().createMessages(messages);
+
+        app = new SocialMediaController().startAPI();
+        app.start(8081);
+        client = HttpClient.newHttpClient();
+        allMessages = URI.create("http://localhost:8081/messages");
+        for(int id = 1; id <= MESSAGES; id++)
+            singleMessages.add(URI.create("http://localhost:8081/messages/" + id));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        app.stop();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public long fullScan() throws IOException, InterruptedException
+    {
+        return drain(client.send(HttpRequest.newBuilder(allMessages).build(), HttpResponse.BodyHandlers.ofInputStream()));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public int getMessageById() throws IOException, InterruptedException
+    {
+        URI uri = singleMessages.get(ThreadLocalRandom.current().nextInt(MESSAGES));
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()).body().length();
+    }
+
+    private static long drain(HttpResponse<InputStream> response) throws IOException
+    {
+        long bytes = 0;
+        byte[] buffer = new byte[8192];
+        try(InputStream body = response.body())
+        {
+            for(int read; (read = body.read(buffer)) != -1;)
+                bytes += read;
+        }
+        return bytes;
+    }
+}
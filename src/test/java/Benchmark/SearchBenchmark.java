@@ -0,0 +1,100 @@
+package Benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Service.SearchIndex;
+
+/**
+ * Query latency of the search index as the corpus grows. Setup indexes
+ * messageCount messages of twelve words each, drawn from a Zipf-like
+ * vocabulary so a few words appear in most messages and most words are
+ * rare. Each benchmark asks for the first page of 50 matches: a rare word,
+ * a common word, and an AND of two common words whose lists must be
+ * intersected.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=SearchBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class SearchBenchmark {
+
+    private static final int VOCABULARY = 50000;
+    private static final int WORDS_PER_MESSAGE = 12;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    public int messageCount;
+
+    private SearchIndex index;
+    private List<String> rareTerm;
+    private List<String> commonTerm;
+    private List<String> commonPair;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        index = new SearchIndex();
+        Random random = new Random(42);
+        for(int i = 1; i <= messageCount; i++)
+        {
+            StringBuilder text = new StringBuilder();
+            for(int w = 0; w < WORDS_PER_MESSAGE; w++)
+                text.append(word(random)).append(' ');
+            index.add(new Message(i, 1, text.toString(), 1669947792L + i));
+        }
+
+        rareTerm = List.of("w" + (VOCABULARY - 1));
+        commonTerm = List.of("w0");
+        commonPair = List.of("w1", "w2");
+
+        System.out.println();
+        System.out.println(index.getStats());
+    }
+
+    @Benchmark
+    public int[] rareWord()
+    {
+        return index.search(rareTerm, Integer.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public int[] commonWord()
+    {
+        return index.search(commonTerm, Integer.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public int[] twoCommonWords()
+    {
+        return index.search(commonPair, Integer.MAX_VALUE, PAGE_SIZE);
+    }
+
+    /**
+     * Picks a word with probability falling off roughly as 1/rank.
+     */
+    private static String word(Random random)
+    {
+        int rank = (int) Math.pow(VOCABULARY, random.nextDouble()) - 1;
+        return "w" + rank;
+    }
+}
@@ -0,0 +1,72 @@
+package Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.JdbcStorageEngine;
+import DAO.MessageStore;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Message inserts per second from eight threads posting for 64 accounts, with
+ * the messages kept in one database or spread over several. Each insert
+ * commits on its own, so every shard's writes queue behind that shard's
+ * database only.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=ShardedWriteBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ShardedWriteBenchmark {
+
+    private static final int ACCOUNTS = 64;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private MessageStore messageStore;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        //Each fork is a fresh JVM, so the shard count is set before ConnectionUtil loads
+        System.setProperty("socialmedia.db.url", "jdbc:h2:./h2/bench;");
+        System.setProperty("socialmedia.shards", Integer.toString(shards));
+        System.setProperty("socialmedia.pool.maxSize", "8");
+        ConnectionUtil.resetTestDatabase();
+
+        AccountDAO accountDAO = new AccountDAO();
+        for(int i = 2; i <= ACCOUNTS; i++)
+            accountDAO.registerAccount(new Account("benchuser" + i, "password"));
+        messageStore = new JdbcStorageEngine().getMessageStore();
+    }
+
+    @Benchmark
+    public Message createMessage()
+    {
+        int accountId = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return messageStore.createMessage(new Message(accountId, "bench message", 1669947792L));
+    }
+}
@@ -0,0 +1,79 @@
+package Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Cost per call of the hot DAO reads with and without the per-connection
+ * prepared statement cache. A statementCacheSize of 0 prepares every statement
+ * afresh, which is how the DAOs behaved before the cache existed.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=StatementCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    private MessageDAO messageDAO;
+    private AccountDAO accountDAO;
+    private int messageId;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        //Each fork is a fresh JVM, so the pool is sized before ConnectionUtil loads
+        System.setProperty("socialmedia.db.url", "jdbc:h2:./h2/bench;");
+        System.setProperty("socialmedia.pool.statementCacheSize", Integer.toString(statementCacheSize));
+        ConnectionUtil.resetTestDatabase();
+
+        messageDAO = new MessageDAO();
+        accountDAO = new AccountDAO();
+        accountDAO.registerAccount(new Account("benchuser", "password"));
+        for(int i = 0; i < 1000; i++)
+            messageId = messageDAO.createMessage(new Message(1, "bench message " + i, 1669947792L + i)).getMessage_id();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        System.out.println(ConnectionUtil.getPool().getStats());
+    }
+
+    @Benchmark
+    public Message getMessageById()
+    {
+        return messageDAO.getMessageById(messageId);
+    }
+
+    @Benchmark
+    public Account getAccountByUsername()
+    {
+        return accountDAO.getAccountByUsername("benchuser");
+    }
+}
@@ -0,0 +1,141 @@
+package Benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.InMemoryStorageEngine;
+import DAO.MessageStore;
+import Model.Account;
+import Model.Message;
+
+/**
+ * Heap and GC cost of keeping message text as heap Strings versus UTF-8 in
+ * off-heap slabs, in the in-memory engine. Setup loads messageCount messages
+ * of about 100 characters each and prints the heap retained per message after
+ * a full GC. Teardown prints the collections and GC time spent during the
+ * measured reads and patches, alongside the engine's own text store metrics.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=TextStorageBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class TextStorageBenchmark {
+
+    @Param({"heap", "offheap"})
+    public String textStore;
+
+    @Param({"2000000"})
+    public int messageCount;
+
+    private InMemoryStorageEngine engine;
+    private MessageStore messageStore;
+    private long gcCountBefore;
+    private long gcMillisBefore;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        System.setProperty("socialmedia.memory.text", textStore);
+        long heapBefore = usedHeapAfterGc();
+
+        engine = new InMemoryStorageEngine(null);
+        engine.getAccountStore().registerAccount(new Account("benchuser", "password"));
+        messageStore = engine.getMessageStore();
+
+        List<Message> batch = new ArrayList<>();
+        for(int i = 0; i < messageCount; i++)
+        {
+            batch.add(new Message(1, randomText(i), 1669947792L + i));
+            if(batch.size() == 10000)
+            {
+                messageStore.createMessages(batch);
+                batch.clear();
+            }
+        }
+        messageStore.createMessages(batch);
+
+        long retained = usedHeapAfterGc() - heapBefore;
+        System.out.println();
+        System.out.println(textStore + ": " + retained / messageCount + " heap bytes per message");
+        System.out.println(engine.getMetrics());
+
+        gcCountBefore = gcCount();
+        gcMillisBefore = gcMillis();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        System.out.println();
+        System.out.println(textStore + ": " + (gcCount() - gcCountBefore) + " collections, "
+                + (gcMillis() - gcMillisBefore) + " ms of GC while measuring");
+    }
+
+    @Benchmark
+    public Message getMessageById()
+    {
+        return messageStore.getMessageById(1 + ThreadLocalRandom.current().nextInt(messageCount));
+    }
+
+    @Benchmark
+    public Message patchMessageById()
+    {
+        int messageId = 1 + ThreadLocalRandom.current().nextInt(messageCount);
+        return messageStore.patchMessageById(messageId, randomText(messageId));
+    }
+
+    private static String randomText(int seed)
+    {
+        StringBuilder text = new StringBuilder("message " + seed + " ");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while(text.length() < 100)
+            text.append((char) ('a' + random.nextInt(26)));
+        return text.toString();
+    }
+
+    private static long usedHeapAfterGc()
+    {
+        for(int i = 0; i < 3; i++)
+            System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis()
+    {
+        long millis = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+}
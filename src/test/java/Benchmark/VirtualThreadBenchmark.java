@@ -0,0 +1,119 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Request throughput of the running API when 10,000 clients each have a
+ * GET /messages/{message_id} in flight at once, served by Jetty's platform
+ * thread pool and the database executor (threads=platform) or with every
+ * request on its own virtual thread (threads=virtual, Java 21 or later).
+ * Each invocation sends one request per client and waits for all of them;
+ * the requests counter is the number of responses per second and errors
+ * counts the ones that were not 200.
+ *
+ * Every client holds its own connection, so the process needs about two
+ * file descriptors per client; lower -p clients where ulimit -n is smaller.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=VirtualThreadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    private static final int MESSAGES = 10000;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"10000"})
+    public int clients;
+
+    private Javalin app;
+    private HttpClient client;
+    private List<URI> singleMessages = new ArrayList<>();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Responses
+    {
+        public long requests;
+        public long errors;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException
+    {
+        //Each fork is a fresh JVM, so the properties are set before ConnectionUtil loads
+        System.setProperty("socialmedia.db.url", "jdbc:h2:./h2/bench;");
+        System.setProperty("socialmedia.threads", threads);
+        ConnectionUtil.resetTestDatabase();
+
+        List<Message> messages = new ArrayList<>();
+        for(int i = 0; i < MESSAGES; i++)
+            messages.add(new Message(1, "bench message " + i, 1669947792L + i));
+        new MessageDAO().createMessages(messages);
+
+        app = new SocialMediaController().startAPI();
+        app.start(8081);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        for(int id = 1; id <= MESSAGES; id++)
+            singleMessages.add(URI.create("http://localhost:8081/messages/" + id));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        app.stop();
+    }
+
+    @Benchmark
+    public void concurrentClients(Responses responses)
+    {
+        List<CompletableFuture<HttpResponse<Void>>> inFlight = new ArrayList<>(clients);
+        for(int i = 0; i < clients; i++)
+        {
+            URI uri = singleMessages.get(ThreadLocalRandom.current().nextInt(MESSAGES));
+            inFlight.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+        }
+        for(CompletableFuture<HttpResponse<Void>> response : inFlight)
+        {
+            if(response.handle((r, e) -> e == null && r.statusCode() == 200).join())
+                responses.requests++;
+            else
+                responses.errors++;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import Controller.JsonCodecs;
+import Controller.MessageRowCodec;
+import Model.Message;
+
+/**
+ * Encode and decode time per message, and bytes per message, of the JSON array
+ * and the binary row format that the bulk message endpoints can return. Each
+ * invocation encodes a page of 1,000 messages the way the controller streams
+ * them, or decodes such a page the way the batch endpoint reads it; scores are
+ * per message. Setup prints the encoded size per message.
+ *
+ * mvn -P bench test-compile exec:exec -Dbench=WireFormatBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"json", "rows"})
+    public String format;
+
+    private List<Message> messages = new ArrayList<>();
+    private ByteArrayOutputStream out = new ByteArrayOutputStream(256 * MESSAGES);
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        Random random = new Random(42);
+        String[] words = {"the", "release", "ships", "today", "thanks", "everyone", "who", "helped", "with", "testing"};
+        for(int i = 0; i < MESSAGES; i++)
+        {
+            StringBuilder text = new StringBuilder();
+            for(int w = 0, count = 5 + random.nextInt(15); w < count; w++)
+                text.append(w == 0 ? "" : " ").append(words[random.nextInt(words.length)]);
+            messages.add(new Message(100000 + i, 1 + random.nextInt(5000), text.toString(), 1669947792L + i * 17L));
+        }
+
+        encode();
+        encoded = out.toByteArray();
+        System.out.println();
+        System.out.println(format + ": " + (double) encoded.length / MESSAGES + " bytes per message");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int encode() throws IOException
+    {
+        out.reset();
+        if(format.equals("json"))
+        {
+            JsonGenerator generator = JsonCodecs.MAPPER.getFactory().createGenerator(out);
+            generator.writeStartArray();
+            for(Message message : messages)
+                JsonCodecs.MESSAGE_WRITER.writeValue(generator, message);
+            generator.writeEndArray();
+            generator.flush();
+        }
+        else
+        {
+            MessageRowCodec.Writer writer = new MessageRowCodec.Writer(out);
+            for(Message message : messages)
+                writer.write(message);
+            writer.flush();
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int decode() throws IOException
+    {
+        if(format.equals("json"))
+        {
+            Message[] decoded = JsonCodecs.MESSAGE_ARRAY_READER.readValue(new ByteArrayInputStream(encoded));
+            return decoded.length;
+        }
+        return MessageRowCodec.readMessages(new ByteArrayInputStream(encoded), MESSAGES).size();
+    }
+}
@@ -0,0 +1,193 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.PoolExhaustedException;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a pool of two connections to a private in-memory database, with a short borrow
+     * timeout and leak detection off.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        pool = new ConnectionPool(dataSource, 2, 200, 0, 8);
+    }
+
+    @After
+    public void tearDown() {
+        pool.evictIdle();
+    }
+
+    /**
+     * Borrowing a third connection from a pool of two while both are held
+     *
+     * Expected Result:
+     *  PoolExhaustedException after the borrow timeout, and the timeout counted
+     */
+    @Test
+    public void borrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+
+        long start = System.nanoTime();
+        PoolExhaustedException e = Assert.assertThrows(PoolExhaustedException.class, pool::borrow);
+        Assert.assertTrue((System.nanoTime() - start) / 1000000 >= 150);
+        Assert.assertTrue(e.getMessage().contains("200 ms"));
+        Assert.assertEquals(1L, pool.getStats().get("timeouts"));
+
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Closing a borrowed connection, then borrowing again
+     *
+     * Expected Result:
+     *  The physical connection goes back to the idle set and is handed out again instead of a new one
+     */
+    @Test
+    public void closeReturnsConnectionToPool() throws SQLException {
+        Connection connection = pool.borrow();
+        Assert.assertEquals(1, pool.getActiveCount());
+        connection.close();
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Connection again = pool.borrow();
+        Assert.assertEquals(1L, pool.getStats().get("created"));
+        again.close();
+    }
+
+    /**
+     * Closing a borrowed connection twice, then using it
+     *
+     * Expected Result:
+     *  The second close does nothing, so only one permit is returned, and use after close fails
+     */
+    @Test
+    public void doubleCloseReturnsConnectionOnce() throws SQLException {
+        Connection connection = pool.borrow();
+        connection.close();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        Assert.assertThrows(PoolExhaustedException.class, pool::borrow);
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Closing the physical connection behind an idle pooled connection, then borrowing
+     *
+     * Expected Result:
+     *  The broken connection is discarded and a new working one is opened in its place
+     */
+    @Test
+    public void invalidIdleConnectionIsReplaced() throws SQLException {
+        Connection connection = pool.borrow();
+        Connection physical = connection.unwrap(Connection.class);
+        connection.close();
+        physical.close();
+
+        Connection replacement = pool.borrow();
+        Assert.assertTrue(replacement.isValid(1));
+        Assert.assertEquals(1L, pool.getStats().get("discarded"));
+        Assert.assertEquals(2L, pool.getStats().get("created"));
+        replacement.close();
+    }
+
+    /**
+     * Preparing, closing and preparing the same SQL again on one connection
+     *
+     * Expected Result:
+     *  The second prepare is a cache hit, the statement still works after the caller closed it, and its old
+     *  parameters are cleared
+     */
+    @Test
+    public void closedStatementIsReusedFromCache() throws SQLException {
+        Connection connection = pool.borrow();
+        PreparedStatement first = connection.prepareStatement("SELECT ?");
+        first.setInt(1, 7);
+        ResultSet rs = first.executeQuery();
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        Assert.assertTrue(rs.isClosed());
+        Assert.assertThrows(SQLException.class, first::executeQuery);
+
+        PreparedStatement second = connection.prepareStatement("SELECT ?");
+        Assert.assertFalse(second.isClosed());
+        Assert.assertThrows(SQLException.class, second::executeQuery);
+        second.setInt(1, 8);
+        ResultSet again = second.executeQuery();
+        Assert.assertTrue(again.next());
+        Assert.assertEquals(8, again.getInt(1));
+        Assert.assertEquals(1L, pool.getStats().get("statement_cache_hits"));
+        Assert.assertEquals(1L, pool.getStats().get("statement_cache_misses"));
+        Assert.assertSame(connection, second.getConnection());
+        connection.close();
+    }
+
+    /**
+     * Preparing the same SQL twice on one connection without closing the first statement
+     *
+     * Expected Result:
+     *  The second caller gets its own statement, so reading it does not disturb the first result set
+     */
+    @Test
+    public void statementInUseIsNotShared() throws SQLException {
+        Connection connection = pool.borrow();
+        PreparedStatement outer = connection.prepareStatement("SELECT X FROM SYSTEM_RANGE(1, ?)");
+        outer.setInt(1, 3);
+        ResultSet outerRs = outer.executeQuery();
+        Assert.assertTrue(outerRs.next());
+
+        PreparedStatement inner = connection.prepareStatement("SELECT X FROM SYSTEM_RANGE(1, ?)");
+        inner.setInt(1, 1);
+        ResultSet innerRs = inner.executeQuery();
+        Assert.assertTrue(innerRs.next());
+        inner.close();
+
+        Assert.assertTrue(outerRs.next());
+        Assert.assertEquals(2, outerRs.getInt(1));
+        Assert.assertEquals(2L, pool.getStats().get("statement_cache_misses"));
+        connection.close();
+    }
+
+    /**
+     * Returning a connection without closing its statement, then borrowing it again
+     *
+     * Expected Result:
+     *  The statement was released with the connection, so preparing the same SQL is a cache hit
+     */
+    @Test
+    public void unclosedStatementIsReleasedWithConnection() throws SQLException {
+        Connection connection = pool.borrow();
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        statement.executeQuery();
+        connection.close();
+        Assert.assertTrue(statement.isClosed());
+
+        Connection again = pool.borrow();
+        ResultSet rs = again.prepareStatement("SELECT 1").executeQuery();
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(1L, pool.getStats().get("statement_cache_hits"));
+        again.close();
+    }
+}
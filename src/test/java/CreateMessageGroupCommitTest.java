@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountIdIndex;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.GroupCommitWriter;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageGroupCommitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, turn group commit on, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.groupCommit", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.groupCommit");
+    }
+
+    /**
+     * Sending 20 concurrent http requests to POST localhost:8080/messages with group commit on
+     *
+     * Expected Response:
+     *  Status Code: 200 for every request
+     *  Response Body: each message with its own message_id, all of them persisted
+     */
+    @Test
+    public void createMessagesConcurrentlyWithGroupCommit() throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"group message " + i + "\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            responses.add(webClient.sendAsync(postMessageRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        Set<Integer> messageIds = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> future : responses) {
+            HttpResponse<String> response = future.join();
+            Assert.assertEquals(200, response.statusCode());
+            Message created = objectMapper.readValue(response.body(), Message.class);
+            Assert.assertTrue(created.getMessage_text().startsWith("group message"));
+            messageIds.add(created.getMessage_id());
+        }
+        Assert.assertEquals(20, messageIds.size());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(getResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(21, messages.size());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with group commit on, for a user that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessageUserNotInDbWithGroupCommit() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":3, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Closing a group commit writer while requests are writing to it, then writing to it again
+     *
+     * Expected Result:
+     *  Every write either returns its committed message or is refused with RejectedExecutionException, none is
+     *  left waiting, every returned message is in the database, and a write after close() is refused straight away
+     */
+    @Test
+    public void closeWritesQueuedMessagesThenRefusesWrites() throws InterruptedException, SQLException {
+        GroupCommitWriter writer = new GroupCommitWriter(new MessageDAO(AccountIdIndex.load()));
+        List<CompletableFuture<Message>> writes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Message message = new Message(1, "closing message " + i, 1669947792);
+            writes.add(CompletableFuture.supplyAsync(() -> writer.write(message)));
+        }
+        while (writer.getStats().get("rows").equals(0L))
+            Thread.sleep(1);
+        writer.close();
+        Assert.assertEquals(0, writer.getStats().get("queue_depth"));
+
+        int written = 0;
+        for (CompletableFuture<Message> write : writes) {
+            try {
+                Assert.assertNotNull(write.join());
+                written++;
+            } catch (CompletionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        Assert.assertTrue(written > 0);
+        Assert.assertEquals((long) written, writer.getStats().get("rows"));
+        Assert.assertThrows(RejectedExecutionException.class,
+                () -> writer.write(new Message(1, "after close", 1669947792)));
+
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            ResultSet rs = connection.prepareStatement("SELECT COUNT(*) FROM Message").executeQuery();
+            rs.next();
+            Assert.assertEquals(1 + written, rs.getInt(1));
+        } finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+    }
+}
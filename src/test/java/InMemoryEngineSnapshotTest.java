@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryStorageEngine;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class InMemoryEngineSnapshotTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path snapshot;
+    Map<String, String> previousProperties = new HashMap<>();
+
+    /**
+     * Before every test, reset the database and switch to the in-memory engine, importing from the database
+     * and snapshotting to a temporary file.
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        snapshot = Files.createTempDirectory("socialmedia").resolve("snapshot.bin");
+        setProperty("socialmedia.engine", "memory");
+        setProperty("socialmedia.memory.import", "true");
+        setProperty("socialmedia.memory.snapshot", snapshot.toString());
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (app != null)
+            app.stop();
+        //Putting back whatever the build set, such as the memory-engine profile's properties
+        for (Map.Entry<String, String> property : previousProperties.entrySet()) {
+            if (property.getValue() == null)
+                System.clearProperty(property.getKey());
+            else
+                System.setProperty(property.getKey(), property.getValue());
+        }
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(snapshot.getParent());
+    }
+
+    private void setProperty(String key, String value) {
+        previousProperties.put(key, System.getProperty(key));
+        System.setProperty(key, value);
+    }
+
+    private void startApp() throws InterruptedException {
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    /**
+     * Posting a message to the in-memory engine, stopping the server, then starting a new one from the snapshot
+     * after the database has been reset
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages on the new server returns the imported message and the posted one
+     */
+    @Test
+    public void messagesSurviveRestartThroughSnapshot() throws IOException, InterruptedException {
+        startApp();
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        app.stop();
+        Assert.assertTrue(Files.exists(snapshot));
+
+        //The snapshot, not the database, is what the new server starts from
+        ConnectionUtil.resetTestDatabase();
+        startApp();
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "hello message", 1669947792)), messages);
+    }
+
+    /**
+     * Writing a snapshot into a directory that does not exist
+     *
+     * Expected Result:
+     *  The write fails with IllegalStateException instead of being reported and ignored
+     */
+    @Test
+    public void failedSnapshotIsThrown() {
+        Path unwritable = snapshot.resolveSibling("missing").resolve("snapshot.bin");
+        InMemoryStorageEngine engine = new InMemoryStorageEngine(unwritable);
+        IllegalStateException e = Assert.assertThrows(IllegalStateException.class, engine::snapshot);
+        Assert.assertTrue(e.getMessage().contains(unwritable.toString()));
+        Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+
+    /**
+     * Starting the in-memory engine with an import from a database whose follow table is missing
+     *
+     * Expected Result:
+     *  Startup fails with IllegalStateException instead of serving the part of the database read before the failure
+     */
+    @Test
+    public void failedImportStopsStartup() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.createStatement().execute("DROP TABLE Follow");
+        } finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+
+        IllegalStateException e = Assert.assertThrows(IllegalStateException.class,
+                InMemoryStorageEngine::fromSystemProperties);
+        Assert.assertTrue(e.getCause() instanceof SQLException);
+        Assert.assertFalse(Files.exists(snapshot));
+    }
+}
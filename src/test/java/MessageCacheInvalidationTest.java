@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageCache;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageCacheInvalidationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Reading message 1, patching it, then reading it again
+     *
+     * Expected Response:
+     *  The second read returns the patched text, not the cached original
+     */
+    @Test
+    public void getMessageAfterPatchReturnsNewText() throws IOException, InterruptedException {
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(get("/messages/1").body(), Message.class));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+                objectMapper.readValue(get("/messages/1").body(), Message.class));
+    }
+
+    /**
+     * Reading message 1, deleting it, then reading it again
+     *
+     * Expected Response:
+     *  The second read has an empty body
+     */
+    @Test
+    public void getMessageAfterDeleteIsEmpty() throws IOException, InterruptedException {
+        Assert.assertFalse(get("/messages/1").body().isEmpty());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get("/messages/1");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().isEmpty());
+    }
+
+    /**
+     * Reading message 2 before it exists, creating it, then reading it again
+     *
+     * Expected Response:
+     *  The second read returns the new message instead of the cached miss
+     */
+    @Test
+    public void getMessageAfterCreateReplacesCachedMiss() throws IOException, InterruptedException {
+        Assert.assertTrue(get("/messages/2").body().isEmpty());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792),
+                objectMapper.readValue(get("/messages/2").body(), Message.class));
+    }
+
+    /**
+     * Loading message 1 into a cache while message 2 is invalidated, then while message 1 itself is
+     *
+     * Expected Result:
+     *  An invalidation of another ID does not stop the load filling the cache, so the next read is a hit; an
+     *  invalidation of the loaded ID does, so the next read loads again
+     */
+    @Test
+    public void onlyInvalidationOfLoadedIdRefusesFill() {
+        MessageCache cache = new MessageCache(100, 60000, 1000);
+        int[] loads = new int[1];
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+
+        cache.get(1, id -> {
+            loads[0]++;
+            cache.invalidate(2);
+            return message;
+        });
+        Assert.assertEquals(message, cache.get(1, id -> {
+            loads[0]++;
+            return message;
+        }));
+        Assert.assertEquals(1, loads[0]);
+        Assert.assertEquals(1L, cache.getStats().get("hits"));
+
+        cache.invalidate(1);
+        cache.get(1, id -> {
+            loads[0]++;
+            cache.invalidate(1);
+            return message;
+        });
+        cache.get(1, id -> {
+            loads[0]++;
+            return message;
+        });
+        Assert.assertEquals(3, loads[0]);
+    }
+}
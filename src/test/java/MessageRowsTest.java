@@ -0,0 +1,211 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.MessageRowCodec;
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageRowsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<byte[]> getRows(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept", MessageRowCodec.CONTENT_TYPE)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private List<Message> readRows(byte[] body) throws IOException {
+        return MessageRowCodec.readMessages(new ByteArrayInputStream(body), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with binary rows, including non-ASCII text and
+     * a null text, then GET localhost:8080/messages and GET localhost:8080/accounts/1/messages accepting rows
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON results for the batch, then every message as binary rows
+     */
+    @Test
+    public void messageRowsRoundTrip() throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        MessageRowCodec.Writer writer = new MessageRowCodec.Writer(body);
+        writer.write(new Message(1, "h\u00e9llo w\u00f6rld \u2713", 1669947793));
+        writer.write(new Message(1, null, 1669947794));
+        writer.write(new Message(1, "plain", 1669947795));
+        writer.flush();
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .header("Content-Type", MessageRowCodec.CONTENT_TYPE)
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(), new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(new Message(2, 1, "h\u00e9llo w\u00f6rld \u2713", 1669947793), results.get(0).getMessage());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertEquals(new Message(3, 1, "plain", 1669947795), results.get(2).getMessage());
+
+        List<Message> expected = new ArrayList<>(Arrays.asList(
+                new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "h\u00e9llo w\u00f6rld \u2713", 1669947793),
+                new Message(3, 1, "plain", 1669947795)));
+
+        HttpResponse<byte[]> all = getRows("/messages");
+        Assert.assertEquals(200, all.statusCode());
+        Assert.assertEquals(MessageRowCodec.CONTENT_TYPE, all.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(expected, readRows(all.body()));
+
+        HttpResponse<byte[]> account = getRows("/accounts/1/messages");
+        Assert.assertEquals(200, account.statusCode());
+        Assert.assertEquals(expected, readRows(account.body()));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a row cut off part way through its text
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void truncatedMessageRowsAreRejected() throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        MessageRowCodec.Writer writer = new MessageRowCodec.Writer(body);
+        writer.write(new Message(1, "cut off here", 1669947793));
+        writer.flush();
+        byte[] truncated = Arrays.copyOf(body.toByteArray(), body.size() - 3);
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(truncated))
+                .header("Content-Type", MessageRowCodec.CONTENT_TYPE)
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Writes a value as an unsigned varint, the way the codec does.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Encodes one row by hand, with any IDs and text length, so it can hold values no Message allows. The text is
+     * textBytes bytes of 'a', whatever length is given.
+     */
+    private static byte[] row(long messageId, long postedBy, long length, int textBytes) {
+        ByteArrayOutputStream row = new ByteArrayOutputStream();
+        writeVarint(row, messageId);
+        writeVarint(row, postedBy);
+        writeVarint(row, 2);
+        writeVarint(row, length);
+        byte[] text = new byte[textBytes];
+        Arrays.fill(text, (byte) 'a');
+        row.writeBytes(text);
+        return row.toByteArray();
+    }
+
+    private static byte[] rowWithTextBytes(int textBytes) {
+        return row(1, 1, textBytes + 1, textBytes);
+    }
+
+    /**
+     * Reading a row whose text is the longest a 255 character message can encode to, and one a byte longer
+     *
+     * Expected Result:
+     *  The first is read; the second is rejected with IOException from its length alone, before its text is read
+     */
+    @Test
+    public void oversizedTextLengthIsRejected() throws IOException {
+        List<Message> longest = MessageRowCodec.readMessages(new ByteArrayInputStream(rowWithTextBytes(255 * 4)), 1);
+        Assert.assertEquals(255 * 4, longest.get(0).getMessage_text().length());
+
+        ByteArrayInputStream oversized = new ByteArrayInputStream(rowWithTextBytes(255 * 4 + 1));
+        Assert.assertThrows(IOException.class, () -> MessageRowCodec.readMessages(oversized, 1));
+        Assert.assertEquals(255 * 4 + 1, oversized.available());
+    }
+
+    /**
+     * Reading rows whose message_id or posted_by is over 32 bits, next to one using the largest 32 bit IDs
+     *
+     * Expected Result:
+     *  The largest 32 bit IDs are read; larger ones are rejected with IOException instead of being cut down to
+     *  some other ID, such as account 1
+     */
+    @Test
+    public void idsOver32BitsAreRejected() throws IOException {
+        List<Message> largest = MessageRowCodec.readMessages(new ByteArrayInputStream(row(0xFFFFFFFFL, 0xFFFFFFFFL, 3, 2)), 1);
+        Assert.assertEquals(-1, largest.get(0).getMessage_id());
+        Assert.assertEquals(-1, largest.get(0).getPosted_by());
+
+        Assert.assertThrows(IOException.class,
+                () -> MessageRowCodec.readMessages(new ByteArrayInputStream(row(1L << 32, 1, 3, 2)), 1));
+        Assert.assertThrows(IOException.class,
+                () -> MessageRowCodec.readMessages(new ByteArrayInputStream(row(1, (1L << 32) + 1, 3, 2)), 1));
+    }
+
+    /**
+     * Reading a row whose text length is a ten byte varint that decodes to a negative number
+     *
+     * Expected Result:
+     *  IOException, instead of the row being read with no text
+     */
+    @Test
+    public void negativeTextLengthIsRejected() {
+        Assert.assertThrows(IOException.class,
+                () -> MessageRowCodec.readMessages(new ByteArrayInputStream(row(1, 1, -1, 0)), 1));
+    }
+}
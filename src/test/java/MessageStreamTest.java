@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStreamTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Account 2 is registered.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"user2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Opens an event stream and collects its event and data lines as they arrive.
+     */
+    private BlockingQueue<String> subscribe(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> response = webClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, response.statusCode());
+
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> response.body()
+                .filter(line -> line.startsWith("event:") || line.startsWith("data:"))
+                .forEach(lines::add));
+        reader.setDaemon(true);
+        reader.start();
+
+        //Giving the dispatcher time to register the subscriber
+        Thread.sleep(500);
+        return lines;
+    }
+
+    private void send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request.header("Content-Type", "application/json").build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private void assertEvent(BlockingQueue<String> lines, String event, Message message) throws IOException, InterruptedException {
+        Assert.assertEquals("event: " + event, lines.poll(5, TimeUnit.SECONDS));
+        String data = lines.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(data);
+        Assert.assertEquals(message, objectMapper.readValue(data.substring("data:".length()).trim(), Message.class));
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/stream, then creating, patching and deleting a message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a created, a patched and a deleted event, each carrying the message
+     */
+    @Test
+    public void streamPushesMessageChanges() throws IOException, InterruptedException {
+        BlockingQueue<String> lines = subscribe("/messages/stream");
+
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947800}")));
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"hello again\"}")));
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/2")).DELETE());
+
+        assertEvent(lines, "created", new Message(2, 1, "hello", 1669947800));
+        assertEvent(lines, "patched", new Message(2, 1, "hello again", 1669947800));
+        assertEvent(lines, "deleted", new Message(2, 1, "hello again", 1669947800));
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/stream?posted_by=2, then posting a message from account 1 and one
+     * from account 2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the created event for account 2's message
+     */
+    @Test
+    public void streamFiltersByPostedBy() throws IOException, InterruptedException {
+        BlockingQueue<String> lines = subscribe("/messages/stream?posted_by=2");
+
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"from one\", \"time_posted_epoch\": 1669947800}")));
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":2, \"message_text\": \"from two\", \"time_posted_epoch\": 1669947801}")));
+
+        assertEvent(lines, "created", new Message(3, 2, "from two", 1669947801));
+        Assert.assertNull(lines.poll(500, TimeUnit.MILLISECONDS));
+    }
+}
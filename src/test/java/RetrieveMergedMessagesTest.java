@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMergedMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Accounts 2 and 3 are registered, and messages 2 to 10 are posted by
+     * accounts 1, 2 and 3 in turn, so account 1 has messages 1, 2, 5 and 8.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (String username : List.of("user2", "user3")) {
+            HttpRequest registerRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", \"password\": \"password\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        }
+
+        for (int i = 0; i < 9; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":" + (1 + i % 3) + ", " +
+                            "\"message_text\": \"message " + (i + 2) + "\", " +
+                            "\"time_posted_epoch\": " + (1669947800 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> allPages(String path) throws IOException, InterruptedException {
+        List<Integer> ids = new ArrayList<>();
+        String cursor = "";
+        do {
+            HttpResponse<String> response = get(path + "&cursor=" + cursor);
+            Assert.assertEquals(200, response.statusCode());
+            MessagePage page = objectMapper.readValue(response.body(), MessagePage.class);
+            for (Message message : page.getMessages())
+                ids.add(message.getMessage_id());
+            cursor = page.getNext_cursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?posted_by=3,1&limit=3, following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages of accounts 1 and 3 merged in message_id order, across pages of three
+     */
+    @Test
+    public void getMergedMessagesFollowsCursor() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(1, 2, 4, 5, 7, 8, 10), allPages("/messages?posted_by=3,1&limit=3"));
+
+        MessagePage first = objectMapper.readValue(get("/messages?posted_by=3,1&limit=3").body(), MessagePage.class);
+        Assert.assertEquals(new Message(4, 3, "message 4", 1669947802), first.getMessages().get(2));
+        Assert.assertEquals("4", first.getNext_cursor());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with one account, a repeated account and a missing one
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages of the existing accounts, each once
+     */
+    @Test
+    public void getMergedMessagesSingleAndMissingAccounts() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 6, 9), allPages("/messages?posted_by=2&limit=50"));
+        Assert.assertEquals(List.of(3, 6, 9), allPages("/messages?posted_by=2,99,2&limit=2"));
+        Assert.assertEquals(List.of(), allPages("/messages?posted_by=99&limit=50"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with a malformed posted_by, too many accounts, and a
+     * time range
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMergedMessagesInvalid() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?posted_by=1,x").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=1&from=1669947800").statusCode());
+
+        StringBuilder tooMany = new StringBuilder("1");
+        for (int i = 2; i <= 101; i++)
+            tooMany.append(',').append(i);
+        Assert.assertEquals(400, get("/messages?posted_by=" + tooMany).statusCode());
+    }
+}
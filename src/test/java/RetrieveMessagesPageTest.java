@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Four more messages are posted so there are five in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int i = 2; i <= 5; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947792 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private Message expectedMessage(int id) {
+        return new Message(id, 1, "test message " + id, id == 1 ? 1669947792 : 1669947792 + id);
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2, following next_cursor until it runs out
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of two, two and one messages, the last with no next_cursor
+     */
+    @Test
+    public void getMessagesPageFollowsCursor() throws IOException, InterruptedException {
+        List<MessagePage> pages = new ArrayList<>();
+        String cursor = "";
+        do {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages?limit=2&cursor=" + cursor))
+                    .build();
+            HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+
+            MessagePage page = objectMapper.readValue(response.body().toString(), MessagePage.class);
+            pages.add(page);
+            cursor = page.getNext_cursor();
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pages.size());
+        Assert.assertEquals(List.of(expectedMessage(1), expectedMessage(2)), pages.get(0).getMessages());
+        Assert.assertEquals(List.of(expectedMessage(3), expectedMessage(4)), pages.get(1).getMessages());
+        Assert.assertEquals(List.of(expectedMessage(5)), pages.get(2).getMessages());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=3&cursor=3
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the last two messages of the account and no next_cursor
+     */
+    @Test
+    public void getAccountMessagesPageAfterCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=3&cursor=3"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        MessagePage expectedResult = new MessagePage(List.of(expectedMessage(4), expectedMessage(5)), null);
+        MessagePage actualResult = objectMapper.readValue(response.body().toString(), MessagePage.class);
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageInvalidLimit() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=0"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
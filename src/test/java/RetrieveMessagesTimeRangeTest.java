@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesTimeRangeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second account is registered, and four messages are posted out of
+     * time order after the fixture's message 1 at 1669947792:
+     *  2: account 1 at 1669947900, 3: account 2 at 1669947850, 4: account 1 at 1669947800, 5: account 1 at 1669947850
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"otheruser\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+
+        int[][] messages = {{1, 1669947900}, {2, 1669947850}, {1, 1669947800}, {1, 1669947850}};
+        for (int[] message : messages) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":" + message[0] + ", " +
+                            "\"message_text\": \"posted at " + message[1] + "\", " +
+                            "\"time_posted_epoch\": " + message[1] + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> messageIds(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(path);
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}))
+            ids.add(message.getMessage_id());
+        return ids;
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with from, to, and both
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages inside the inclusive range, in time_posted_epoch order, ties broken by message_id
+     */
+    @Test
+    public void getMessagesInTimeRange() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4, 3, 5), messageIds("/messages?from=1669947800&to=1669947850"));
+        Assert.assertEquals(List.of(1), messageIds("/messages?to=1669947799"));
+        Assert.assertEquals(List.of(2), messageIds("/messages?from=1669947851"));
+        Assert.assertEquals(List.of(), messageIds("/messages?from=1669947901"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/1/messages?from=1669947800&to=1669947850, before and after
+     * the account's timeline is cached, and after deleting message 5
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only account 1's messages inside the range, the same whether cached or not
+     */
+    @Test
+    public void getAccountMessagesInTimeRange() throws IOException, InterruptedException {
+        String range = "/accounts/1/messages?from=1669947800&to=1669947850";
+        Assert.assertEquals(List.of(4, 5), messageIds(range));
+
+        //Reading the whole timeline caches it
+        Assert.assertEquals(List.of(1, 4, 5, 2), messageIds("/accounts/1/messages"));
+        Assert.assertEquals(List.of(4, 5), messageIds(range));
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/5"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(4), messageIds(range));
+        Assert.assertEquals(List.of(4, 3), messageIds("/messages?from=1669947800&to=1669947850"));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with a malformed from, and with a range and a limit
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesInvalidTimeRange() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?from=yesterday").statusCode());
+        Assert.assertEquals(400, get("/messages?from=1669947800&limit=2").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/messages?to=x").statusCode());
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    private static final String[] TEXTS = {"The quick brown fox", "lazy brown dog", "Quick, thinking!"};
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Three messages are posted after the fixture's message 1, as IDs 2 to 4.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int i = 0; i < TEXTS.length; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"" + TEXTS[i] + "\", " +
+                            "\"time_posted_epoch\": " + (1669947800 + i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?" + query))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> messageIds(MessagePage page) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : page.getMessages())
+            ids.add(message.getMessage_id());
+        return ids;
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=brown
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages 3 and 2, newest first, with no next_cursor
+     */
+    @Test
+    public void searchSingleWordNewestFirst() throws IOException, InterruptedException {
+        HttpResponse<String> response = search("q=brown");
+        Assert.assertEquals(200, response.statusCode());
+        MessagePage page = objectMapper.readValue(response.body(), MessagePage.class);
+        Assert.assertEquals(List.of(3, 2), messageIds(page));
+        Assert.assertEquals(new Message(3, 1, "lazy brown dog", 1669947801), page.getMessages().get(0));
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=QUICK+brown
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only message 2, the one containing both words in any case
+     */
+    @Test
+    public void searchRequiresEveryWord() throws IOException, InterruptedException {
+        HttpResponse<String> response = search("q=QUICK+brown");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(List.of(2), messageIds(objectMapper.readValue(response.body(), MessagePage.class)));
+
+        response = search("q=brown+cat");
+        Assert.assertEquals(List.of(), messageIds(objectMapper.readValue(response.body(), MessagePage.class)));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search?q=quick&limit=1, following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: message 4, then message 2 with no next_cursor
+     */
+    @Test
+    public void searchFollowsCursor() throws IOException, InterruptedException {
+        MessagePage first = objectMapper.readValue(search("q=quick&limit=1").body(), MessagePage.class);
+        Assert.assertEquals(List.of(4), messageIds(first));
+        Assert.assertEquals("4", first.getNext_cursor());
+
+        MessagePage second = objectMapper.readValue(search("q=quick&limit=1&cursor=4").body(), MessagePage.class);
+        Assert.assertEquals(List.of(2), messageIds(second));
+        Assert.assertNull(second.getNext_cursor());
+    }
+
+    /**
+     * Patching message 3 and deleting message 2, then searching for their old and new words
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: old words no longer match, the patched text does
+     */
+    @Test
+    public void searchFollowsPatchAndDelete() throws IOException, InterruptedException {
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"sleepy cat\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(), messageIds(objectMapper.readValue(search("q=brown").body(), MessagePage.class)));
+        Assert.assertEquals(List.of(4), messageIds(objectMapper.readValue(search("q=quick").body(), MessagePage.class)));
+        Assert.assertEquals(List.of(3), messageIds(objectMapper.readValue(search("q=cat").body(), MessagePage.class)));
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages/search with no q and with a q of only punctuation
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutWordsIsBadRequest() throws IOException, InterruptedException {
+        Assert.assertEquals(400, search("").statusCode());
+        Assert.assertEquals(400, search("q=%21%3F").statusCode());
+    }
+}
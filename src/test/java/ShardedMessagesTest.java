@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.ShardedMessageStore;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ShardedMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Map<String, String> previousProperties = new HashMap<>();
+    List<Message> posted = new ArrayList<>();
+
+    /**
+     * Before every test, spread messages over three shards, reset the database, restart the Javalin app, register
+     * accounts 2 to 6, and post two messages from each of accounts 1 to 6. The fixture's message 1 is moved to its
+     * account's shard when the app starts.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        setProperty("socialmedia.shards", "3");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        for (int account = 2; account <= 6; account++) {
+            HttpRequest registerRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"user" + account + "\", \"password\": \"password\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        }
+
+        for (int i = 0; i < 12; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":" + (1 + i % 6) + ", " +
+                            "\"message_text\": \"message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947900 - i) + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            posted.add(objectMapper.readValue(response.body(), Message.class));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        for (Map.Entry<String, String> property : previousProperties.entrySet()) {
+            if (property.getValue() == null)
+                System.clearProperty(property.getKey());
+            else
+                System.setProperty(property.getKey(), property.getValue());
+        }
+    }
+
+    private void setProperty(String key, String value) {
+        previousProperties.put(key, System.getProperty(key));
+        System.setProperty(key, value);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> messageIds(List<Message> messages) {
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages)
+            ids.add(message.getMessage_id());
+        return ids;
+    }
+
+    /**
+     * Reading each shard's database directly after the messages are posted
+     *
+     * Expected: every account's messages sit in the one shard its ID hashes to, every created ID is unique and
+     * points at that shard, and more than one shard holds messages
+     */
+    @Test
+    public void messagesAreSpreadByAccount() throws SQLException {
+        Set<Integer> shardsUsed = new HashSet<>();
+        int rows = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            Connection connection = ConnectionUtil.getConnection(shard);
+            try {
+                ResultSet rs = connection.createStatement().executeQuery("SELECT message_id, posted_by FROM Message");
+                while (rs.next()) {
+                    Assert.assertEquals(ShardedMessageStore.shardOf(rs.getInt("posted_by"), 3), shard);
+                    shardsUsed.add(shard);
+                    rows++;
+                }
+            } finally {
+                ConnectionUtil.closeConnection(connection);
+            }
+        }
+        Assert.assertEquals(13, rows);
+        Assert.assertTrue(shardsUsed.size() > 1);
+
+        Set<Integer> ids = new HashSet<>(messageIds(posted));
+        Assert.assertEquals(12, ids.size());
+        Assert.assertFalse(ids.contains(1));
+        for (Message message : posted) {
+            Assert.assertEquals(ShardedMessageStore.shardOf(message.getPosted_by(), 3),
+                    ShardedMessageStore.shardOfMessageId(message.getMessage_id(), 3));
+        }
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages, whole and in pages of five, and for a time range
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message from every shard, merged in message_id order, or time order for the range
+     */
+    @Test
+    public void getAllMessagesGathersEveryShard() throws IOException, InterruptedException {
+        List<Integer> expected = new ArrayList<>(List.of(1));
+        for (Message message : posted)
+            expected.add(message.getMessage_id());
+        expected.sort(null);
+
+        List<Message> all = objectMapper.readValue(send("GET", "/messages", null).body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expected, messageIds(all));
+
+        List<Integer> paged = new ArrayList<>();
+        String cursor = "";
+        do {
+            MessagePage page = objectMapper.readValue(send("GET", "/messages?limit=5&cursor=" + cursor, null).body(), MessagePage.class);
+            paged.addAll(messageIds(page.getMessages()));
+            cursor = page.getNext_cursor();
+        } while (cursor != null);
+        Assert.assertEquals(expected, paged);
+
+        //Posted in falling time order, so the range comes back in reverse posting order
+        List<Message> range = objectMapper.readValue(send("GET", "/messages?from=1669947891&to=1669947900", null).body(),
+                new TypeReference<List<Message>>(){});
+        List<Integer> reversed = new ArrayList<>();
+        for (int i = 9; i >= 0; i--)
+            reversed.add(posted.get(i).getMessage_id());
+        Assert.assertEquals(reversed, messageIds(range));
+    }
+
+    /**
+     * Sending http requests for one account's messages, and to GET, PATCH and DELETE messages by ID, including the
+     * fixture's message 1, whose ID predates the shards
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the account's messages, and each message found in whichever shard holds it
+     */
+    @Test
+    public void singleAccountAndByIdReadsFindTheirShard() throws IOException, InterruptedException {
+        List<Message> accountMessages = objectMapper.readValue(send("GET", "/accounts/3/messages", null).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(posted.get(8), posted.get(2)), accountMessages);
+
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(send("GET", "/messages/1", null).body(), Message.class));
+        Assert.assertEquals(posted.get(5), objectMapper.readValue(send("GET", "/messages/" + posted.get(5).getMessage_id(), null).body(), Message.class));
+
+        HttpResponse<String> patched = send("PATCH", "/messages/1", "{\"message_text\": \"patched\"}");
+        Assert.assertEquals(200, patched.statusCode());
+        Assert.assertEquals("patched", objectMapper.readValue(patched.body(), Message.class).getMessage_text());
+
+        int deletedId = posted.get(4).getMessage_id();
+        Assert.assertEquals(posted.get(4), objectMapper.readValue(send("DELETE", "/messages/" + deletedId, null).body(), Message.class));
+        Assert.assertEquals("", send("GET", "/messages/" + deletedId, null).body());
+    }
+
+    /**
+     * Sending an http request to PATCH one of the posted messages with blank text
+     *
+     * Expected Response:
+     *  Status Code: 400, the message keeps its text, and no shard after the first was asked for a connection
+     */
+    @Test
+    public void invalidPatchQueriesNoShard() throws IOException, InterruptedException {
+        Message target = posted.get(1);
+        long[] borrowsBefore = new long[3];
+        for (int shard = 1; shard < 3; shard++)
+            borrowsBefore[shard] = (long) ConnectionUtil.getPool(shard).getStats().get("borrows");
+
+        HttpResponse<String> response = send("PATCH", "/messages/" + target.getMessage_id(), "{\"message_text\": \"   \"}");
+        Assert.assertEquals(400, response.statusCode());
+        for (int shard = 1; shard < 3; shard++)
+            Assert.assertEquals(borrowsBefore[shard], ConnectionUtil.getPool(shard).getStats().get("borrows"));
+
+        HttpResponse<String> get = send("GET", "/messages/" + target.getMessage_id(), null);
+        Assert.assertEquals(target, objectMapper.readValue(get.body(), Message.class));
+    }
+}
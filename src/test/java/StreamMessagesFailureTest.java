@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountIdIndex;
+import DAO.MessageConsumer;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class StreamMessagesFailureTest {
+    MessageDAO messageDAO;
+
+    /**
+     * A streaming read of the MessageDAO, given the consumer to stream into.
+     */
+    private interface StreamingRead {
+        void read(MessageConsumer consumer) throws IOException;
+    }
+
+    /**
+     * Before every test, reset the database and add four more messages from account 1, so every read below has
+     * five rows to stream.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO Message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?)");
+            for (int i = 2; i <= 5; i++) {
+                ps.setString(1, "test message " + i);
+                ps.setLong(2, 1669947792L + i);
+                ps.executeUpdate();
+            }
+        } finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+        messageDAO = new MessageDAO(AccountIdIndex.load());
+    }
+
+    /**
+     * Runs a streaming read inside a unit of work, cancelling its query once the first row has been consumed. The
+     * unit of work runs on a connection that remembers the last statement prepared on it, so the consumer can reach
+     * the query the DAO is reading from.
+     */
+    private void assertFailsMidStream(StreamingRead read) throws SQLException {
+        Connection pooled = ConnectionUtil.getConnection();
+        PreparedStatement[] prepared = new PreparedStatement[1];
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    try {
+                        Object result = method.invoke(pooled, args);
+                        if (result instanceof PreparedStatement)
+                            prepared[0] = (PreparedStatement) result;
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+
+        List<Integer> received = new ArrayList<>();
+        try {
+            IOException failure = Assert.assertThrows(IOException.class, () -> UnitOfWork.run(connection,
+                    () -> read.read(message -> {
+                        received.add(message.getMessage_id());
+                        if (received.size() == 1)
+                            cancel(prepared[0]);
+                    })));
+            Assert.assertTrue(failure.getCause() instanceof SQLException);
+        } finally {
+            ConnectionUtil.closeConnection(pooled);
+        }
+        Assert.assertEquals(List.of(1), received);
+    }
+
+    private static void cancel(PreparedStatement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Streaming every message, and cancelling its query after the first one
+     *
+     * Expected Result:
+     *  The read throws IOException instead of returning as if the table held one message
+     */
+    @Test
+    public void forEachMessageFailsWhenQueryFailsMidStream() throws SQLException {
+        assertFailsMidStream(messageDAO::forEachMessage);
+    }
+
+    /**
+     * Streaming a time range, and cancelling its query after the first message
+     *
+     * Expected Result:
+     *  The read throws IOException
+     */
+    @Test
+    public void forEachMessageInRangeFailsWhenQueryFailsMidStream() throws SQLException {
+        assertFailsMidStream(consumer -> messageDAO.forEachMessageInRange(Long.MIN_VALUE, Long.MAX_VALUE, consumer));
+    }
+
+    /**
+     * Streaming an account's messages within a time range, and cancelling its query after the first message
+     *
+     * Expected Result:
+     *  The read throws IOException
+     */
+    @Test
+    public void forEachAccountMessageInRangeFailsWhenQueryFailsMidStream() throws SQLException {
+        assertFailsMidStream(consumer -> messageDAO.forEachAccountMessageInRange(1, Long.MIN_VALUE, Long.MAX_VALUE, consumer));
+    }
+}
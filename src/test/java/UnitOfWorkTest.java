@@ -0,0 +1,147 @@
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class UnitOfWorkTest {
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    private static void insertAccount(String username) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement("INSERT INTO Account (username, password) VALUES (?, ?)");
+            ps.setString(1, username);
+            ps.setString(2, "password");
+            ps.executeUpdate();
+        } finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Counts the accounts with a username on a connection of its own, outside of any unit of work.
+     */
+    private static int countAccounts(String username) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM Account WHERE username = ?");
+            ps.setString(1, username);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            ConnectionUtil.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Running two DAO-style inserts in one unit of work, checking from another connection before and after
+     *
+     * Expected Result:
+     *  Both inserts share one connection, are invisible until run() returns, and are committed by the time it has
+     */
+    @Test
+    public void workIsCommittedBeforeRunReturns() throws Exception {
+        List<Integer> seenByOthers = new ArrayList<>();
+        List<Boolean> committed = new ArrayList<>();
+        UnitOfWork.run(() -> {
+            Assert.assertSame(ConnectionUtil.getConnection(), ConnectionUtil.getConnection());
+            insertAccount("first");
+            insertAccount("second");
+            UnitOfWork.afterCommit(() -> committed.add(true));
+
+            Thread other = new Thread(() -> {
+                try {
+                    seenByOthers.add(countAccounts("first"));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            other.start();
+            other.join();
+        });
+
+        Assert.assertEquals(List.of(0), seenByOthers);
+        Assert.assertEquals(List.of(true), committed);
+        Assert.assertEquals(1, countAccounts("first"));
+        Assert.assertEquals(1, countAccounts("second"));
+    }
+
+    /**
+     * Running an insert in a unit of work that then throws, and one that is marked rollback-only
+     *
+     * Expected Result:
+     *  Neither insert is saved, the exception reaches the caller, and only the completion callbacks run
+     */
+    @Test
+    public void failedWorkIsRolledBack() throws Exception {
+        List<String> callbacks = new ArrayList<>();
+        IllegalStateException thrown = Assert.assertThrows(IllegalStateException.class, () -> UnitOfWork.run(() -> {
+            insertAccount("thrown");
+            UnitOfWork.afterCommit(() -> callbacks.add("commit"));
+            UnitOfWork.afterCompletion(() -> callbacks.add("completion"));
+            throw new IllegalStateException("handler failed");
+        }));
+        Assert.assertEquals("handler failed", thrown.getMessage());
+
+        UnitOfWork.run(() -> {
+            insertAccount("rollbackOnly");
+            UnitOfWork.setRollbackOnly();
+        });
+
+        Assert.assertEquals(List.of("completion"), callbacks);
+        Assert.assertEquals(0, countAccounts("thrown"));
+        Assert.assertEquals(0, countAccounts("rollbackOnly"));
+        Assert.assertNull(UnitOfWork.current());
+    }
+
+    /**
+     * Running work on a connection whose commit fails
+     *
+     * Expected Result:
+     *  run() throws the commit failure instead of returning normally, so a handler's response is never sent as if
+     *  the work had been saved, and the commit callbacks do not run
+     */
+    @Test
+    public void failedCommitReachesCaller() throws Exception {
+        Connection real = ConnectionUtil.getConnection();
+        Connection failingCommit = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("commit"))
+                        throw new SQLException("commit failed");
+                    return method.invoke(real, args);
+                });
+
+        List<String> callbacks = new ArrayList<>();
+        try {
+            SQLException thrown = Assert.assertThrows(SQLException.class, () -> UnitOfWork.run(failingCommit, () -> {
+                insertAccount("uncommitted");
+                UnitOfWork.afterCommit(() -> callbacks.add("commit"));
+                UnitOfWork.afterCompletion(() -> callbacks.add("completion"));
+            }));
+            Assert.assertEquals("commit failed", thrown.getMessage());
+        } finally {
+            ConnectionUtil.closeConnection(real);
+        }
+
+        Assert.assertEquals(List.of("completion"), callbacks);
+        Assert.assertEquals(0, countAccounts("uncommitted"));
+    }
+}